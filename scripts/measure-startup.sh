@@ -0,0 +1,33 @@
+#!/usr/bin/env bash
+# Misura il tempo dall'avvio del container alla prima risposta HTTP del servizio.
+# Richiede postgres e rabbitmq del docker-compose già in esecuzione.
+#
+# Uso: scripts/measure-startup.sh <immagine> [ripetizioni]
+# Esempio (prima/dopo):
+#   git stash && docker build -t ums:baseline . && git stash pop
+#   docker build -t ums:aot-cds .
+#   scripts/measure-startup.sh ums:baseline 5
+#   scripts/measure-startup.sh ums:aot-cds 5
+set -euo pipefail
+
+IMAGE=${1:?immagine docker richiesta}
+RUNS=${2:-3}
+NETWORK=${NETWORK:-$(basename "$(pwd)")_default}
+PORT=${PORT:-18080}
+
+for i in $(seq 1 "$RUNS"); do
+  start=$(date +%s%N)
+  cid=$(docker run -d --rm --network "$NETWORK" -p "$PORT:8080" \
+    -e SPRING_DATASOURCE_URL=jdbc:postgresql://postgres:5432/ums \
+    -e SPRING_DATASOURCE_USERNAME=ums \
+    -e SPRING_DATASOURCE_PASSWORD=ums \
+    -e SPRING_RABBITMQ_HOST=rabbitmq \
+    "$IMAGE")
+  # qualsiasi codice HTTP (anche 401) indica che il servizio accetta richieste
+  until [ "$(curl -s -o /dev/null -w '%{http_code}' "http://localhost:$PORT/api/users")" != "000" ]; do
+    sleep 0.05
+  done
+  end=$(date +%s%N)
+  echo "run $i: time-to-first-request $(( (end - start) / 1000000 )) ms"
+  docker stop "$cid" > /dev/null
+done
@@ -2,8 +2,11 @@ package it.intesigroup.ums;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 
-@SpringBootApplication
+// Il pool R2DBC del profilo reactive è creato da ReactiveServerConfig: l'autoconfigurazione
+// ne creerebbe uno anche senza il profilo, fallendo in mancanza di spring.r2dbc.url
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 public class UserManagementServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(UserManagementServiceApplication.class, args);
@@ -0,0 +1,63 @@
+package it.intesigroup.ums.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Instradamento delle transazioni {@code @Transactional(readOnly = true)} verso le repliche.
+ * Hibernate marca read-only la connessione all'inizio della transazione e il
+ * {@link LazyConnectionDataSourceProxy} ottiene la connessione fisica solo al primo statement,
+ * scegliendo il pool delle repliche o il primario in base a quel flag.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.routing.enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaDataSourceProperties.class)
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    ReplicaRoutingDataSource replicaDataSource(DataSourceProperties properties,
+                                               ReplicaDataSourceProperties routing,
+                                               HikariDataSource primaryDataSource) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < routing.getReplicas().size(); i++) {
+            ReplicaDataSourceProperties.Replica r = routing.getReplicas().get(i);
+            HikariDataSource ds = new HikariDataSource();
+            ds.setPoolName("replica-" + i);
+            ds.setJdbcUrl(r.getUrl());
+            ds.setUsername(r.getUsername() != null ? r.getUsername() : properties.determineUsername());
+            ds.setPassword(r.getPassword() != null ? r.getPassword() : properties.determinePassword());
+            ds.setMaximumPoolSize(routing.getMaximumPoolSize());
+            ds.setReadOnly(true);
+            // il pool parte anche con la replica giù: la salute è gestita dal routing
+            ds.setInitializationFailTimeout(-1);
+            replicas.add(ds);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas,
+                routing.getHealthCheckInterval(), routing.getHealthCheckTimeout());
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(HikariDataSource primaryDataSource, ReplicaRoutingDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(primaryDataSource);
+        proxy.setReadOnlyDataSource(replicaDataSource);
+        return proxy;
+    }
+}
@@ -0,0 +1,53 @@
+package it.intesigroup.ums.config;
+
+import io.grpc.InsecureServerCredentials;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import it.intesigroup.ums.grpc.GrpcAuthInterceptor;
+import it.intesigroup.ums.grpc.GrpcServerLifecycle;
+import it.intesigroup.ums.grpc.UserGrpcService;
+import it.intesigroup.ums.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.grpc.enabled", havingValue = "true")
+public class GrpcServerConfig {
+    private static final Logger log = LoggerFactory.getLogger(GrpcServerConfig.class);
+
+    @Bean
+    GrpcServerLifecycle grpcServer(UserService userService,
+                                   ObjectProvider<JwtDecoder> jwtDecoder,
+                                   JwtAuthenticationConverter jwtAuthenticationConverter,
+                                   @Value("${app.grpc.address:127.0.0.1}") String address,
+                                   @Value("${app.grpc.port:9090}") int port,
+                                   @Value("${app.grpc.shutdown-grace-period:PT10S}") Duration shutdownGracePeriod) {
+        UserGrpcService service = new UserGrpcService(userService);
+        JwtDecoder decoder = jwtDecoder.getIfAvailable();
+        ServerServiceDefinition definition;
+        if (decoder != null) {
+            definition = ServerInterceptors.intercept(service,
+                    new GrpcAuthInterceptor(decoder, jwtAuthenticationConverter));
+        } else {
+            // security.enabled=false: chiamate anonime, campi sensibili sempre mascherati
+            log.warn("Server gRPC senza autenticazione JWT (security.enabled=false)");
+            definition = service.bindService();
+        }
+        return new GrpcServerLifecycle(
+                NettyServerBuilder.forAddress(new InetSocketAddress(address, port), InsecureServerCredentials.create())
+                        .addService(definition)
+                        .build(),
+                shutdownGracePeriod);
+    }
+}
@@ -0,0 +1,22 @@
+package it.intesigroup.ums.config;
+
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.NativeDetector;
+
+@Configuration
+public class JacksonConfig {
+
+    // Blackbird sostituisce la reflection di Jackson con accessor generati (LambdaMetafactory),
+    // riducendo il costo di serializzazione di UserResponse. Non applicabile nell'immagine nativa.
+    @Bean
+    Jackson2ObjectMapperBuilderCustomizer blackbirdCustomizer() {
+        return builder -> {
+            if (!NativeDetector.inNativeImage()) {
+                builder.modulesToInstall(new BlackbirdModule());
+            }
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package it.intesigroup.ums.config;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import it.intesigroup.ums.security.CachingJwkSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Configuration
+@ConditionalOnProperty(name = "security.enabled", havingValue = "true", matchIfMissing = true)
+public class JwtDecoderConfig {
+
+    @Bean(destroyMethod = "close")
+    CachingJwkSource jwkSource(@Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri:}") String jwkSetUri,
+                               @Value("${app.security.jwks.cache-file:}") String cacheFile,
+                               @Value("${app.security.jwks.refresh-interval:PT10M}") Duration refreshInterval,
+                               @Value("${app.security.jwks.retry-interval:PT30S}") Duration retryInterval,
+                               @Value("${app.security.jwks.min-on-demand-gap:PT30S}") Duration minOnDemandGap,
+                               @Value("${app.security.jwks.jitter:0.2}") double jitter,
+                               @Value("${app.security.jwks.fetch-timeout:PT2S}") Duration fetchTimeout) {
+        CachingJwkSource source = new CachingJwkSource(
+                jwkSetUri.isBlank() ? null : URI.create(jwkSetUri),
+                cacheFile.isBlank() ? null : Path.of(cacheFile),
+                refreshInterval, retryInterval, minOnDemandGap, jitter, fetchTimeout);
+        source.start();
+        return source;
+    }
+
+    // Sostituisce il decoder di Spring Boot: con issuer-uri quest'ultimo farebbe discovery all'avvio
+    // e recupererebbe le chiavi in modo lazy sul thread della prima richiesta.
+    @Bean
+    JwtDecoder jwtDecoder(CachingJwkSource jwkSource,
+                          @Value("${spring.security.oauth2.resourceserver.jwt.jws-algorithms:RS256}") String[] algorithms,
+                          @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri:}") String issuer) {
+        Set<JWSAlgorithm> jwsAlgorithms = Arrays.stream(algorithms)
+                .map(JWSAlgorithm::parse)
+                .collect(Collectors.toSet());
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(jwsAlgorithms, jwkSource));
+        // i claim sono validati da Spring Security (JwtValidators)
+        processor.setJWTClaimsSetVerifier((claims, context) -> { });
+
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(processor);
+        decoder.setJwtValidator(issuer.isBlank()
+                ? JwtValidators.createDefault()
+                : JwtValidators.createDefaultWithIssuer(issuer));
+        return decoder;
+    }
+}
@@ -0,0 +1,49 @@
+package it.intesigroup.ums.config;
+
+import it.intesigroup.ums.domain.UserAudit;
+import it.intesigroup.ums.dto.CreateUserRequest;
+import it.intesigroup.ums.dto.SnapshotRequest;
+import it.intesigroup.ums.dto.UpdateUserRequest;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.service.UserService;
+import it.intesigroup.ums.service.UserSnapshotPublisher;
+import it.intesigroup.ums.validation.CodiceFiscaleValidator;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Hint per l'immagine nativa GraalVM su ciò che viene usato via reflection e che l'AOT
+ * di Spring non rileva da solo (es. payload AMQP serializzati da Jackson2JsonMessageConverter).
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.UmsRuntimeHints.class)
+public class NativeHintsConfig {
+
+    static class UmsRuntimeHints implements RuntimeHintsRegistrar {
+        private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            // DTO REST ed eventi di dominio (de)serializzati da Jackson
+            bindingRegistrar.registerReflectionHints(hints.reflection(),
+                    CreateUserRequest.class,
+                    UpdateUserRequest.class,
+                    UserResponse.class,
+                    UserService.UserCreatedEvent.class,
+                    SnapshotRequest.class,
+                    UserSnapshotPublisher.JobStatus.class,
+                    UserSnapshotPublisher.UserSnapshotEvent.class,
+                    UserSnapshotPublisher.SnapshotCompletedEvent.class,
+                    // colonna JSONB user_audit.changes, letta e scritta dal FormatMapper Jackson di Hibernate
+                    UserAudit.FieldChange.class);
+
+            // I ConstraintValidator vengono istanziati da Hibernate Validator via reflection
+            hints.reflection().registerType(CodiceFiscaleValidator.class,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package it.intesigroup.ums.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import it.intesigroup.ums.service.NaturalKeyFilter;
+import it.intesigroup.ums.service.UserChangeLog;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+public class NaturalKeyFilterConfig {
+
+    // caricato in background dopo l'avvio (ApplicationReadyEvent); fino ad allora i controlli vanno al database.
+    // user_changes è scritto solo con lo stream abilitato: senza, il filtro viene ricostruito ogni rebuild-interval
+    @Bean(destroyMethod = "close")
+    NaturalKeyFilter naturalKeyFilter(UserRepository userRepository,
+                                      UserChangeRepository changeRepository,
+                                      ObjectProvider<UserChangeLog> changeLog,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${app.users.key-filter.enabled:true}") boolean enabled,
+                                      @Value("${app.users.key-filter.expected-insertions:1000000}") long expectedInsertions,
+                                      @Value("${app.users.key-filter.fpp:0.01}") double fpp,
+                                      @Value("${app.users.key-filter.max-size:8MB}") DataSize maxSize,
+                                      @Value("${app.users.key-filter.poll-interval:PT1S}") Duration pollInterval,
+                                      @Value("${app.users.key-filter.gap-timeout:PT10M}") Duration gapTimeout,
+                                      @Value("${app.users.key-filter.rebuild-interval:PT10M}") Duration rebuildInterval) {
+        return new NaturalKeyFilter(userRepository, changeLog.getIfAvailable() != null ? changeRepository : null,
+                meterRegistry, enabled, expectedInsertions, fpp, maxSize, pollInterval, gapTimeout, rebuildInterval);
+    }
+}
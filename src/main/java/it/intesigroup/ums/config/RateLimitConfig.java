@@ -0,0 +1,38 @@
+package it.intesigroup.ums.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.security.ClientRateLimiter;
+import it.intesigroup.ums.security.ClientRateLimiter.Budget;
+import it.intesigroup.ums.security.ClientRateLimiter.EndpointClass;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(name = "app.security.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitConfig {
+
+    // il filtro che lo usa è aggiunto da SecurityConfig alla catena di Spring Security
+    @Bean(destroyMethod = "close")
+    ClientRateLimiter clientRateLimiter(MeterRegistry meterRegistry,
+                                        @Value("${app.security.rate-limit.read.rate:50}") double readRate,
+                                        @Value("${app.security.rate-limit.read.burst:100}") int readBurst,
+                                        @Value("${app.security.rate-limit.read.max-concurrent:0}") int readConcurrent,
+                                        @Value("${app.security.rate-limit.list.rate:5}") double listRate,
+                                        @Value("${app.security.rate-limit.list.burst:20}") int listBurst,
+                                        @Value("${app.security.rate-limit.list.max-concurrent:4}") int listConcurrent,
+                                        @Value("${app.security.rate-limit.write.rate:10}") double writeRate,
+                                        @Value("${app.security.rate-limit.write.burst:20}") int writeBurst,
+                                        @Value("${app.security.rate-limit.write.max-concurrent:4}") int writeConcurrent,
+                                        @Value("${app.security.rate-limit.sweep-interval:PT1M}") Duration sweepInterval) {
+        return new ClientRateLimiter(Map.of(
+                EndpointClass.READ, new Budget(readRate, readBurst, readConcurrent),
+                EndpointClass.LIST, new Budget(listRate, listBurst, listConcurrent),
+                EndpointClass.WRITE, new Budget(writeRate, writeBurst, writeConcurrent)),
+                meterRegistry, sweepInterval);
+    }
+}
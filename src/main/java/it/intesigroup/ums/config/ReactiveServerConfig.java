@@ -0,0 +1,95 @@
+package it.intesigroup.ums.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import it.intesigroup.ums.reactive.ReactiveAuthFilter;
+import it.intesigroup.ums.reactive.ReactiveServerLifecycle;
+import it.intesigroup.ums.reactive.ReactiveUserHandler;
+import it.intesigroup.ums.reactive.ReactiveUserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+/**
+ * Percorso di lettura reattivo. Il bean esiste sempre e {@code app.reactive.enabled} è letta a runtime:
+ * con l'AOT una {@code @ConditionalOnProperty} sarebbe fissata alla build dell'immagine. Da disabilitato
+ * non apre connessioni R2DBC né la porta.
+ */
+@Configuration
+public class ReactiveServerConfig {
+    private static final Logger log = LoggerFactory.getLogger(ReactiveServerConfig.class);
+
+    @Bean(destroyMethod = "close")
+    ReactiveServerLifecycle reactiveServer(@Value("${app.reactive.enabled:false}") boolean enabled,
+                                           ObjectMapper objectMapper,
+                                           ObjectProvider<JwtDecoder> jwtDecoder,
+                                           JwtAuthenticationConverter jwtAuthenticationConverter,
+                                           @Value("${app.reactive.address:0.0.0.0}") String address,
+                                           @Value("${app.reactive.port:8082}") int port,
+                                           @Value("${app.reactive.shutdown-grace-period:PT10S}") Duration shutdownGracePeriod,
+                                           @Value("${app.reactive.r2dbc.url}") String url,
+                                           @Value("${app.reactive.r2dbc.username}") String username,
+                                           @Value("${app.reactive.r2dbc.password}") String password,
+                                           @Value("${app.reactive.r2dbc.initial-size:4}") int initialSize,
+                                           @Value("${app.reactive.r2dbc.max-size:16}") int maxSize,
+                                           @Value("${app.reactive.r2dbc.max-acquire-time:PT2S}") Duration maxAcquireTime) {
+        if (!enabled) return ReactiveServerLifecycle.disabled();
+        ReactiveUserRepository repository = reactiveUserRepository(url, username, password, initialSize, maxSize,
+                maxAcquireTime);
+        ReactiveUserHandler handler = new ReactiveUserHandler(repository);
+        JwtDecoder decoder = jwtDecoder.getIfAvailable();
+        ReactiveAuthFilter auth = null;
+        if (decoder != null) {
+            auth = new ReactiveAuthFilter(decoder, jwtAuthenticationConverter);
+        } else {
+            // security.enabled=false: chiamate anonime, campi sensibili sempre mascherati
+            log.warn("Server reattivo senza autenticazione JWT (security.enabled=false)");
+        }
+        // stesso ObjectMapper delle API servlet (moduli, formato delle date, pagine di Spring Data)
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+        HttpServer server = HttpServer.create()
+                .host(address)
+                .port(port)
+                .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(handler.routes(auth), strategies)));
+        return new ReactiveServerLifecycle(server, repository, shutdownGracePeriod);
+    }
+
+    // pool separato da Hikari: le connessioni R2DBC non occupano thread in attesa del database
+    private static ReactiveUserRepository reactiveUserRepository(String url, String username, String password,
+                                                                 int initialSize, int maxSize, Duration maxAcquireTime) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        ConnectionPool pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .name("ums-reactive")
+                .initialSize(initialSize)
+                .maxSize(maxSize)
+                .maxAcquireTime(maxAcquireTime)
+                .build());
+        // come Hikari, un database non raggiungibile fa fallire l'avvio invece della prima richiesta
+        pool.warmup().block(Duration.ofSeconds(30));
+        return new ReactiveUserRepository(pool);
+    }
+}
@@ -0,0 +1,117 @@
+package it.intesigroup.ums.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * DataSource per le sole connessioni read-only: distribuisce in round-robin sulle repliche sane
+ * e, se nessuna è disponibile, ripiega sul primario. Lo stato di salute viene aggiornato sia da un
+ * controllo periodico sia dagli errori di connessione riscontrati sul percorso delle richieste.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final AtomicIntegerArray healthy;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+    private final int healthCheckTimeoutSeconds;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas,
+                                    Duration healthCheckInterval, Duration healthCheckTimeout) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.healthy = new AtomicIntegerArray(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) healthy.set(i, 1);
+        this.healthCheckTimeoutSeconds = (int) Math.max(1, healthCheckTimeout.toSeconds());
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-health");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = healthCheckInterval.toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(ds -> ds.getConnection(username, password));
+    }
+
+    public boolean isReplicaHealthy(int index) {
+        return healthy.get(index) == 1;
+    }
+
+    private Connection connect(Connector connector) throws SQLException {
+        int n = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(n, 1));
+        for (int i = 0; i < n; i++) {
+            int idx = (start + i) % n;
+            if (healthy.get(idx) == 0) continue;
+            try {
+                return connector.connect(replicas.get(idx));
+            } catch (SQLFeatureNotSupportedException e) {
+                // es. Hikari con credenziali per-connessione: un limite del pool, non una replica guasta
+                throw e;
+            } catch (SQLException e) {
+                markUnhealthy(idx, e);
+            }
+        }
+        // Nessuna replica disponibile: le letture proseguono sul primario
+        return connector.connect(primary);
+    }
+
+    void checkHealth() {
+        for (int i = 0; i < replicas.size(); i++) {
+            boolean ok;
+            try (Connection c = replicas.get(i).getConnection()) {
+                ok = c.isValid(healthCheckTimeoutSeconds);
+            } catch (SQLException e) {
+                ok = false;
+            }
+            if (ok) {
+                if (healthy.getAndSet(i, 1) == 0) log.info("Replica {} di nuovo disponibile", i);
+            } else {
+                markUnhealthy(i, null);
+            }
+        }
+    }
+
+    private void markUnhealthy(int idx, SQLException cause) {
+        if (healthy.getAndSet(idx, 0) == 1) {
+            log.warn("Replica {} non disponibile, letture dirottate sulle altre repliche o sul primario", idx, cause);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Connector {
+        Connection connect(DataSource dataSource) throws SQLException;
+    }
+
+    @Override
+    public void close() throws Exception {
+        healthChecker.shutdownNow();
+        for (DataSource ds : replicas) {
+            if (ds instanceof AutoCloseable closeable) closeable.close();
+        }
+    }
+}
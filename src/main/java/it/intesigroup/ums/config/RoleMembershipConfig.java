@@ -0,0 +1,22 @@
+package it.intesigroup.ums.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.repository.UserRepository;
+import it.intesigroup.ums.service.RoleMembershipIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class RoleMembershipConfig {
+
+    // primo calcolo all'avvio (ApplicationReadyEvent); fino ad allora GET /api/roles/summary risponde 503
+    @Bean(destroyMethod = "close")
+    RoleMembershipIndex roleMembershipIndex(UserRepository userRepository,
+                                            MeterRegistry meterRegistry,
+                                            @Value("${app.users.roles-index.reconcile-interval:PT10M}") Duration reconcileInterval) {
+        return new RoleMembershipIndex(userRepository, meterRegistry, reconcileInterval);
+    }
+}
@@ -1,5 +1,9 @@
 package it.intesigroup.ums.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.intesigroup.ums.security.AdmissionControlFilter;
+import it.intesigroup.ums.security.ClientRateLimiter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,6 +15,7 @@ import org.springframework.security.oauth2.server.resource.authentication.JwtAut
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -26,14 +31,18 @@ public class SecurityConfig {
     private boolean securityEnabled;
 
     @Bean
-    SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    SecurityFilterChain filterChain(HttpSecurity http, ObjectProvider<ClientRateLimiter> rateLimiter,
+                                    ObjectMapper objectMapper) throws Exception {
         http.csrf(csrf -> csrf.disable());
         http.headers(headers -> headers.frameOptions(frame -> frame.sameOrigin()));
         http.authorizeHttpRequests(auth -> {
             if (securityEnabled) {
                 auth.requestMatchers("/swagger-ui/**", "/v3/api-docs/**", "/actuator/**").permitAll();
+                auth.requestMatchers("/api/admin/**").hasRole("OWNER");
                 auth.requestMatchers(HttpMethod.GET, "/api/users/**")
                         .hasAnyRole("OWNER", "OPERATOR", "MAINTAINER", "DEVELOPER", "REPORTER");
+                auth.requestMatchers(HttpMethod.GET, "/api/roles/**")
+                        .hasAnyRole("OWNER", "OPERATOR", "MAINTAINER", "DEVELOPER", "REPORTER");
                 auth.requestMatchers(HttpMethod.POST, "/api/users/**")
                         .hasAnyRole("OWNER", "MAINTAINER");
                 auth.requestMatchers(HttpMethod.PUT, "/api/users/**")
@@ -52,6 +61,9 @@ public class SecurityConfig {
         if (securityEnabled) {
             http.oauth2ResourceServer(oauth2 -> oauth2.jwt(jwt -> jwt.jwtAuthenticationConverter(jwtAuthenticationConverter())));
         }
+        // dopo l'autenticazione, per usare il subject del token come chiave del limite
+        rateLimiter.ifAvailable(limiter ->
+                http.addFilterBefore(new AdmissionControlFilter(limiter, objectMapper), AuthorizationFilter.class));
         return http.build();
     }
 
@@ -0,0 +1,37 @@
+package it.intesigroup.ums.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.repository.UserArchiveRepository;
+import it.intesigroup.ums.service.UserArchiver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.users.archive.enabled", havingValue = "true")
+public class UserArchiveConfig {
+
+    @Bean(destroyMethod = "close")
+    UserArchiver userArchiver(UserArchiveRepository archiveRepository,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.users.archive.retention:P90D}") Duration retention,
+                              @Value("${app.users.archive.batch-size:500}") int batchSize,
+                              @Value("${app.users.archive.pause:PT0.2S}") Duration pause,
+                              @Value("${app.users.archive.max-batches-per-run:200}") int maxBatchesPerRun,
+                              @Value("${app.users.archive.interval:PT1H}") Duration interval,
+                              @Value("${app.users.archive.dry-run:false}") boolean dryRun) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        // ogni blocco deve chiudersi in fretta: i lock presi da FOR UPDATE restano fino al commit
+        transactionTemplate.setTimeout(30);
+        UserArchiver archiver = new UserArchiver(archiveRepository, transactionTemplate, meterRegistry,
+                retention, batchSize, pause, maxBatchesPerRun, interval, dryRun);
+        archiver.start();
+        return archiver;
+    }
+}
@@ -0,0 +1,38 @@
+package it.intesigroup.ums.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.service.UserAuditTrail;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.users.audit.enabled", havingValue = "true", matchIfMissing = true)
+public class UserAuditConfig {
+
+    @Bean(destroyMethod = "close")
+    UserAuditTrail userAuditTrail(EntityManagerFactory entityManagerFactory,
+                                  PlatformTransactionManager transactionManager,
+                                  JdbcTemplate jdbcTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.users.audit.capacity:10000}") int capacity,
+                                  @Value("${app.users.audit.batch-size:500}") int batchSize,
+                                  @Value("${app.users.audit.max-delay:PT0.2S}") Duration maxDelay,
+                                  @Value("${app.users.audit.admission-wait:PT0.2S}") Duration admissionWait,
+                                  @Value("${app.users.audit.retry-interval:PT1S}") Duration retryInterval,
+                                  @Value("${app.users.audit.manage-partitions:true}") boolean managePartitions) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setTimeout(30);
+        return new UserAuditTrail(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory),
+                transactionTemplate, jdbcTemplate, meterRegistry, capacity, batchSize, maxDelay, admissionWait,
+                retryInterval, managePartitions);
+    }
+}
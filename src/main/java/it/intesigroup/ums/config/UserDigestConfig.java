@@ -0,0 +1,35 @@
+package it.intesigroup.ums.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import it.intesigroup.ums.service.UserChangeLog;
+import it.intesigroup.ums.service.UserDigestIndex;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.users.digest.enabled", havingValue = "true", matchIfMissing = true)
+public class UserDigestConfig {
+
+    // costruito in background dopo l'avvio (ApplicationReadyEvent); fino ad allora le API rispondono 503.
+    // user_changes è scritto solo con lo stream abilitato: senza, le foglie sono invalidate dai soli eventi locali
+    @Bean(destroyMethod = "close")
+    UserDigestIndex userDigestIndex(UserRepository userRepository,
+                                    UserChangeRepository changeRepository,
+                                    ObjectProvider<UserChangeLog> changeLog,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.users.digest.poll-interval:PT1S}") Duration pollInterval,
+                                    @Value("${app.users.digest.gap-timeout:PT10M}") Duration gapTimeout,
+                                    @Value("${app.users.digest.min-leaf-size:16}") int minLeafSize,
+                                    @Value("${app.users.digest.max-leaf-size:4096}") int maxLeafSize,
+                                    @Value("${app.users.digest.max-entries:10000}") int maxEntries) {
+        return new UserDigestIndex(userRepository, changeLog.getIfAvailable() != null ? changeRepository : null,
+                meterRegistry, pollInterval, gapTimeout, minLeafSize, maxLeafSize, maxEntries);
+    }
+}
@@ -0,0 +1,53 @@
+package it.intesigroup.ums.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.repository.SnapshotJobRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import it.intesigroup.ums.service.UserSnapshotPublisher;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.users.snapshot.enabled", havingValue = "true")
+public class UserSnapshotConfig {
+
+    @Bean(destroyMethod = "close")
+    UserSnapshotPublisher userSnapshotPublisher(UserRepository userRepository,
+                                                SnapshotJobRepository jobRepository,
+                                                ConnectionFactory connectionFactory,
+                                                Jackson2JsonMessageConverter converter,
+                                                PlatformTransactionManager transactionManager,
+                                                MeterRegistry meterRegistry,
+                                                @Value("${app.events.exchange}") String exchange,
+                                                @Value("${app.users.snapshot.batch-size:500}") int batchSize,
+                                                @Value("${app.users.snapshot.default-rate:2000}") int defaultRate,
+                                                @Value("${app.users.snapshot.max-rate:10000}") int maxRate,
+                                                @Value("${app.users.snapshot.confirm-timeout:PT30S}") Duration confirmTimeout,
+                                                @Value("${app.users.snapshot.stale-after:PT5M}") Duration staleAfter) {
+        // senza conferme le future di CorrelationData non si completano mai; senza returns un messaggio
+        // non instradato risulterebbe confermato
+        if (!connectionFactory.isPublisherConfirms() || !connectionFactory.isPublisherReturns()) {
+            throw new IllegalStateException("Gli snapshot richiedono spring.rabbitmq.publisher-confirm-type=correlated"
+                    + " e spring.rabbitmq.publisher-returns=true");
+        }
+        // template dedicato: gli eventi best-effort di UserService restano non mandatory
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setMessageConverter(converter);
+        rabbitTemplate.setMandatory(true);
+        // letture brevi e readOnly: con il routing abilitato vanno sulle repliche
+        TransactionTemplate readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        readTransaction.setTimeout(30);
+        return new UserSnapshotPublisher(userRepository, jobRepository, rabbitTemplate, readTransaction,
+                meterRegistry, exchange, batchSize, defaultRate, maxRate, confirmTimeout, staleAfter);
+    }
+}
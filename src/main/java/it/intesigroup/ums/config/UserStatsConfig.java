@@ -0,0 +1,25 @@
+package it.intesigroup.ums.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.repository.UserRepository;
+import it.intesigroup.ums.service.UserStatsIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.users.stats.enabled", havingValue = "true", matchIfMissing = true)
+public class UserStatsConfig {
+
+    // prima riconciliazione all'avvio (ApplicationReadyEvent); fino ad allora GET /api/users/stats risponde 503
+    @Bean(destroyMethod = "close")
+    UserStatsIndex userStatsIndex(UserRepository userRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.users.stats.reconcile-interval:PT10M}") Duration reconcileInterval,
+                                  @Value("${app.users.stats.days:30}") int days) {
+        return new UserStatsIndex(userRepository, meterRegistry, reconcileInterval, days);
+    }
+}
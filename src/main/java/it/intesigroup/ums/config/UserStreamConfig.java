@@ -0,0 +1,36 @@
+package it.intesigroup.ums.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import it.intesigroup.ums.service.UserChangeStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.users.stream.enabled", havingValue = "true", matchIfMissing = true)
+public class UserStreamConfig {
+
+    @Bean(destroyMethod = "close")
+    UserChangeStream userChangeStream(UserChangeRepository changeRepository,
+                                      ObjectMapper objectMapper,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${app.users.stream.poll-interval:PT0.5S}") Duration pollInterval,
+                                      @Value("${app.users.stream.poll-batch:1000}") int pollBatch,
+                                      @Value("${app.users.stream.gap-timeout:PT10M}") Duration gapTimeout,
+                                      @Value("${app.users.stream.window-size:10000}") int windowSize,
+                                      @Value("${app.users.stream.sender-threads:4}") int senderThreads,
+                                      @Value("${app.users.stream.max-subscribers:10000}") int maxSubscribers,
+                                      @Value("${app.users.stream.heartbeat:PT15S}") Duration heartbeat,
+                                      @Value("${app.users.stream.timeout:PT30M}") Duration timeout,
+                                      @Value("${app.users.stream.retention:P1D}") Duration retention) {
+        // avviato su ApplicationReadyEvent: durante il refresh (e nel run di training CDS) non legge il database
+        return new UserChangeStream(changeRepository, objectMapper, meterRegistry,
+                pollInterval, pollBatch, gapTimeout, windowSize, senderThreads, maxSubscribers, heartbeat,
+                timeout, retention);
+    }
+}
@@ -0,0 +1,32 @@
+package it.intesigroup.ums.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.intesigroup.ums.service.StartupWarmup;
+import it.intesigroup.ums.service.UserService;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class WarmupConfig {
+
+    @Bean
+    StartupWarmup startupWarmup(UserService userService,
+                                ObjectMapper objectMapper,
+                                Validator validator,
+                                JwtAuthenticationConverter jwtAuthenticationConverter,
+                                LoggingSystem loggingSystem,
+                                @Value("${app.warmup.duration:PT15S}") Duration duration,
+                                @Value("${app.warmup.max-iterations:20000}") int maxIterations,
+                                @Value("${app.warmup.threads:2}") int threads) {
+        return new StartupWarmup(userService, objectMapper, validator, jwtAuthenticationConverter, loggingSystem,
+                duration, maxIterations, threads);
+    }
+}
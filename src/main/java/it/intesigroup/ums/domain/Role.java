@@ -1,9 +1,37 @@
 package it.intesigroup.ums.domain;
 
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+// L'ordine delle costanti è persistito nella colonna users.roles_mask (bit = 1 << ordinal):
+// nuovi ruoli vanno aggiunti solo in coda.
 public enum Role {
     OWNER,
     OPERATOR,
     MAINTAINER,
     DEVELOPER,
-    REPORTER
+    REPORTER;
+
+    private static final Role[] VALUES = values();
+
+    public short bit() {
+        return (short) (1 << ordinal());
+    }
+
+    public static short toMask(Collection<Role> roles) {
+        int mask = 0;
+        if (roles != null) {
+            for (Role r : roles) mask |= r.bit();
+        }
+        return (short) mask;
+    }
+
+    public static Set<Role> fromMask(int mask) {
+        EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+        for (Role r : VALUES) {
+            if ((mask & r.bit()) != 0) roles.add(r);
+        }
+        return roles;
+    }
 }
@@ -0,0 +1,85 @@
+package it.intesigroup.ums.domain;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "snapshot_jobs")
+public class SnapshotJob {
+    @Id
+    @UuidV7Id
+    @Column(columnDefinition = "uuid")
+    private UUID id;
+
+    @Column(name = "routing_key", nullable = false, length = 255)
+    private String routingKey;
+
+    // intervallo di id [fromId, toId), estremi facoltativi
+    @Column(name = "from_id", columnDefinition = "uuid")
+    private UUID fromId;
+
+    @Column(name = "to_id", columnDefinition = "uuid")
+    private UUID toId;
+
+    @Column(name = "updated_since")
+    private OffsetDateTime updatedSince;
+
+    @Column(name = "include_deleted", nullable = false)
+    private boolean includeDeleted;
+
+    // messaggi al secondo
+    @Column(nullable = false)
+    private int rate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private SnapshotStatus status = SnapshotStatus.PENDING;
+
+    // ultimo id pubblicato e confermato
+    @Column(name = "cursor_id", columnDefinition = "uuid")
+    private UUID cursor;
+
+    @Column(nullable = false)
+    private long published;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt;
+
+    @PrePersist
+    void onCreate() {
+        OffsetDateTime now = OffsetDateTime.now();
+        createdAt = now;
+        updatedAt = now;
+    }
+
+    public UUID getId() { return id; }
+    public String getRoutingKey() { return routingKey; }
+    public void setRoutingKey(String routingKey) { this.routingKey = routingKey; }
+    public UUID getFromId() { return fromId; }
+    public void setFromId(UUID fromId) { this.fromId = fromId; }
+    public UUID getToId() { return toId; }
+    public void setToId(UUID toId) { this.toId = toId; }
+    public OffsetDateTime getUpdatedSince() { return updatedSince; }
+    public void setUpdatedSince(OffsetDateTime updatedSince) { this.updatedSince = updatedSince; }
+    public boolean isIncludeDeleted() { return includeDeleted; }
+    public void setIncludeDeleted(boolean includeDeleted) { this.includeDeleted = includeDeleted; }
+    public int getRate() { return rate; }
+    public void setRate(int rate) { this.rate = rate; }
+    public SnapshotStatus getStatus() { return status; }
+    public void setStatus(SnapshotStatus status) { this.status = status; }
+    public UUID getCursor() { return cursor; }
+    public void setCursor(UUID cursor) { this.cursor = cursor; }
+    public long getPublished() { return published; }
+    public void setPublished(long published) { this.published = published; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    public OffsetDateTime getCreatedAt() { return createdAt; }
+    public OffsetDateTime getUpdatedAt() { return updatedAt; }
+}
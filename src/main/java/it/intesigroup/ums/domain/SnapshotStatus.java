@@ -0,0 +1,9 @@
+package it.intesigroup.ums.domain;
+
+public enum SnapshotStatus {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+}
@@ -7,18 +7,16 @@ import java.util.Set;
 import java.util.UUID;
 
 @Entity
+// Su PostgreSQL l'unicità è sugli indici funzionali lower(email)/upper(codice_fiscale) (V6);
+// i vincoli qui sotto valgono per lo schema generato nei test, con valori già normalizzati.
 @Table(name = "users",
        uniqueConstraints = {
            @UniqueConstraint(name = "uk_users_email", columnNames = "email"),
            @UniqueConstraint(name = "uk_users_codice_fiscale", columnNames = "codice_fiscale")
-       },
-       indexes = {
-           @Index(name = "idx_users_email", columnList = "email"),
-           @Index(name = "idx_users_codice_fiscale", columnList = "codice_fiscale")
        })
 public class User {
     @Id
-    @GeneratedValue
+    @UuidV7Id
     @Column(columnDefinition = "uuid")
     private UUID id;
 
@@ -47,12 +45,18 @@ public class User {
     @Column(name = "updated_at", nullable = false)
     private OffsetDateTime updatedAt;
 
-    @ElementCollection(fetch = FetchType.EAGER)
+    // Ruoli letti da questa colonna (vedi Role.bit()), senza join su user_roles
+    @Column(name = "roles_mask", nullable = false)
+    private short rolesMask;
+
+    // Tabella normalizzata mantenuta allineata a rolesMask; caricata solo quando i ruoli cambiano
+    @ElementCollection(fetch = FetchType.LAZY)
     @CollectionTable(name = "user_roles",
-        joinColumns = @JoinColumn(name = "user_id", referencedColumnName = "id"))
+        joinColumns = @JoinColumn(name = "user_id", referencedColumnName = "id"),
+        indexes = @Index(name = "idx_user_roles_role_user", columnList = "role, user_id"))
     @Enumerated(EnumType.STRING)
     @Column(name = "role", length = 20, nullable = false)
-    private Set<Role> roles = new HashSet<>();
+    private Set<Role> roleRows = new HashSet<>();
 
     @PrePersist
     void onCreate() {
@@ -66,6 +70,24 @@ public class User {
         updatedAt = OffsetDateTime.now();
     }
 
+    // Istanza non gestita da JPA, letta con un altro accesso ai dati (percorso reattivo, R2DBC): solo lettura
+    public static User detached(UUID id, String username, String email, String codiceFiscale, String nome,
+                                String cognome, UserStatus status, OffsetDateTime createdAt,
+                                OffsetDateTime updatedAt, short rolesMask) {
+        User u = new User();
+        u.id = id;
+        u.username = username;
+        u.email = email;
+        u.codiceFiscale = codiceFiscale;
+        u.nome = nome;
+        u.cognome = cognome;
+        u.status = status;
+        u.createdAt = createdAt;
+        u.updatedAt = updatedAt;
+        u.rolesMask = rolesMask;
+        return u;
+    }
+
     public UUID getId() { return id; }
     public String getUsername() { return username; }
     public void setUsername(String username) { this.username = username; }
@@ -81,6 +103,15 @@ public class User {
     public void setStatus(UserStatus status) { this.status = status; }
     public OffsetDateTime getCreatedAt() { return createdAt; }
     public OffsetDateTime getUpdatedAt() { return updatedAt; }
-    public Set<Role> getRoles() { return roles; }
-    public void setRoles(Set<Role> roles) { this.roles = roles; }
+    public Set<Role> getRoles() { return Role.fromMask(rolesMask); }
+    public short getRolesMask() { return rolesMask; }
+
+    public void setRoles(Set<Role> roles) {
+        short mask = Role.toMask(roles);
+        if (mask == rolesMask) return;
+        rolesMask = mask;
+        // aggiornamento per differenza: Hibernate scrive solo le righe aggiunte/rimosse
+        roleRows.retainAll(roles);
+        roleRows.addAll(roles);
+    }
 }
@@ -0,0 +1,62 @@
+package it.intesigroup.ums.domain;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+// Riga dello storico user_audit (V10): chi ha modificato quali campi di un utente e quando.
+// L'id è assegnato alla creazione (UUIDv7, ordinato nel tempo), così una scrittura ritentata non ne genera uno nuovo.
+@Entity
+@Immutable
+@Table(name = "user_audit")
+public class UserAudit {
+    // valore di un campo prima e dopo la modifica; i ruoli sono elenchi ordinati di nomi
+    public record FieldChange(Object from, Object to) {}
+
+    @Id
+    @Column(columnDefinition = "uuid")
+    private UUID id;
+
+    @Column(name = "user_id", nullable = false, columnDefinition = "uuid")
+    private UUID userId;
+
+    // nome di UserChangedEvent.Type
+    @Column(nullable = false, length = 16)
+    private String action;
+
+    // subject del JWT di chi ha fatto la modifica
+    @Column(nullable = false, length = 255)
+    private String actor;
+
+    // solo i campi cambiati, con i nomi JSON di UserResponse
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(nullable = false)
+    private Map<String, FieldChange> changes;
+
+    // istante del commit della modifica: è anche la chiave di partizione
+    @Column(name = "changed_at", nullable = false)
+    private OffsetDateTime changedAt;
+
+    protected UserAudit() { }
+
+    public UserAudit(UUID userId, String action, String actor, Map<String, FieldChange> changes, OffsetDateTime changedAt) {
+        this.id = UuidV7.generate();
+        this.userId = userId;
+        this.action = action;
+        this.actor = actor;
+        this.changes = changes;
+        this.changedAt = changedAt;
+    }
+
+    public UUID getId() { return id; }
+    public UUID getUserId() { return userId; }
+    public String getAction() { return action; }
+    public String getActor() { return actor; }
+    public Map<String, FieldChange> getChanges() { return changes; }
+    public OffsetDateTime getChangedAt() { return changedAt; }
+}
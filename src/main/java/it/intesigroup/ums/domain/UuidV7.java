@@ -0,0 +1,33 @@
+package it.intesigroup.ums.domain;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generatore di UUID versione 7 (RFC 9562): i primi 48 bit sono il timestamp Unix in millisecondi,
+ * quindi gli id crescono con l'ordine di creazione e gli inserimenti finiscono in coda agli indici B-tree.
+ * I 12 bit di rand_a fanno da contatore per mantenere la monotonia nello stesso millisecondo.
+ */
+public final class UuidV7 {
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    // timestamp (48 bit) e contatore (12 bit) dell'ultimo id emesso
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private UuidV7() { }
+
+    public static UUID generate() {
+        long now = System.currentTimeMillis() << 12;
+        long state = LAST.updateAndGet(last -> Math.max(now, last + 1));
+        long timestamp = state >>> 12;
+        long counter = state & 0xFFFL;
+
+        long msb = (timestamp << 16) | 0x7000L | counter;
+        long lsb = (RANDOM.get().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    public static long timestampMillis(UUID uuid) {
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+}
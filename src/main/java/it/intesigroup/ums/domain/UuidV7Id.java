@@ -0,0 +1,18 @@
+package it.intesigroup.ums.domain;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Identificativo generato lato applicazione come UUID versione 7, ordinato per tempo di creazione.
+ */
+@IdGeneratorType(UuidV7Generator.class)
+@Target({FIELD})
+@Retention(RUNTIME)
+public @interface UuidV7Id {
+}
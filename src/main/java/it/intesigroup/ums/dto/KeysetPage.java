@@ -0,0 +1,21 @@
+package it.intesigroup.ums.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+public class KeysetPage<T> {
+    private List<T> content;
+    private UUID nextCursor;
+
+    public KeysetPage() { }
+
+    public KeysetPage(List<T> content, UUID nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() { return content; }
+    public void setContent(List<T> content) { this.content = content; }
+    public UUID getNextCursor() { return nextCursor; }
+    public void setNextCursor(UUID nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -0,0 +1,41 @@
+package it.intesigroup.ums.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+public class SnapshotRequest {
+    @NotBlank
+    @Size(max = 255)
+    private String routingKey;
+
+    // intervallo di id [fromId, toId); entrambi facoltativi
+    private UUID fromId;
+
+    private UUID toId;
+
+    // solo utenti modificati da questo istante in poi
+    private OffsetDateTime updatedSince;
+
+    private boolean includeDeleted;
+
+    // messaggi al secondo; se assente si usa app.users.snapshot.default-rate
+    @Positive
+    private Integer rate;
+
+    public String getRoutingKey() { return routingKey; }
+    public void setRoutingKey(String routingKey) { this.routingKey = routingKey; }
+    public UUID getFromId() { return fromId; }
+    public void setFromId(UUID fromId) { this.fromId = fromId; }
+    public UUID getToId() { return toId; }
+    public void setToId(UUID toId) { this.toId = toId; }
+    public OffsetDateTime getUpdatedSince() { return updatedSince; }
+    public void setUpdatedSince(OffsetDateTime updatedSince) { this.updatedSince = updatedSince; }
+    public boolean isIncludeDeleted() { return includeDeleted; }
+    public void setIncludeDeleted(boolean includeDeleted) { this.includeDeleted = includeDeleted; }
+    public Integer getRate() { return rate; }
+    public void setRate(Integer rate) { this.rate = rate; }
+}
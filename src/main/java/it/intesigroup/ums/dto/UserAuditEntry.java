@@ -0,0 +1,26 @@
+package it.intesigroup.ums.dto;
+
+import it.intesigroup.ums.domain.UserAudit;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+public class UserAuditEntry {
+    private UUID id;
+    private String action;
+    private String actor;
+    private Map<String, UserAudit.FieldChange> changes;
+    private OffsetDateTime changedAt;
+
+    public UUID getId() { return id; }
+    public void setId(UUID id) { this.id = id; }
+    public String getAction() { return action; }
+    public void setAction(String action) { this.action = action; }
+    public String getActor() { return actor; }
+    public void setActor(String actor) { this.actor = actor; }
+    public Map<String, UserAudit.FieldChange> getChanges() { return changes; }
+    public void setChanges(Map<String, UserAudit.FieldChange> changes) { this.changes = changes; }
+    public OffsetDateTime getChangedAt() { return changedAt; }
+    public void setChangedAt(OffsetDateTime changedAt) { this.changedAt = changedAt; }
+}
@@ -0,0 +1,76 @@
+package it.intesigroup.ums.dto;
+
+import it.intesigroup.ums.exception.BadRequestException;
+import org.springframework.data.domain.Sort;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Campi selezionabili con il parametro {@code fields} di list/get, con il relativo attributo
+ * dell'entità {@code User} letto dalla proiezione.
+ */
+public enum UserField {
+    ID("id", "id"),
+    USERNAME("username", "username"),
+    EMAIL("email", "email"),
+    CODICE_FISCALE("codiceFiscale", "codiceFiscale"),
+    NOME("nome", "nome"),
+    COGNOME("cognome", "cognome"),
+    STATUS("status", "status"),
+    CREATED_AT("createdAt", "createdAt"),
+    UPDATED_AT("updatedAt", "updatedAt"),
+    // dalla colonna roles_mask: nessun join su user_roles
+    ROLES("roles", "rolesMask");
+
+    private final String jsonName;
+    private final String attribute;
+
+    UserField(String jsonName, String attribute) {
+        this.jsonName = jsonName;
+        this.attribute = attribute;
+    }
+
+    public String jsonName() { return jsonName; }
+    public String attribute() { return attribute; }
+
+    // Formato "id,username,status"; nomi come nel JSON di UserResponse
+    public static Set<UserField> parse(String fields) {
+        EnumSet<UserField> selected = EnumSet.noneOf(UserField.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) continue;
+            selected.add(byJsonName(trimmed));
+        }
+        if (selected.isEmpty()) {
+            throw new BadRequestException("fields deve contenere almeno un campo");
+        }
+        return selected;
+    }
+
+    /**
+     * Ordinamento delle liste, uguale per le API servlet e reattive: solo campi di {@code fields} diversi da
+     * {@code roles}, con {@code id} come ultimo criterio (e unico se {@code sort} è vuoto) perché le pagine
+     * non si sovrappongano.
+     */
+    public static Sort pageSort(Sort requested) {
+        for (Sort.Order order : requested) {
+            sortable(order.getProperty());
+        }
+        return requested.getOrderFor(ID.attribute) != null ? requested : requested.and(Sort.by(ID.attribute));
+    }
+
+    public static UserField sortable(String property) {
+        for (UserField f : values()) {
+            if (f != ROLES && f.attribute.equals(property)) return f;
+        }
+        throw new BadRequestException("Campo non valido in sort: " + property);
+    }
+
+    private static UserField byJsonName(String name) {
+        for (UserField f : values()) {
+            if (f.jsonName.equals(name)) return f;
+        }
+        throw new BadRequestException("Campo non valido in fields: " + name);
+    }
+}
@@ -0,0 +1,22 @@
+package it.intesigroup.ums.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+// Risposta del lookup per id: utenti trovati e id mancanti, entrambi nell'ordine della richiesta
+public class UserLookupResponse {
+    private List<UserResponse> users;
+    private List<UUID> missingIds;
+
+    public UserLookupResponse() { }
+
+    public UserLookupResponse(List<UserResponse> users, List<UUID> missingIds) {
+        this.users = users;
+        this.missingIds = missingIds;
+    }
+
+    public List<UserResponse> getUsers() { return users; }
+    public void setUsers(List<UserResponse> users) { this.users = users; }
+    public List<UUID> getMissingIds() { return missingIds; }
+    public void setMissingIds(List<UUID> missingIds) { this.missingIds = missingIds; }
+}
@@ -0,0 +1,5 @@
+package it.intesigroup.ums.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) { super(message); }
+}
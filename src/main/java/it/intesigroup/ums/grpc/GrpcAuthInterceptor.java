@@ -0,0 +1,66 @@
+package it.intesigroup.ums.grpc;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import it.intesigroup.ums.security.SecurityUtils;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * Autenticazione delle chiamate gRPC con lo stesso JWT (e la stessa conversione dei ruoli)
+ * delle API REST. L'{@link Authentication} risultante è disponibile nel {@link Context} della chiamata.
+ */
+public class GrpcAuthInterceptor implements ServerInterceptor {
+    public static final Context.Key<Authentication> AUTHENTICATION = Context.key("ums-authentication");
+
+    private static final Metadata.Key<String> AUTHORIZATION =
+            Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+    private static final String BEARER = "Bearer ";
+    // stessi ruoli richiesti dalle GET su /api/users/**
+    private static final String[] READ_ROLES = {"OWNER", "OPERATOR", "MAINTAINER", "DEVELOPER", "REPORTER"};
+
+    private final JwtDecoder jwtDecoder;
+    private final Converter<Jwt, ? extends AbstractAuthenticationToken> authenticationConverter;
+
+    public GrpcAuthInterceptor(JwtDecoder jwtDecoder,
+                               Converter<Jwt, ? extends AbstractAuthenticationToken> authenticationConverter) {
+        this.jwtDecoder = jwtDecoder;
+        this.authenticationConverter = authenticationConverter;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String header = headers.get(AUTHORIZATION);
+        if (header == null || !header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return reject(call, Status.UNAUTHENTICATED.withDescription("Token mancante"));
+        }
+
+        Authentication auth;
+        try {
+            auth = authenticationConverter.convert(jwtDecoder.decode(header.substring(BEARER.length())));
+        } catch (JwtException e) {
+            return reject(call, Status.UNAUTHENTICATED.withDescription("Token non valido"));
+        }
+        if (!SecurityUtils.hasAnyRole(auth, READ_ROLES)) {
+            return reject(call, Status.PERMISSION_DENIED.withDescription("Ruolo non autorizzato"));
+        }
+
+        Context ctx = Context.current().withValue(AUTHENTICATION, auth);
+        return Contexts.interceptCall(ctx, call, headers, next);
+    }
+
+    private static <ReqT, RespT> ServerCall.Listener<ReqT> reject(ServerCall<ReqT, RespT> call, Status status) {
+        call.close(status, new Metadata());
+        return new ServerCall.Listener<>() { };
+    }
+}
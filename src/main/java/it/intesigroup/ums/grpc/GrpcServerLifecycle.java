@@ -0,0 +1,63 @@
+package it.intesigroup.ums.grpc;
+
+import io.grpc.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Avvia il server gRPC insieme al contesto Spring (dopo i bean applicativi) e lo arresta
+ * con un periodo di grazia per le chiamate in corso.
+ */
+public class GrpcServerLifecycle implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(GrpcServerLifecycle.class);
+
+    private final Server server;
+    private final Duration shutdownGracePeriod;
+    private volatile boolean running;
+
+    public GrpcServerLifecycle(Server server, Duration shutdownGracePeriod) {
+        this.server = server;
+        this.shutdownGracePeriod = shutdownGracePeriod;
+    }
+
+    @Override
+    public void start() {
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Avvio del server gRPC fallito", e);
+        }
+        running = true;
+        log.info("Server gRPC in ascolto sulla porta {}", server.getPort());
+    }
+
+    @Override
+    public void stop() {
+        server.shutdown();
+        try {
+            if (!server.awaitTermination(shutdownGracePeriod.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Chiamate gRPC ancora attive dopo {}, chiusura forzata", shutdownGracePeriod);
+                server.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.shutdownNow();
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+}
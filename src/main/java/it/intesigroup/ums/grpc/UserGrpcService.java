@@ -0,0 +1,181 @@
+package it.intesigroup.ums.grpc;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.exception.NotFoundException;
+import it.intesigroup.ums.mapper.UserMapper;
+import it.intesigroup.ums.mapper.UserProtoMapper;
+import it.intesigroup.ums.proto.BatchGetUsersRequest;
+import it.intesigroup.ums.proto.BatchGetUsersResponse;
+import it.intesigroup.ums.proto.GetUserRequest;
+import it.intesigroup.ums.proto.ListUsersRequest;
+import it.intesigroup.ums.proto.ListUsersResponse;
+import it.intesigroup.ums.proto.UserQueryServiceGrpc;
+import it.intesigroup.ums.security.SecurityUtils;
+import it.intesigroup.ums.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Implementazione gRPC delle letture utente, costruita su {@link UserService}. Il masking segue le
+ * API REST: i campi sensibili sono in chiaro solo per OWNER/MAINTAINER.
+ */
+public class UserGrpcService extends UserQueryServiceGrpc.UserQueryServiceImplBase {
+    private static final Logger log = LoggerFactory.getLogger(UserGrpcService.class);
+    static final int MAX_BATCH_SIZE = 500;
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    private final UserService userService;
+
+    public UserGrpcService(UserService userService) {
+        this.userService = userService;
+    }
+
+    @Override
+    public void getUser(GetUserRequest request, StreamObserver<it.intesigroup.ums.proto.User> responseObserver) {
+        UUID id = parseId(request.getId());
+        if (id == null) {
+            responseObserver.onError(invalidId());
+            return;
+        }
+        try {
+            User u = userService.getUser(id);
+            responseObserver.onNext(toProto(u, maskSensitive()));
+            responseObserver.onCompleted();
+        } catch (NotFoundException e) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription(e.getMessage()).asRuntimeException());
+        }
+    }
+
+    @Override
+    public void batchGetUsers(BatchGetUsersRequest request, StreamObserver<BatchGetUsersResponse> responseObserver) {
+        if (request.getIdsCount() > MAX_BATCH_SIZE) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Al massimo " + MAX_BATCH_SIZE + " id per richiesta").asRuntimeException());
+            return;
+        }
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (ByteString raw : request.getIdsList()) {
+            UUID id = parseId(raw);
+            if (id == null) {
+                responseObserver.onError(invalidId());
+                return;
+            }
+            ids.add(id);
+        }
+
+        Map<UUID, User> found = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (User u : userService.getUsers(ids)) found.put(u.getId(), u);
+        }
+
+        // risposta nell'ordine della richiesta
+        boolean mask = maskSensitive();
+        BatchGetUsersResponse.Builder response = BatchGetUsersResponse.newBuilder();
+        for (UUID id : ids) {
+            User u = found.get(id);
+            if (u != null) {
+                response.addUsers(toProto(u, mask));
+            } else {
+                response.addMissingIds(UserProtoMapper.toBytes(id));
+            }
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void listUsers(ListUsersRequest request, StreamObserver<ListUsersResponse> responseObserver) {
+        UUID after = null;
+        if (!request.getAfter().isEmpty()) {
+            after = parseId(request.getAfter());
+            if (after == null) {
+                responseObserver.onError(invalidId());
+                return;
+            }
+        }
+        if (request.getLimit() < 0) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("limit negativo").asRuntimeException());
+            return;
+        }
+
+        ServerCallStreamObserver<ListUsersResponse> call = (ServerCallStreamObserver<ListUsersResponse>) responseObserver;
+        long limit = request.getLimit() == 0 ? Long.MAX_VALUE : request.getLimit();
+        call.setOnCancelHandler(() -> log.debug("Streaming utenti annullato dal client"));
+        call.setOnReadyHandler(new UserStream(call, after, limit, maskSensitive()));
+    }
+
+    private it.intesigroup.ums.proto.User toProto(User u, boolean mask) {
+        return UserProtoMapper.toProto(UserMapper.toResponse(u, mask));
+    }
+
+    private static boolean maskSensitive() {
+        return !SecurityUtils.hasAnyRole(GrpcAuthInterceptor.AUTHENTICATION.get(), "OWNER", "MAINTAINER");
+    }
+
+    private static UUID parseId(ByteString raw) {
+        return raw.size() == 16 ? UserProtoMapper.toUuid(raw) : null;
+    }
+
+    private static RuntimeException invalidId() {
+        return Status.INVALID_ARGUMENT.withDescription("id non valido: attesi 16 byte").asRuntimeException();
+    }
+
+    /**
+     * Invio a pagine keyset rispettando il flow control: la pagina successiva viene letta solo quando
+     * il client ha consumato la precedente (onReady), quindi la memoria resta limitata a una pagina.
+     */
+    private final class UserStream implements Runnable {
+        private final ServerCallStreamObserver<ListUsersResponse> call;
+        private final boolean mask;
+        private UUID cursor;
+        private long remaining;
+        private boolean done;
+
+        UserStream(ServerCallStreamObserver<ListUsersResponse> call, UUID after, long limit, boolean mask) {
+            this.call = call;
+            this.cursor = after;
+            this.remaining = limit;
+            this.mask = mask;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!done && call.isReady()) {
+                    if (call.isCancelled()) {
+                        done = true;
+                        return;
+                    }
+                    List<User> page = remaining > 0
+                            ? userService.listUsersAfter(cursor, (int) Math.min(STREAM_PAGE_SIZE, remaining))
+                            : List.of();
+                    if (page.isEmpty()) {
+                        done = true;
+                        call.onCompleted();
+                        return;
+                    }
+                    ListUsersResponse.Builder response = ListUsersResponse.newBuilder();
+                    for (User u : page) response.addUsers(toProto(u, mask));
+                    cursor = page.get(page.size() - 1).getId();
+                    remaining -= page.size();
+                    call.onNext(response.build());
+                }
+            } catch (RuntimeException e) {
+                done = true;
+                log.warn("Errore durante lo streaming utenti dopo {}", cursor, e);
+                call.onError(Status.INTERNAL.withDescription("Errore durante lo streaming utenti").asRuntimeException());
+            }
+        }
+    }
+}
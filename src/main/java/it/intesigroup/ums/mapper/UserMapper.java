@@ -1,7 +1,18 @@
 package it.intesigroup.ums.mapper;
 
+import it.intesigroup.ums.domain.Role;
 import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserAudit;
+import it.intesigroup.ums.domain.UserChange;
+import it.intesigroup.ums.dto.UserAuditEntry;
+import it.intesigroup.ums.dto.UserField;
 import it.intesigroup.ums.dto.UserResponse;
+import jakarta.persistence.Tuple;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 public class UserMapper {
     public static UserResponse toResponse(User u) {
@@ -23,17 +34,71 @@ public class UserMapper {
         return res;
     }
 
+    // Stato dell'utente registrato in user_changes, per lo stream SSE: stesso masking di toResponse
+    public static UserResponse toResponse(UserChange c, boolean maskSensitive) {
+        UserResponse res = new UserResponse();
+        res.setId(c.getUserId());
+        res.setUsername(c.getUsername());
+        res.setEmail(maskSensitive ? maskEmail(c.getEmail()) : c.getEmail());
+        res.setCodiceFiscale(maskSensitive ? maskCf(c.getCodiceFiscale()) : c.getCodiceFiscale());
+        res.setNome(c.getNome());
+        res.setCognome(c.getCognome());
+        res.setStatus(c.getStatus());
+        res.setCreatedAt(c.getCreatedAt());
+        res.setUpdatedAt(c.getUpdatedAt());
+        res.setRoles(Role.fromMask(c.getRolesMask()));
+        return res;
+    }
+
+    // Storico visibile solo a chi vede i dati sensibili (OWNER, MAINTAINER): nessun masking
+    public static UserAuditEntry toAuditEntry(UserAudit a) {
+        UserAuditEntry res = new UserAuditEntry();
+        res.setId(a.getId());
+        res.setAction(a.getAction());
+        res.setActor(a.getActor());
+        res.setChanges(a.getChanges());
+        res.setChangedAt(a.getChangedAt());
+        return res;
+    }
+
+    // Risposta con i soli campi richiesti (fields=...), letti da una proiezione: stesso masking di toResponse
+    public static Map<String, Object> toFieldMap(Tuple row, Set<UserField> fields, boolean maskSensitive) {
+        Map<String, Object> res = new LinkedHashMap<>();
+        for (UserField f : fields) {
+            Object value = row.get(f.jsonName());
+            switch (f) {
+                case EMAIL -> value = maskSensitive ? maskEmail((String) value) : value;
+                case CODICE_FISCALE -> value = maskSensitive ? maskCf((String) value) : value;
+                case ROLES -> value = Role.fromMask((Short) value);
+                default -> { }
+            }
+            res.put(f.jsonName(), value);
+        }
+        return res;
+    }
+
+    // Il masking costruisce il risultato in un unico buffer della lunghezza finale,
+    // senza substring/repeat intermedi: è sul percorso caldo di get e list.
     private static String maskEmail(String email) {
         int at = email.indexOf('@');
         if (at <= 1) return "***";
-        String local = email.substring(0, at);
-        String domain = email.substring(at);
-        String maskedLocal = local.length() <= 2 ? "*".repeat(local.length()) : local.charAt(0) + "*".repeat(local.length() - 2) + local.charAt(local.length() - 1);
-        return maskedLocal + domain;
+        char[] masked = email.toCharArray();
+        if (at == 2) {
+            masked[0] = '*';
+            masked[1] = '*';
+        } else {
+            Arrays.fill(masked, 1, at - 1, '*');
+        }
+        return new String(masked);
     }
 
     private static String maskCf(String cf) {
         if (cf == null || cf.length() < 6) return "********";
-        return cf.substring(0, 3) + "********" + cf.substring(cf.length() - 3);
+        int len = cf.length();
+        char[] masked = new char[14];
+        cf.getChars(0, 3, masked, 0);
+        Arrays.fill(masked, 3, 11, '*');
+        cf.getChars(len - 3, len, masked, 11);
+        return new String(masked);
     }
 }
@@ -0,0 +1,71 @@
+package it.intesigroup.ums.mapper;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.proto.UserPage;
+import org.springframework.data.domain.Page;
+
+import java.nio.ByteBuffer;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Conversione delle risposte REST (già mascherate da {@link UserMapper}) nei messaggi di
+ * {@code ums/v1/user.proto}.
+ */
+public class UserProtoMapper {
+    // corrispondenza per nome con gli enum di dominio, indicizzata per ordinal
+    private static final it.intesigroup.ums.proto.Role[] ROLES = new it.intesigroup.ums.proto.Role[Role.values().length];
+    private static final it.intesigroup.ums.proto.UserStatus[] STATUSES =
+            new it.intesigroup.ums.proto.UserStatus[UserStatus.values().length];
+
+    static {
+        for (Role r : Role.values()) ROLES[r.ordinal()] = it.intesigroup.ums.proto.Role.valueOf(r.name());
+        for (UserStatus s : UserStatus.values()) STATUSES[s.ordinal()] = it.intesigroup.ums.proto.UserStatus.valueOf(s.name());
+    }
+
+    public static it.intesigroup.ums.proto.User toProto(UserResponse r) {
+        it.intesigroup.ums.proto.User.Builder b = it.intesigroup.ums.proto.User.newBuilder()
+                .setId(toBytes(r.getId()))
+                .setUsername(r.getUsername())
+                .setEmail(r.getEmail())
+                .setNome(r.getNome())
+                .setCognome(r.getCognome())
+                .setStatus(STATUSES[r.getStatus().ordinal()]);
+        if (r.getCodiceFiscale() != null) b.setCodiceFiscale(r.getCodiceFiscale());
+        if (r.getCreatedAt() != null) b.setCreatedAt(toTimestamp(r.getCreatedAt()));
+        if (r.getUpdatedAt() != null) b.setUpdatedAt(toTimestamp(r.getUpdatedAt()));
+        if (r.getRoles() != null) {
+            for (Role role : r.getRoles()) b.addRoles(ROLES[role.ordinal()]);
+        }
+        return b.build();
+    }
+
+    public static UserPage toProto(Page<UserResponse> page) {
+        UserPage.Builder b = UserPage.newBuilder()
+                .setNumber(page.getNumber())
+                .setSize(page.getSize())
+                .setTotalElements(page.getTotalElements())
+                .setTotalPages(page.getTotalPages());
+        for (UserResponse r : page.getContent()) b.addContent(toProto(r));
+        return b.build();
+    }
+
+    public static UUID toUuid(ByteString bytes) {
+        ByteBuffer buf = bytes.asReadOnlyByteBuffer();
+        return new UUID(buf.getLong(), buf.getLong());
+    }
+
+    public static ByteString toBytes(UUID id) {
+        byte[] out = new byte[16];
+        ByteBuffer.wrap(out).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        return ByteString.copyFrom(out);
+    }
+
+    private static Timestamp toTimestamp(OffsetDateTime t) {
+        return Timestamp.newBuilder().setSeconds(t.toEpochSecond()).setNanos(t.getNano()).build();
+    }
+}
@@ -0,0 +1,68 @@
+package it.intesigroup.ums.reactive;
+
+import it.intesigroup.ums.security.SecurityUtils;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Autenticazione del percorso reattivo con lo stesso JWT (e la stessa conversione dei ruoli) delle API
+ * REST. La verifica della firma non blocca: le chiavi sono già in memoria ({@code CachingJwkSource}),
+ * quindi il decoder può essere chiamato sui thread di I/O. L'{@link Authentication} risultante è
+ * nell'attributo {@link #AUTHENTICATION} della richiesta.
+ */
+public class ReactiveAuthFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+    public static final String AUTHENTICATION = ReactiveAuthFilter.class.getName() + ".authentication";
+
+    private static final String BEARER = "Bearer ";
+    // stessi ruoli richiesti dalle GET su /api/users/**
+    private static final String[] READ_ROLES = {"OWNER", "OPERATOR", "MAINTAINER", "DEVELOPER", "REPORTER"};
+
+    private final JwtDecoder jwtDecoder;
+    private final Converter<Jwt, ? extends AbstractAuthenticationToken> authenticationConverter;
+
+    public ReactiveAuthFilter(JwtDecoder jwtDecoder,
+                              Converter<Jwt, ? extends AbstractAuthenticationToken> authenticationConverter) {
+        this.jwtDecoder = jwtDecoder;
+        this.authenticationConverter = authenticationConverter;
+    }
+
+    @Override
+    public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
+        String header = request.headers().firstHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return unauthorized("Token mancante");
+        }
+
+        Authentication auth;
+        try {
+            auth = authenticationConverter.convert(jwtDecoder.decode(header.substring(BEARER.length())));
+        } catch (JwtException e) {
+            return unauthorized("Token non valido");
+        }
+        if (!SecurityUtils.hasAnyRole(auth, READ_ROLES)) {
+            return ReactiveUserHandler.error(HttpStatus.FORBIDDEN, "Ruolo non autorizzato");
+        }
+
+        request.attributes().put(AUTHENTICATION, auth);
+        return next.handle(request);
+    }
+
+    private static Mono<ServerResponse> unauthorized(String message) {
+        return ServerResponse.status(HttpStatus.UNAUTHORIZED)
+                .header(HttpHeaders.WWW_AUTHENTICATE, "Bearer")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(ReactiveUserHandler.errorBody(HttpStatus.UNAUTHORIZED, message));
+    }
+}
@@ -0,0 +1,66 @@
+package it.intesigroup.ums.reactive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+/**
+ * Avvia il server Reactor Netty del percorso reattivo insieme al contesto Spring (dopo i bean applicativi)
+ * e lo arresta attendendo le richieste in corso fino al periodo di grazia; alla chiusura rilascia il pool R2DBC.
+ * Con il percorso disabilitato ({@link #disabled()}) non fa nulla.
+ */
+public class ReactiveServerLifecycle implements SmartLifecycle, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReactiveServerLifecycle.class);
+
+    private final HttpServer server;
+    private final ReactiveUserRepository repository;
+    private final Duration shutdownGracePeriod;
+    private volatile DisposableServer bound;
+
+    public ReactiveServerLifecycle(HttpServer server, ReactiveUserRepository repository, Duration shutdownGracePeriod) {
+        this.server = server;
+        this.repository = repository;
+        this.shutdownGracePeriod = shutdownGracePeriod;
+    }
+
+    public static ReactiveServerLifecycle disabled() {
+        return new ReactiveServerLifecycle(null, null, Duration.ZERO);
+    }
+
+    @Override
+    public void start() {
+        if (server == null) return;
+        bound = server.bindNow();
+        log.info("Server reattivo in ascolto sulla porta {}", bound.port());
+    }
+
+    @Override
+    public void stop() {
+        DisposableServer current = bound;
+        if (current == null) return;
+        try {
+            current.disposeNow(shutdownGracePeriod);
+        } catch (IllegalStateException e) {
+            log.warn("Richieste ancora attive sul server reattivo dopo {}, chiusura forzata", shutdownGracePeriod);
+        }
+        bound = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return bound != null;
+    }
+
+    public int getPort() {
+        return bound.port();
+    }
+
+    @Override
+    public void close() {
+        if (repository != null) repository.close();
+    }
+}
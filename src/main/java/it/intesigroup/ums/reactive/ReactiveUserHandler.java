@@ -0,0 +1,203 @@
+package it.intesigroup.ums.reactive;
+
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.dto.UserLookupResponse;
+import it.intesigroup.ums.dto.UserField;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.exception.BadRequestException;
+import it.intesigroup.ums.exception.NotFoundException;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import it.intesigroup.ums.mapper.UserMapper;
+import it.intesigroup.ums.security.SecurityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.codec.CodecException;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Letture utente su WebFlux: stessi percorsi, stesso JSON e stesso masking di {@code UserController}
+ * (campi sensibili in chiaro solo per OWNER/MAINTAINER), più il lookup di più utenti per id.
+ */
+public class ReactiveUserHandler {
+    private static final Logger log = LoggerFactory.getLogger(ReactiveUserHandler.class);
+    static final int MAX_BATCH_SIZE = 500;
+    // stessi valori predefiniti della paginazione di Spring Data sulle API servlet
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 2000;
+    private static final ParameterizedTypeReference<List<UUID>> ID_LIST = new ParameterizedTypeReference<>() { };
+
+    private final ReactiveUserRepository repository;
+
+    public ReactiveUserHandler(ReactiveUserRepository repository) {
+        this.repository = repository;
+    }
+
+    /** Rotte con autenticazione ({@code auth} nullo = chiamate anonime) e gestione degli errori. */
+    public RouterFunction<ServerResponse> routes(HandlerFilterFunction<ServerResponse, ServerResponse> auth) {
+        RouterFunction<ServerResponse> routes = RouterFunctions.route()
+                .GET("/api/users", this::list)
+                .GET("/api/users/{id}", this::get)
+                .POST("/api/users/lookup", this::lookup)
+                .build();
+        if (auth != null) routes = routes.filter(auth);
+        // defer: anche le eccezioni lanciate prima di restituire il Mono (es. id non valido) diventano risposte
+        return routes.filter((request, next) -> Mono.defer(() -> next.handle(request))
+                .onErrorResume(ReactiveUserHandler::handleError));
+    }
+
+    Mono<ServerResponse> list(ServerRequest request) {
+        int page = Math.max(0, intParam(request, "page", 0));
+        int size = intParam(request, "size", DEFAULT_PAGE_SIZE);
+        PageRequest pageable = PageRequest.of(page, size < 1 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE),
+                UserField.pageSort(sortParam(request)));
+        boolean mask = maskSensitive(request);
+        // pagina e totale in parallelo, su due connessioni del pool
+        return Mono.zip(
+                        repository.findActiveOrDisabledPage(pageable.getSort(), pageable.getOffset(), pageable.getPageSize())
+                                .map(u -> UserMapper.toResponse(u, mask))
+                                .collectList(),
+                        repository.countActiveOrDisabled())
+                .flatMap(t -> json(HttpStatus.OK, new PageImpl<>(t.getT1(), pageable, t.getT2())));
+    }
+
+    Mono<ServerResponse> get(ServerRequest request) {
+        UUID id = parseId(request.pathVariable("id"), "id");
+        boolean mask = maskSensitive(request);
+        return repository.findActiveOrDisabledById(id)
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("Utente non trovato")))
+                .flatMap(u -> json(HttpStatus.OK, UserMapper.toResponse(u, mask)));
+    }
+
+    Mono<ServerResponse> lookup(ServerRequest request) {
+        boolean mask = maskSensitive(request);
+        return request.bodyToMono(ID_LIST)
+                .defaultIfEmpty(List.of())
+                .flatMap(requested -> {
+                    if (requested.size() > MAX_BATCH_SIZE) {
+                        return Mono.error(new BadRequestException("Al massimo " + MAX_BATCH_SIZE + " id per richiesta"));
+                    }
+                    Set<UUID> ids = new LinkedHashSet<>();
+                    for (UUID id : requested) {
+                        if (id == null) return Mono.error(new BadRequestException("id nullo nella richiesta"));
+                        ids.add(id);
+                    }
+                    if (ids.isEmpty()) return json(HttpStatus.OK, new UserLookupResponse(List.of(), List.of()));
+                    return repository.findActiveOrDisabledByIds(ids.toArray(UUID[]::new))
+                            .collectMap(User::getId)
+                            .flatMap(found -> json(HttpStatus.OK, lookupResponse(ids, found, mask)));
+                });
+    }
+
+    // risposta nell'ordine della richiesta
+    private static UserLookupResponse lookupResponse(Set<UUID> ids, Map<UUID, User> found, boolean mask) {
+        List<UserResponse> users = new ArrayList<>(found.size());
+        List<UUID> missing = new ArrayList<>();
+        for (UUID id : ids) {
+            User u = found.get(id);
+            if (u != null) {
+                users.add(UserMapper.toResponse(u, mask));
+            } else {
+                missing.add(id);
+            }
+        }
+        return new UserLookupResponse(users, missing);
+    }
+
+    private static boolean maskSensitive(ServerRequest request) {
+        Authentication auth = (Authentication) request.attribute(ReactiveAuthFilter.AUTHENTICATION).orElse(null);
+        return !SecurityUtils.hasAnyRole(auth, "OWNER", "MAINTAINER");
+    }
+
+    // stesso formato del parametro sort delle API servlet: sort=campo[,campo...][,asc|desc], ripetibile
+    private static Sort sortParam(ServerRequest request) {
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String value : request.queryParams().getOrDefault("sort", List.of())) {
+            String[] parts = value.split(",");
+            Optional<Sort.Direction> direction = parts.length == 0 ? Optional.empty()
+                    : Sort.Direction.fromOptionalString(parts[parts.length - 1].trim());
+            int properties = direction.isPresent() ? parts.length - 1 : parts.length;
+            for (int i = 0; i < properties; i++) {
+                String property = parts[i].trim();
+                if (!property.isEmpty()) orders.add(new Sort.Order(direction.orElse(Sort.Direction.ASC), property));
+            }
+        }
+        return Sort.by(orders);
+    }
+
+    private static int intParam(ServerRequest request, String name, int defaultValue) {
+        String value = request.queryParam(name).orElse(null);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static UUID parseId(String value, String name) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Valore '" + value + "' non valido per parametro '" + name + "'");
+        }
+    }
+
+    // stessi codici di ErrorHandler; gli errori imprevisti sono registrati qui perché la risposta non li riporta
+    private static Mono<ServerResponse> handleError(Throwable e) {
+        if (e instanceof NotFoundException) return error(HttpStatus.NOT_FOUND, e.getMessage());
+        if (e instanceof BadRequestException) return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        if (e instanceof ServiceUnavailableException) return error(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        if (e instanceof ServerWebInputException || e instanceof CodecException) {
+            return error(HttpStatus.BAD_REQUEST, "Payload JSON non leggibile: " + mostSpecificMessage(e));
+        }
+        log.warn("Errore nel percorso di lettura reattivo", e);
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "Errore interno");
+    }
+
+    static Mono<ServerResponse> error(HttpStatus status, String message) {
+        return json(status, errorBody(status, message));
+    }
+
+    // stesso formato delle risposte di ErrorHandler
+    static Map<String, Object> errorBody(HttpStatus status, String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("timestamp", OffsetDateTime.now());
+        body.put("status", status.value());
+        body.put("error", status.getReasonPhrase());
+        body.put("message", message);
+        return body;
+    }
+
+    private static Mono<ServerResponse> json(HttpStatus status, Object body) {
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+    }
+
+    private static String mostSpecificMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) cause = cause.getCause();
+        return cause.getMessage();
+    }
+}
@@ -0,0 +1,110 @@
+package it.intesigroup.ums.reactive;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Statement;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.dto.UserField;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Letture di {@link User} con R2DBC, senza bloccare i thread di I/O: le stesse query di
+ * {@code UserRepository} (utenti non cancellati, colonna roles_mask al posto di user_roles) scritte in SQL.
+ * <p>
+ * Il pool di connessioni appartiene a questa classe e non è un bean: con un {@code ConnectionFactory}
+ * nel contesto Spring Boot non configurerebbe più DataSource e JdbcTemplate delle API servlet.
+ */
+public class ReactiveUserRepository implements AutoCloseable {
+    private static final String COLUMNS =
+            "id, username, email, codice_fiscale, nome, cognome, status, created_at, updated_at, roles_mask";
+    private static final String NOT_DELETED = "status <> 'DELETED'";
+    private static final Map<UserField, String> SORT_COLUMNS = new EnumMap<>(Map.of(
+            UserField.ID, "id",
+            UserField.USERNAME, "username",
+            UserField.EMAIL, "email",
+            UserField.CODICE_FISCALE, "codice_fiscale",
+            UserField.NOME, "nome",
+            UserField.COGNOME, "cognome",
+            UserField.STATUS, "status",
+            UserField.CREATED_AT, "created_at",
+            UserField.UPDATED_AT, "updated_at"));
+
+    private final ConnectionPool pool;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public ReactiveUserRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public Mono<User> findActiveOrDisabledById(UUID id) {
+        return query("SELECT " + COLUMNS + " FROM users WHERE id = $1 AND " + NOT_DELETED, this::toUser, id).next();
+    }
+
+    public Flux<User> findActiveOrDisabledByIds(UUID[] ids) {
+        return query("SELECT " + COLUMNS + " FROM users WHERE id = ANY($1) AND " + NOT_DELETED, this::toUser, (Object) ids);
+    }
+
+    // sort da UserField.pageSort, come per UserService.listUsers: stesso ordine delle API servlet
+    public Flux<User> findActiveOrDisabledPage(Sort sort, long offset, int limit) {
+        return query("SELECT " + COLUMNS + " FROM users WHERE " + NOT_DELETED + " ORDER BY " + orderBy(sort)
+                + " LIMIT $1 OFFSET $2", this::toUser, limit, offset);
+    }
+
+    public Mono<Long> countActiveOrDisabled() {
+        return query("SELECT count(*) FROM users WHERE " + NOT_DELETED, row -> row.get(0, Long.class)).single();
+    }
+
+    // una connessione del pool per query, restituita al completamento, all'errore o alla cancellazione
+    private <T> Flux<T> query(String sql, Function<Readable, T> mapper, Object... params) {
+        return Flux.usingWhen(pool.create(), c -> {
+            Statement statement = c.createStatement(sql);
+            for (int i = 0; i < params.length; i++) statement.bind(i, params[i]);
+            return Flux.from(statement.execute()).flatMap(result -> result.map(mapper));
+        }, Connection::close);
+    }
+
+    // solo colonne da SORT_COLUMNS: i nomi arrivano dalla richiesta e finiscono nell'SQL
+    private static String orderBy(Sort sort) {
+        StringJoiner columns = new StringJoiner(", ");
+        for (Sort.Order order : sort) {
+            columns.add(SORT_COLUMNS.get(UserField.sortable(order.getProperty())) + (order.isAscending() ? "" : " DESC"));
+        }
+        return columns.toString();
+    }
+
+    @Override
+    public void close() {
+        pool.dispose();
+    }
+
+    // stesso fuso degli OffsetDateTime letti da Hibernate, perché il JSON coincida con quello delle API servlet
+    private User toUser(Readable row) {
+        return User.detached(
+                row.get("id", UUID.class),
+                row.get("username", String.class),
+                row.get("email", String.class),
+                row.get("codice_fiscale", String.class),
+                row.get("nome", String.class),
+                row.get("cognome", String.class),
+                UserStatus.valueOf(row.get("status", String.class)),
+                local(row.get("created_at", OffsetDateTime.class)),
+                local(row.get("updated_at", OffsetDateTime.class)),
+                row.get("roles_mask", Short.class));
+    }
+
+    private OffsetDateTime local(OffsetDateTime t) {
+        return t.atZoneSameInstant(zone).toOffsetDateTime();
+    }
+}
@@ -0,0 +1,47 @@
+package it.intesigroup.ums.repository;
+
+import it.intesigroup.ums.domain.SnapshotJob;
+import it.intesigroup.ums.domain.SnapshotStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+// Transizioni di stato come UPDATE condizionali: con più istanze un solo esecutore per job
+public interface SnapshotJobRepository extends JpaRepository<SnapshotJob, UUID> {
+
+    // Presa in carico di un job nuovo, fallito o in esecuzione senza avanzamenti da prima di staleBefore
+    @Transactional
+    @Modifying
+    @Query("update SnapshotJob j set j.status = it.intesigroup.ums.domain.SnapshotStatus.RUNNING, " +
+           "j.error = null, j.updatedAt = :now where j.id = :id and " +
+           "(j.status in (it.intesigroup.ums.domain.SnapshotStatus.PENDING, it.intesigroup.ums.domain.SnapshotStatus.FAILED) " +
+           "or (j.status = it.intesigroup.ums.domain.SnapshotStatus.RUNNING and j.updatedAt < :staleBefore))")
+    int claim(@Param("id") UUID id, @Param("now") OffsetDateTime now, @Param("staleBefore") OffsetDateTime staleBefore);
+
+    // 0 se il job è stato annullato nel frattempo
+    @Transactional
+    @Modifying
+    @Query("update SnapshotJob j set j.cursor = :cursor, j.published = j.published + :count, j.updatedAt = :now " +
+           "where j.id = :id and j.status = it.intesigroup.ums.domain.SnapshotStatus.RUNNING")
+    int advance(@Param("id") UUID id, @Param("cursor") UUID cursor, @Param("count") long count,
+                @Param("now") OffsetDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update SnapshotJob j set j.status = :status, j.error = :error, j.updatedAt = :now " +
+           "where j.id = :id and j.status = it.intesigroup.ums.domain.SnapshotStatus.RUNNING")
+    int finish(@Param("id") UUID id, @Param("status") SnapshotStatus status, @Param("error") String error,
+               @Param("now") OffsetDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update SnapshotJob j set j.status = it.intesigroup.ums.domain.SnapshotStatus.CANCELLED, j.updatedAt = :now " +
+           "where j.id = :id and j.status not in " +
+           "(it.intesigroup.ums.domain.SnapshotStatus.COMPLETED, it.intesigroup.ums.domain.SnapshotStatus.CANCELLED)")
+    int cancel(@Param("id") UUID id, @Param("now") OffsetDateTime now);
+}
@@ -0,0 +1,69 @@
+package it.intesigroup.ums.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Accesso JDBC a {@code users_archive}: lo spostamento è un'unica istruzione PostgreSQL
+ * (DELETE ... RETURNING dentro una CTE), senza caricare entità nel persistence context.
+ * Con il layout partizionato (db/partitioning) si lavora una partizione alla volta: il join tra
+ * i candidati e la tabella padre non può sfruttare il pruning e sonderebbe tutte le partizioni.
+ */
+@Repository
+public class UserArchiveRepository {
+
+    // SKIP LOCKED: le righe bloccate da transazioni online vengono saltate e riprese al giro successivo.
+    // user_roles viene ripulita dal vincolo ON DELETE CASCADE di fk_user_roles_user.
+    static final String ARCHIVE_BATCH = """
+            WITH victims AS (
+                SELECT id FROM %1$s
+                WHERE status = 'DELETED' AND updated_at < ?
+                ORDER BY updated_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            ), moved AS (
+                DELETE FROM %1$s u USING victims v
+                WHERE u.id = v.id
+                RETURNING u.id, u.username, u.email, u.codice_fiscale, u.nome, u.cognome,
+                          u.roles_mask, u.created_at, u.updated_at
+            )
+            INSERT INTO users_archive (id, username, email, codice_fiscale, nome, cognome,
+                                       roles_mask, created_at, deleted_at)
+            SELECT id, username, email, codice_fiscale, nome, cognome, roles_mask, created_at, updated_at
+            FROM moved
+            """;
+
+    private static final String PARTITIONS =
+            "SELECT inhrelid::regclass::text FROM pg_inherits WHERE inhparent = 'users'::regclass ORDER BY 1";
+
+    private static final String COUNT_ARCHIVABLE =
+            "SELECT count(*) FROM users WHERE status = 'DELETED' AND updated_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserArchiveRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Tabelle su cui eseguire {@link #archiveBatch}: le partizioni di users, o users stessa. */
+    public List<String> archiveTargets() {
+        List<String> partitions = jdbcTemplate.queryForList(PARTITIONS, String.class);
+        return partitions.isEmpty() ? List.of("users") : partitions;
+    }
+
+    /**
+     * Sposta al più {@code batchSize} utenti di {@code table} cancellati prima di {@code cutoff};
+     * restituisce quanti. {@code table} deve provenire da {@link #archiveTargets()}.
+     */
+    public int archiveBatch(String table, OffsetDateTime cutoff, int batchSize) {
+        return jdbcTemplate.update(ARCHIVE_BATCH.formatted(table), cutoff, batchSize);
+    }
+
+    public long countArchivable(OffsetDateTime cutoff) {
+        Long count = jdbcTemplate.queryForObject(COUNT_ARCHIVABLE, Long.class, cutoff);
+        return count != null ? count : 0;
+    }
+}
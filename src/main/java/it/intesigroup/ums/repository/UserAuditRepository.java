@@ -0,0 +1,19 @@
+package it.intesigroup.ums.repository;
+
+import it.intesigroup.ums.domain.UserAudit;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface UserAuditRepository extends JpaRepository<UserAudit, UUID> {
+    // Storico dal più recente sull'indice (user_id, id) di ogni partizione: l'id UUIDv7 segue l'ordine di scrittura
+    @Query("select a from UserAudit a where a.userId = :userId order by a.id desc")
+    List<UserAudit> findLatest(@Param("userId") UUID userId, Limit limit);
+
+    @Query("select a from UserAudit a where a.userId = :userId and a.id < :before order by a.id desc")
+    List<UserAudit> findBefore(@Param("userId") UUID userId, @Param("before") UUID before, Limit limit);
+}
@@ -0,0 +1,37 @@
+package it.intesigroup.ums.repository;
+
+import it.intesigroup.ums.domain.UserChange;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface UserChangeRepository extends JpaRepository<UserChange, Long> {
+    // Range scan sulla chiave primaria: upTo è la posizione già consolidata dal poller
+    @Query("select c from UserChange c where c.seq > :after and c.seq <= :upTo order by c.seq")
+    List<UserChange> findRange(@Param("after") long after, @Param("upTo") long upTo, Limit limit);
+
+    @Query("select c from UserChange c where c.seq > :after order by c.seq")
+    List<UserChange> findAfter(@Param("after") long after, Limit limit);
+
+    // seq rimasti indietro: transazioni confermate dopo righe con seq più alto
+    @Query("select c from UserChange c where c.seq in :seqs order by c.seq")
+    List<UserChange> findBySeqIn(@Param("seqs") Collection<Long> seqs);
+
+    @Query("select coalesce(max(c.seq), 0) from UserChange c")
+    long findLastSeq();
+
+    @Query("select coalesce(min(c.seq), 0) from UserChange c")
+    long findFirstSeq();
+
+    @Transactional
+    @Modifying
+    @Query("delete from UserChange c where c.changedAt < :cutoff")
+    int deleteChangedBefore(@Param("cutoff") OffsetDateTime cutoff);
+}
@@ -0,0 +1,17 @@
+package it.intesigroup.ums.repository;
+
+import it.intesigroup.ums.dto.UserField;
+import jakarta.persistence.Tuple;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+// Frammento di UserRepository: letture che selezionano solo le colonne richieste
+public interface UserProjectionRepository {
+    Page<Tuple> findActiveOrDisabledFields(Set<UserField> fields, Pageable pageable);
+
+    Optional<Tuple> findActiveOrDisabledFieldsById(UUID id, Set<UserField> fields);
+}
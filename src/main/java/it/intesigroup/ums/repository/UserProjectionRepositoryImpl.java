@@ -0,0 +1,79 @@
+package it.intesigroup.ums.repository;
+
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.dto.UserField;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Proiezioni Criteria su {@link User}: la SELECT contiene solo gli attributi richiesti
+ * (alias = nome JSON del campo), senza caricare l'entità né la collezione dei ruoli.
+ */
+class UserProjectionRepositoryImpl implements UserProjectionRepository {
+    private final EntityManager entityManager;
+
+    UserProjectionRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Page<Tuple> findActiveOrDisabledFields(Set<UserField> fields, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<User> user = query.from(User.class);
+        query.multiselect(selections(user, fields))
+                .where(cb.notEqual(user.get("status"), UserStatus.DELETED));
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), user, cb));
+        }
+
+        var typed = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typed.setFirstResult((int) pageable.getOffset());
+            typed.setMaxResults(pageable.getPageSize());
+        }
+        List<Tuple> content = typed.getResultList();
+        return PageableExecutionUtils.getPage(content, pageable, this::countActiveOrDisabled);
+    }
+
+    @Override
+    public Optional<Tuple> findActiveOrDisabledFieldsById(UUID id, Set<UserField> fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<User> user = query.from(User.class);
+        query.multiselect(selections(user, fields))
+                .where(cb.equal(user.get("id"), id),
+                        cb.notEqual(user.get("status"), UserStatus.DELETED));
+        return entityManager.createQuery(query).setMaxResults(1).getResultList().stream().findFirst();
+    }
+
+    private long countActiveOrDisabled() {
+        return entityManager.createQuery(
+                        "select count(u) from User u where u.status <> it.intesigroup.ums.domain.UserStatus.DELETED",
+                        Long.class)
+                .getSingleResult();
+    }
+
+    private static List<Selection<?>> selections(Root<User> user, Set<UserField> fields) {
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (UserField f : fields) {
+            selections.add(user.get(f.attribute()).alias(f.jsonName()));
+        }
+        return selections;
+    }
+}
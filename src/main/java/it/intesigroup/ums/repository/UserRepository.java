@@ -2,18 +2,75 @@ package it.intesigroup.ums.repository;
 
 import it.intesigroup.ums.domain.User;
 import it.intesigroup.ums.domain.UserStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-public interface UserRepository extends JpaRepository<User, UUID> {
-    Optional<User> findByEmail(String email);
-    Optional<User> findByCodiceFiscale(String codiceFiscale);
+public interface UserRepository extends JpaRepository<User, UUID>, UserProjectionRepository {
+    // Lookup case-insensitive: le espressioni coincidono con gli indici uk_users_email_lower
+    // e uk_users_codice_fiscale_upper, quindi ogni controllo è un singolo probe sull'indice
+    @Query("select u from User u where lower(u.email) = lower(:email)")
+    Optional<User> findByEmail(@Param("email") String email);
+
+    @Query("select u from User u where upper(u.codiceFiscale) = upper(:codiceFiscale)")
+    Optional<User> findByCodiceFiscale(@Param("codiceFiscale") String codiceFiscale);
+
+    @Query("select case when count(u) > 0 then true else false end from User u where lower(u.email) = lower(:email)")
+    boolean existsByEmail(@Param("email") String email);
+
+    @Query("select case when count(u) > 0 then true else false end from User u " +
+           "where upper(u.codiceFiscale) = upper(:codiceFiscale)")
+    boolean existsByCodiceFiscale(@Param("codiceFiscale") String codiceFiscale);
 
     @Query("select u from User u where u.status <> it.intesigroup.ums.domain.UserStatus.DELETED")
     Page<User> findAllActiveOrDisabled(Pageable pageable);
+
+    @Query("select u from User u where u.id > :after " +
+           "and u.status <> it.intesigroup.ums.domain.UserStatus.DELETED order by u.id")
+    List<User> findActiveOrDisabledAfter(@Param("after") UUID after, Limit limit);
+
+    // Paginazione keyset sull'indice idx_user_roles_role_user (role, user_id): le righe del ruolo sono lette
+    // già in ordine di id a partire da :after, quindi anche un ruolo raro costa solo le righe restituite.
+    // Un filtro su roles_mask non è indicizzabile e scorrerebbe la PK di users fino a riempire la pagina.
+    // SQL nativo perché il limite inferiore va posto su user_roles.user_id, non su users.id
+    @Query(value = "select u.* from user_roles ur join users u on u.id = ur.user_id " +
+                   "where ur.role = :role and ur.user_id > :after and u.status <> 'DELETED' order by ur.user_id",
+           nativeQuery = true)
+    List<User> findRoleMembers(@Param("role") String role, @Param("after") UUID after, Limit limit);
+
+    // Tutte le righe, cancellate comprese: alimenta il filtro delle chiavi naturali a blocchi per id
+    @Query("select u.id, u.email, u.codiceFiscale from User u where u.id > :after order by u.id")
+    List<Object[]> findNaturalKeysAfter(@Param("after") UUID after, Limit limit);
+
+    // Blocco di uno snapshot: keyset per id entro [from, to), cancellati solo se richiesti
+    @Query("select u from User u where u.id > :after and u.id >= :from and u.id < :to " +
+           "and u.updatedAt >= :since " +
+           "and (:includeDeleted = true or u.status <> it.intesigroup.ums.domain.UserStatus.DELETED) order by u.id")
+    List<User> findSnapshotBatch(@Param("after") UUID after, @Param("from") UUID from, @Param("to") UUID to,
+                                 @Param("since") OffsetDateTime since, @Param("includeDeleted") boolean includeDeleted,
+                                 Limit limit);
+
+    // Righe che concorrono al digest di riconciliazione, per intervallo di id [from, to) a blocchi
+    @Query("select u.id, u.updatedAt, u.status, u.rolesMask from User u " +
+           "where u.id >= :from and u.id > :after and u.id < :to " +
+           "and u.status <> it.intesigroup.ums.domain.UserStatus.DELETED order by u.id")
+    List<Object[]> findDigestRows(@Param("from") UUID from, @Param("after") UUID after, @Param("to") UUID to,
+                                  Limit limit);
+
+    @Query("select u.rolesMask, count(u) from User u " +
+           "where u.status <> it.intesigroup.ums.domain.UserStatus.DELETED group by u.rolesMask")
+    List<Object[]> countActiveByRolesMask();
+
+    // Riconciliazione di UserStatsIndex: al più 4 stati x 32 maschere di ruoli per giorno di creazione
+    @Query("select u.status, u.rolesMask, extract(date from u.createdAt), count(u) from User u " +
+           "group by u.status, u.rolesMask, extract(date from u.createdAt)")
+    List<Object[]> countByStatusRolesAndCreatedDay();
 }
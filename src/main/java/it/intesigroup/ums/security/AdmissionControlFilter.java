@@ -0,0 +1,108 @@
+package it.intesigroup.ums.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.intesigroup.ums.security.ClientRateLimiter.EndpointClass;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Controllo di ammissione nella catena di Spring Security, dopo l'autenticazione: le richieste oltre
+ * il budget del client ricevono 429, quelle oltre il bulkhead della classe 503, entrambe con Retry-After.
+ * Lo stream SSE ha un proprio limite di connessioni e non passa di qui; actuator e documentazione nemmeno.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private final ClientRateLimiter limiter;
+    private final ObjectMapper objectMapper;
+
+    public AdmissionControlFilter(ClientRateLimiter limiter, ObjectMapper objectMapper) {
+        this.limiter = limiter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith("/api/") || path.equals("/api/users/stream")
+                || "OPTIONS".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        EndpointClass c = classify(request);
+        long waitNanos = limiter.tryAcquire(clientKey(request), c);
+        if (waitNanos > 0) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, waitNanos,
+                    "Troppe richieste, limite di " + limiter.budget(c).rate() + " al secondo per client");
+            return;
+        }
+        if (!limiter.enter(c)) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1_000_000_000L,
+                    "Troppe richieste in corso, riprovare più tardi");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            limiter.exit(c);
+        }
+    }
+
+    static EndpointClass classify(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) return EndpointClass.WRITE;
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.endsWith("/")) path = path.substring(0, path.length() - 1);
+        if (path.equals("/api/users") || path.equals("/api/users/digest/entries")
+                || (path.startsWith("/api/roles/") && path.endsWith("/users"))
+                || path.startsWith("/api/admin/")) {
+            return EndpointClass.LIST;
+        }
+        return EndpointClass.READ;
+    }
+
+    // subject del token; per i token client credentials senza sub, il client id; altrimenti l'indirizzo
+    static String clientKey(HttpServletRequest request) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth instanceof JwtAuthenticationToken jwtAuth) {
+            Jwt jwt = jwtAuth.getToken();
+            if (jwt.getSubject() != null) return "sub:" + jwt.getSubject();
+            Object client = jwt.getClaims().getOrDefault("client_id", jwt.getClaims().get("azp"));
+            if (client != null) return "client:" + client;
+        } else if (auth != null && auth.isAuthenticated() && !(auth instanceof AnonymousAuthenticationToken)) {
+            return "user:" + auth.getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, long waitNanos, String message)
+            throws IOException {
+        long seconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        // stesso formato delle risposte di ErrorHandler
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("timestamp", OffsetDateTime.now());
+        body.put("status", status.value());
+        body.put("error", status.getReasonPhrase());
+        body.put("message", message);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+}
@@ -0,0 +1,176 @@
+package it.intesigroup.ums.security;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sorgente JWKS tenuta interamente in memoria: le chiavi vengono caricate all'avvio da file locale
+ * (o dall'IdP) e aggiornate in background con jitter. I thread di richiesta leggono solo lo snapshot
+ * corrente e non attendono mai il recupero delle chiavi; in caso di errore resta valido l'ultimo set noto.
+ */
+public class CachingJwkSource implements JWKSource<SecurityContext>, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(CachingJwkSource.class);
+
+    private final URI jwkSetUri;
+    private final Path cacheFile;
+    private final Duration refreshInterval;
+    private final Duration retryInterval;
+    private final Duration minOnDemandGap;
+    private final double jitter;
+    private final Duration fetchTimeout;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile JWKSet current = new JWKSet();
+    private volatile long lastOnDemandRefresh;
+    private ScheduledFuture<?> pending;
+
+    public CachingJwkSource(URI jwkSetUri, Path cacheFile, Duration refreshInterval, Duration retryInterval,
+                            Duration minOnDemandGap, double jitter, Duration fetchTimeout) {
+        this.jwkSetUri = jwkSetUri;
+        this.cacheFile = cacheFile;
+        this.refreshInterval = refreshInterval;
+        this.retryInterval = retryInterval;
+        this.minOnDemandGap = minOnDemandGap;
+        this.jitter = jitter;
+        this.fetchTimeout = fetchTimeout;
+        this.lastOnDemandRefresh = System.nanoTime() - minOnDemandGap.toNanos();
+        this.httpClient = HttpClient.newBuilder().connectTimeout(fetchTimeout).build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jwks-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Carica le chiavi iniziali e pianifica il refresh periodico. Un IdP non raggiungibile non
+     * blocca l'avvio oltre il timeout di fetch: il servizio parte con le chiavi del file locale (se presente).
+     */
+    public void start() {
+        loadFromCacheFile();
+        if (current.isEmpty() && jwkSetUri != null) {
+            refresh();
+        } else {
+            scheduleNext(refreshInterval);
+        }
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        List<JWK> keys = jwkSelector.select(current);
+        if (keys.isEmpty()) {
+            // kid sconosciuto (probabile rotazione lato IdP): refresh asincrono, la richiesta non attende
+            requestRefresh();
+        }
+        return keys;
+    }
+
+    public JWKSet currentKeys() {
+        return current;
+    }
+
+    void requestRefresh() {
+        if (jwkSetUri == null || scheduler.isShutdown()) return;
+        long now = System.nanoTime();
+        if (now - lastOnDemandRefresh < minOnDemandGap.toNanos()) return;
+        lastOnDemandRefresh = now;
+        scheduler.execute(this::refresh);
+    }
+
+    void refresh() {
+        if (!refreshing.compareAndSet(false, true)) return;
+        Duration next = refreshInterval;
+        try {
+            JWKSet fetched = fetch();
+            current = fetched;
+            log.debug("JWKS aggiornato: {} chiavi", fetched.size());
+            writeCacheFile(fetched);
+        } catch (Exception e) {
+            // stale-while-revalidate: si continua a servire l'ultimo set noto
+            log.warn("Aggiornamento JWKS da {} fallito, uso delle {} chiavi in cache", jwkSetUri, current.size(), e);
+            next = retryInterval;
+        } finally {
+            refreshing.set(false);
+        }
+        scheduleNext(next);
+    }
+
+    private JWKSet fetch() throws IOException, InterruptedException, ParseException {
+        HttpRequest request = HttpRequest.newBuilder(jwkSetUri)
+                .timeout(fetchTimeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Risposta HTTP " + response.statusCode() + " dal JWKS endpoint");
+        }
+        return JWKSet.parse(response.body());
+    }
+
+    private void loadFromCacheFile() {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) return;
+        try {
+            current = JWKSet.parse(Files.readString(cacheFile, StandardCharsets.UTF_8));
+            log.info("Caricate {} chiavi JWKS da {}", current.size(), cacheFile);
+        } catch (Exception e) {
+            log.warn("File JWKS {} non leggibile, ignorato", cacheFile, e);
+        }
+    }
+
+    private void writeCacheFile(JWKSet keys) {
+        if (cacheFile == null) return;
+        try {
+            Path dir = cacheFile.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "jwks", ".tmp");
+            // solo chiavi pubbliche: toString(true) esclude il materiale privato
+            Files.writeString(tmp, keys.toString(true), StandardCharsets.UTF_8);
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Impossibile scrivere la cache JWKS su {}", cacheFile, e);
+        }
+    }
+
+    private synchronized void scheduleNext(Duration base) {
+        if (jwkSetUri == null || scheduler.isShutdown()) return;
+        // un solo refresh pianificato alla volta, anche dopo un refresh on-demand
+        if (pending != null) pending.cancel(false);
+        long baseMillis = base.toMillis();
+        long spread = (long) (baseMillis * jitter);
+        long delay = baseMillis + (spread > 0 ? ThreadLocalRandom.current().nextLong(-spread, spread + 1) : 0);
+        pending = scheduler.schedule(this::refresh, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
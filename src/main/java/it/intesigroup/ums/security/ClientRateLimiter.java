@@ -0,0 +1,152 @@
+package it.intesigroup.ums.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Limiti di accesso per client e classe di endpoint.
+ * <p>
+ * Ogni client (subject del JWT, client id o indirizzo) ha un token bucket per classe, implementato
+ * come GCRA: lo stato è il solo "theoretical arrival time" in un {@link AtomicLongArray}, aggiornato
+ * con una CAS senza lock. I client inattivi (bucket di nuovo pieno) vengono rimossi periodicamente.
+ * <p>
+ * Le classi più pesanti hanno inoltre un bulkhead: un numero massimo di richieste contemporanee,
+ * da tenere sotto la dimensione del pool Hikari perché non possano occupare tutte le connessioni.
+ */
+public class ClientRateLimiter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ClientRateLimiter.class);
+
+    public enum EndpointClass {
+        READ,
+        // liste, pagine di ruolo, voci del digest: le letture che scorrono molte righe
+        LIST,
+        WRITE
+    }
+
+    /** {@code rate} richieste al secondo con raffiche fino a {@code burst}; {@code maxConcurrent} 0 = nessun bulkhead. */
+    public record Budget(double rate, int burst, int maxConcurrent) {}
+
+    private final Map<EndpointClass, Budget> budgets;
+    private final long[] interval = new long[EndpointClass.values().length];
+    private final long[] tolerance = new long[EndpointClass.values().length];
+    private final Semaphore[] bulkheads = new Semaphore[EndpointClass.values().length];
+    private final ConcurrentHashMap<String, AtomicLongArray> clients = new ConcurrentHashMap<>();
+    private final Map<EndpointClass, Counter> rateRejections = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Counter> concurrencyRejections = new EnumMap<>(EndpointClass.class);
+    private final LongSupplier clock;
+    private final ScheduledExecutorService sweeper;
+
+    public ClientRateLimiter(Map<EndpointClass, Budget> budgets, MeterRegistry meterRegistry, Duration sweepInterval) {
+        this(budgets, meterRegistry, sweepInterval, System::nanoTime);
+    }
+
+    ClientRateLimiter(Map<EndpointClass, Budget> budgets, MeterRegistry meterRegistry, Duration sweepInterval,
+                      LongSupplier nanoClock) {
+        this.budgets = budgets;
+        // origine positiva: lo stato iniziale 0 di un bucket equivale a "pieno"
+        long origin = nanoClock.getAsLong();
+        this.clock = () -> nanoClock.getAsLong() - origin + TimeUnit.DAYS.toNanos(1);
+        for (EndpointClass c : EndpointClass.values()) {
+            Budget b = budgets.get(c);
+            interval[c.ordinal()] = (long) (1_000_000_000L / b.rate());
+            tolerance[c.ordinal()] = interval[c.ordinal()] * b.burst();
+            if (b.maxConcurrent() > 0) bulkheads[c.ordinal()] = new Semaphore(b.maxConcurrent());
+            String tag = c.name().toLowerCase(Locale.ROOT);
+            rateRejections.put(c, Counter.builder("ums.ratelimit.rejected")
+                    .tag("class", tag).tag("reason", "rate").register(meterRegistry));
+            concurrencyRejections.put(c, Counter.builder("ums.ratelimit.rejected")
+                    .tag("class", tag).tag("reason", "concurrency").register(meterRegistry));
+        }
+        meterRegistry.gaugeMapSize("ums.ratelimit.clients", Tags.empty(), clients);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rate-limit-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepSafely, sweepInterval.toMillis(), sweepInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Consuma un token; restituisce 0 se la richiesta è ammessa, altrimenti i nanosecondi da attendere. */
+    public long tryAcquire(String client, EndpointClass c) {
+        AtomicLongArray tats = clients.computeIfAbsent(client, k -> new AtomicLongArray(interval.length));
+        int i = c.ordinal();
+        long now = clock.getAsLong();
+        while (true) {
+            long tat = tats.get(i);
+            long next = Math.max(tat, now) + interval[i];
+            long wait = next - tolerance[i] - now;
+            if (wait > 0) {
+                rateRejections.get(c).increment();
+                return wait;
+            }
+            if (tats.compareAndSet(i, tat, next)) return 0;
+        }
+    }
+
+    /** Occupa un posto del bulkhead della classe; se restituisce true va chiamato {@link #exit}. */
+    public boolean enter(EndpointClass c) {
+        Semaphore s = bulkheads[c.ordinal()];
+        if (s == null || s.tryAcquire()) return true;
+        concurrencyRejections.get(c).increment();
+        return false;
+    }
+
+    public void exit(EndpointClass c) {
+        Semaphore s = bulkheads[c.ordinal()];
+        if (s != null) s.release();
+    }
+
+    public Budget budget(EndpointClass c) {
+        return budgets.get(c);
+    }
+
+    /**
+     * Rimuove i client con tutti i bucket di nuovo pieni: ripartirebbero comunque da zero. Una richiesta
+     * concorrente può ancora aggiornare l'array appena rimosso; al più concede qualche token in più.
+     */
+    int sweep() {
+        long now = clock.getAsLong();
+        int before = clients.size();
+        clients.values().removeIf(tats -> {
+            for (int i = 0; i < tats.length(); i++) {
+                if (tats.get(i) > now) return false;
+            }
+            return true;
+        });
+        return before - clients.size();
+    }
+
+    int clients() {
+        return clients.size();
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private void sweepSafely() {
+        try {
+            int removed = sweep();
+            if (removed > 0) log.debug("Rate limit: rimossi {} client inattivi", removed);
+        } catch (RuntimeException e) {
+            log.warn("Pulizia dei client del rate limiter fallita", e);
+        }
+    }
+}
@@ -8,10 +8,21 @@ import java.util.HashSet;
 import java.util.Set;
 
 public class SecurityUtils {
+    // Confronta direttamente le authority "ROLE_*" senza costruire il set dei ruoli:
+    // viene invocato ad ogni get/list per decidere il masking.
     public static boolean hasAnyRole(String... roles) {
-        Set<String> userRoles = currentRoles();
-        for (String r : roles) {
-            if (userRoles.contains(r)) return true;
+        Authentication auth = SecurityContextHolder.getContext() != null ? SecurityContextHolder.getContext().getAuthentication() : null;
+        return hasAnyRole(auth, roles);
+    }
+
+    public static boolean hasAnyRole(Authentication auth, String... roles) {
+        if (auth == null) return false;
+        for (GrantedAuthority a : auth.getAuthorities()) {
+            String au = a.getAuthority();
+            if (au == null || !au.startsWith("ROLE_")) continue;
+            for (String r : roles) {
+                if (au.length() == r.length() + 5 && au.regionMatches(5, r, 0, r.length())) return true;
+            }
         }
         return false;
     }
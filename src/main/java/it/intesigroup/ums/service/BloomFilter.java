@@ -0,0 +1,96 @@
+package it.intesigroup.ums.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter di stringhe thread-safe (inserimenti lock-free su {@link AtomicLongArray}).
+ * Le k posizioni sono derivate da due hash a 64 bit con il doppio hashing di Kirsch-Mitzenmacher.
+ * Non supporta la rimozione: le chiavi non più in uso restano e producono solo falsi positivi.
+ */
+final class BloomFilter {
+    private static final double LN2 = Math.log(2);
+    private static final int MAX_HASH_FUNCTIONS = 16;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final LongAdder bitsSet = new LongAdder();
+
+    private BloomFilter(long bitCount, int hashFunctions) {
+        int wordCount = (int) ((bitCount + 63) >>> 6);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount << 6;
+        this.hashFunctions = hashFunctions;
+    }
+
+    /**
+     * Dimensiona il filtro per {@code expectedInsertions} chiavi al tasso di falsi positivi {@code fpp},
+     * senza superare {@code maxBits}: oltre il limite il filtro resta valido ma con fpp più alto.
+     */
+    static BloomFilter create(long expectedInsertions, double fpp, long maxBits) {
+        long n = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-n * Math.log(fpp) / (LN2 * LN2));
+        bits = Math.max(64, Math.min(bits, maxBits));
+        int k = (int) Math.round((double) bits / n * LN2);
+        return new BloomFilter(bits, Math.max(1, Math.min(k, MAX_HASH_FUNCTIONS)));
+    }
+
+    void put(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) break;
+            } while (!words.compareAndSet(word, current, current | mask));
+            if ((current & mask) == 0) bitsSet.increment();
+        }
+    }
+
+    boolean mightContain(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /** Probabilità attuale di falso positivo, stimata dalla frazione di bit impostati. */
+    double expectedFpp() {
+        return Math.pow((double) bitsSet.sum() / bitCount, hashFunctions);
+    }
+
+    long sizeInBytes() {
+        return bitCount >>> 3;
+    }
+
+    int hashFunctions() {
+        return hashFunctions;
+    }
+
+    // FNV-1a sui caratteri, rifinito con il finalizzatore di MurmurHash3 per distribuire i bit alti
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
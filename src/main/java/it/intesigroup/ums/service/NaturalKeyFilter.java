@@ -0,0 +1,314 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.exception.BadRequestException;
+import it.intesigroup.ums.domain.UserChange;
+import it.intesigroup.ums.exception.ConflictException;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Pre-filtro in memoria sulle chiavi naturali (email e codice fiscale) di tutti gli utenti,
+ * cancellati compresi perché gli indici unique li coprono. Se il Bloom filter esclude la chiave
+ * la query di esistenza sul database viene saltata; altrimenti decide il database.
+ * <p>
+ * Le chiavi create su questa istanza entrano subito dopo il commit; quelle create da altre istanze
+ * arrivano leggendo {@code user_changes} ogni {@code pollInterval}, con i seq mancanti riletti per
+ * {@code gapTimeout} come nel digest. Senza registro delle modifiche (stream disabilitato) il filtro
+ * viene ricostruito ogni {@code rebuildInterval}. Nel frattempo una chiave appena creata altrove può
+ * risultare assente: l'insert viola l'indice unique e {@link UserService} risponde comunque 409, prima
+ * di pubblicare qualsiasi evento. Finché il filtro non è caricato, o se è disabilitato, ogni controllo
+ * va al database.
+ */
+public class NaturalKeyFilter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(NaturalKeyFilter.class);
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+    private static final int BATCH_SIZE = 10_000;
+    private static final int POLL_BATCH = 1_000;
+    private static final int MAX_GAPS = 10_000;
+
+    public enum Key {
+        EMAIL("email"),
+        CODICE_FISCALE("codice_fiscale");
+
+        private final String tag;
+
+        Key(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public record Stats(boolean ready, long sizeInBytes, int hashFunctions, Map<Key, Double> expectedFpp) {}
+
+    private final UserRepository userRepository;
+    private final UserChangeRepository changeRepository;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final long maxBits;
+    private final Duration pollInterval;
+    private final Duration gapTimeout;
+    private final Duration rebuildInterval;
+    private final ScheduledExecutorService executor;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private final Map<Key, Meters> meters = new EnumMap<>(Key.class);
+    // seq mancanti nel registro -> istante (nanoTime) in cui sono stati visti; solo dal thread di lettura
+    private final TreeMap<Long, Long> changeGaps = new TreeMap<>();
+
+    private volatile Filters current;
+    private volatile Filters building;
+    private long changeHead = -1;
+
+    /** {@code changeRepository} è null se {@code user_changes} non viene scritto. */
+    public NaturalKeyFilter(UserRepository userRepository,
+                            UserChangeRepository changeRepository,
+                            MeterRegistry meterRegistry,
+                            boolean enabled,
+                            long expectedInsertions,
+                            double fpp,
+                            DataSize maxSize,
+                            Duration pollInterval,
+                            Duration gapTimeout,
+                            Duration rebuildInterval) {
+        this.userRepository = userRepository;
+        this.changeRepository = changeRepository;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.maxBits = maxSize.toBytes() * 8;
+        this.pollInterval = pollInterval;
+        this.gapTimeout = gapTimeout;
+        this.rebuildInterval = rebuildInterval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "key-filter");
+            t.setDaemon(true);
+            return t;
+        });
+        for (Key key : Key.values()) {
+            meters.put(key, new Meters(meterRegistry, key));
+            Gauge.builder("ums.keyfilter.expected.fpp", this, f -> f.expectedFpp(key))
+                    .tag("key", key.tag)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("ums.keyfilter.size", this, f -> f.sizeInBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) return;
+        if (changeRepository != null) {
+            executor.scheduleWithFixedDelay(this::pollChangesSafely, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            executor.scheduleWithFixedDelay(this::rebuildSafely, 0, rebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Ricostruisce i filtri leggendo le chiavi a blocchi in ordine di id. Le chiavi aggiunte durante
+     * la scansione finiscono sia nei filtri correnti sia in quelli in costruzione.
+     */
+    public Stats rebuild() {
+        if (!enabled) {
+            throw new BadRequestException("Filtro delle chiavi naturali disabilitato");
+        }
+        if (!rebuildLock.tryLock()) {
+            throw new ConflictException("Ricostruzione del filtro già in corso");
+        }
+        try {
+            long start = System.nanoTime();
+            // margine per la crescita: il filtro non si ridimensiona fino alla prossima ricostruzione
+            long capacity = Math.max(expectedInsertions, userRepository.count() * 2);
+            Filters fresh = new Filters(BloomFilter.create(capacity, fpp, maxBits),
+                    BloomFilter.create(capacity, fpp, maxBits));
+            building = fresh;
+
+            UUID after = FIRST_ID;
+            long rows = 0;
+            List<Object[]> batch;
+            do {
+                batch = userRepository.findNaturalKeysAfter(after, Limit.of(BATCH_SIZE));
+                for (Object[] row : batch) {
+                    fresh.email().put((String) row[1]);
+                    fresh.codiceFiscale().put((String) row[2]);
+                    after = (UUID) row[0];
+                }
+                rows += batch.size();
+            } while (batch.size() == BATCH_SIZE);
+
+            current = fresh;
+            log.info("Filtro chiavi naturali caricato: {} utenti, {} byte, fpp stimato {} in {} ms",
+                    rows, sizeInBytes(), expectedFpp(Key.EMAIL), (System.nanoTime() - start) / 1_000_000);
+            return stats();
+        } finally {
+            building = null;
+            rebuildLock.unlock();
+        }
+    }
+
+    /**
+     * Verifica l'esistenza di una chiave già normalizzata: {@code database} viene interrogato solo
+     * se il filtro non può escluderla.
+     */
+    public boolean exists(Key key, String value, Predicate<String> database) {
+        Filters filters = current;
+        Meters m = meters.get(key);
+        if (filters == null) {
+            m.bypass.increment();
+            return database.test(value);
+        }
+        if (!filters.get(key).mightContain(value)) {
+            m.absent.increment();
+            return false;
+        }
+        boolean exists = database.test(value);
+        (exists ? m.present : m.falsePositive).increment();
+        return exists;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.after() == null) return;
+        add(event.after().email(), event.after().codiceFiscale());
+    }
+
+    /**
+     * Aggiunge le chiavi scritte in {@code user_changes} dopo l'ultima lettura. Al primo giro, o se il
+     * caricamento è fallito, legge la testa del registro e poi ricostruisce: ciò che viene confermato
+     * durante la scansione è riletto dal giro successivo.
+     */
+    void pollChanges() {
+        if (changeHead < 0 || current == null) {
+            changeHead = changeRepository.findLastSeq();
+            changeGaps.clear();
+            rebuild();
+            return;
+        }
+        if (!changeGaps.isEmpty()) {
+            long expired = System.nanoTime() - gapTimeout.toNanos();
+            changeGaps.values().removeIf(since -> since - expired <= 0);
+            if (!changeGaps.isEmpty()) {
+                for (UserChange c : changeRepository.findBySeqIn(changeGaps.keySet().stream().limit(POLL_BATCH).toList())) {
+                    changeGaps.remove(c.getSeq());
+                    add(c.getEmail(), c.getCodiceFiscale());
+                }
+            }
+        }
+        List<UserChange> batch;
+        do {
+            batch = changeRepository.findAfter(changeHead, Limit.of(POLL_BATCH));
+            long now = System.nanoTime();
+            for (UserChange c : batch) {
+                // transazione ancora aperta o annullata: si riprova con findBySeqIn
+                for (long seq = Math.max(changeHead + 1, c.getSeq() - MAX_GAPS); seq < c.getSeq(); seq++) {
+                    changeGaps.put(seq, now);
+                }
+                add(c.getEmail(), c.getCodiceFiscale());
+                changeHead = c.getSeq();
+            }
+        } while (batch.size() == POLL_BATCH);
+        while (changeGaps.size() > MAX_GAPS) changeGaps.pollFirstEntry();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public Stats stats() {
+        Filters filters = current;
+        Map<Key, Double> fpps = new EnumMap<>(Key.class);
+        for (Key key : Key.values()) {
+            fpps.put(key, expectedFpp(key));
+        }
+        return new Stats(filters != null, sizeInBytes(),
+                filters != null ? filters.email().hashFunctions() : 0, fpps);
+    }
+
+    private void add(String email, String codiceFiscale) {
+        // building prima di current: se la ricostruzione finisce nel mezzo la chiave va comunque nei filtri nuovi
+        Filters next = building;
+        for (Filters filters : new Filters[]{next, current}) {
+            if (filters == null) continue;
+            if (email != null) filters.email().put(email);
+            if (codiceFiscale != null) filters.codiceFiscale().put(codiceFiscale);
+        }
+    }
+
+    private double expectedFpp(Key key) {
+        Filters filters = current;
+        return filters != null ? filters.get(key).expectedFpp() : Double.NaN;
+    }
+
+    private long sizeInBytes() {
+        Filters filters = current;
+        return filters != null ? filters.email().sizeInBytes() + filters.codiceFiscale().sizeInBytes() : 0;
+    }
+
+    private void pollChangesSafely() {
+        try {
+            pollChanges();
+        } catch (RuntimeException e) {
+            log.warn("Lettura del registro modifiche per il filtro delle chiavi naturali fallita, nuovo tentativo tra {}",
+                    pollInterval, e);
+        }
+    }
+
+    private void rebuildSafely() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Impossibile caricare il filtro delle chiavi naturali, nuovo tentativo tra {}", rebuildInterval, e);
+        }
+    }
+
+    private record Filters(BloomFilter email, BloomFilter codiceFiscale) {
+        BloomFilter get(Key key) {
+            return key == Key.EMAIL ? email : codiceFiscale;
+        }
+    }
+
+    // tasso di falsi positivi osservato = false_positive / (absent + false_positive)
+    private static final class Meters {
+        final Counter absent;
+        final Counter present;
+        final Counter falsePositive;
+        final Counter bypass;
+
+        Meters(MeterRegistry registry, Key key) {
+            absent = counter(registry, key, "absent");
+            present = counter(registry, key, "present");
+            falsePositive = counter(registry, key, "false_positive");
+            bypass = counter(registry, key, "bypass");
+        }
+
+        private static Counter counter(MeterRegistry registry, Key key, String result) {
+            return Counter.builder("ums.keyfilter.checks")
+                    .tag("key", key.tag)
+                    .tag("result", result)
+                    .register(registry);
+        }
+    }
+}
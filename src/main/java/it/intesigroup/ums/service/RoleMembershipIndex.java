@@ -0,0 +1,185 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import it.intesigroup.ums.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conteggio in memoria degli utenti non cancellati per ruolo, aggiornato dagli {@link UserChangedEvent}
+ * dopo il commit e ricalcolato dal database all'avvio e ogni {@code interval}, così le modifiche fatte
+ * da altre istanze rientrano al giro successivo.
+ * <p>
+ * Come in {@link UserStatsIndex}, ogni modifica locale è registrata nella sua transazione e applicata
+ * dopo il commit: se durante la query aggregata c'era una modifica in corso, o ne inizia o finisce una,
+ * il risultato viene scartato e la query ripetuta, invece di sovrascrivere i contatori perdendo o
+ * contando due volte quella modifica.
+ */
+public class RoleMembershipIndex implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(RoleMembershipIndex.class);
+    private static final Role[] ROLES = Role.values();
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long QUIET_WAIT_MILLIS = 1_000;
+
+    private final UserRepository userRepository;
+    private final Duration interval;
+    private final ScheduledExecutorService scheduler;
+    private final Counter drift;
+
+    // protetti dal lock dell'istanza
+    private final long[] counts = new long[ROLES.length];
+    // modifiche registrate o concluse (cresce due volte per modifica) e modifiche non ancora concluse
+    private long changes;
+    private int inFlight;
+    private boolean loaded;
+
+    public RoleMembershipIndex(UserRepository userRepository, MeterRegistry meterRegistry, Duration interval) {
+        this.userRepository = userRepository;
+        this.interval = interval;
+        this.drift = Counter.builder("ums.roles.reconcile.drift").register(meterRegistry);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "role-index");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduler.scheduleWithFixedDelay(this::reconcileSafely, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Sincrono, nella transazione della modifica: la registra come in corso e la applica solo dopo il commit. */
+    @EventListener
+    public synchronized void onUserChanged(UserChangedEvent event) {
+        changes++;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyChange(event);
+            return;
+        }
+        inFlight++;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (RoleMembershipIndex.this) {
+                    inFlight--;
+                    changes++;
+                    if (status == STATUS_COMMITTED) applyChange(event);
+                    if (inFlight == 0) RoleMembershipIndex.this.notifyAll();
+                }
+            }
+        });
+    }
+
+    public synchronized Map<Role, Long> summary() {
+        if (!loaded) {
+            throw new ServiceUnavailableException("Conteggio utenti per ruolo non ancora disponibile, riprovare più tardi");
+        }
+        Map<Role, Long> map = new EnumMap<>(Role.class);
+        for (Role r : ROLES) {
+            map.put(r, counts[r.ordinal()]);
+        }
+        return map;
+    }
+
+    /** Ricalcola i conteggi dal database; restituisce false se le modifiche concorrenti hanno impedito di farlo. */
+    boolean reconcile() {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            long seen;
+            boolean busy;
+            synchronized (this) {
+                awaitQuiet();
+                seen = changes;
+                // una transazione confermata ma non ancora applicata può essere già visibile alla query
+                busy = inFlight > 0;
+            }
+            long[] fresh = new long[ROLES.length];
+            // al più 2^5 combinazioni di ruoli: il raggruppamento per maschera evita il join su user_roles
+            List<Object[]> rows = userRepository.countActiveByRolesMask();
+            for (Object[] row : rows) {
+                int mask = ((Number) row[0]).intValue();
+                long count = ((Number) row[1]).longValue();
+                for (Role r : Role.fromMask(mask)) {
+                    fresh[r.ordinal()] += count;
+                }
+            }
+            synchronized (this) {
+                // al primo caricamento si accetta comunque l'ultimo tentativo, corretto dal giro successivo
+                if ((busy || changes != seen) && (attempt < MAX_ATTEMPTS || loaded)) continue;
+                if (loaded && !Arrays.equals(fresh, counts)) {
+                    drift.increment();
+                    log.info("Indice ruoli riallineato al database: {} invece di {}",
+                            Arrays.toString(fresh), Arrays.toString(counts));
+                } else if (!loaded) {
+                    log.info("Indice ruoli caricato: {}", Arrays.toString(fresh));
+                }
+                System.arraycopy(fresh, 0, counts, 0, fresh.length);
+                loaded = true;
+                return true;
+            }
+        }
+        log.warn("Riconciliazione indice ruoli rinviata: modifiche concorrenti in {} tentativi", MAX_ATTEMPTS);
+        return false;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    // con il lock: attende brevemente che le modifiche in corso si concludano
+    private void awaitQuiet() {
+        long deadline = System.currentTimeMillis() + QUIET_WAIT_MILLIS;
+        try {
+            for (long left = QUIET_WAIT_MILLIS; inFlight > 0 && left > 0; left = deadline - System.currentTimeMillis()) {
+                wait(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applyChange(UserChangedEvent event) {
+        Set<Role> before = countedRoles(event.before());
+        Set<Role> after = countedRoles(event.after());
+        for (Role r : before) {
+            if (!after.contains(r)) counts[r.ordinal()]--;
+        }
+        for (Role r : after) {
+            if (!before.contains(r)) counts[r.ordinal()]++;
+        }
+    }
+
+    // Gli utenti cancellati logicamente non contano come membri del ruolo
+    private static Set<Role> countedRoles(UserChangedEvent.Snapshot s) {
+        if (s == null || s.status() == UserStatus.DELETED) return EnumSet.noneOf(Role.class);
+        return s.roles();
+    }
+
+    private void reconcileSafely() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("Riconciliazione indice ruoli fallita, nuovo tentativo tra {}", interval, e);
+        }
+    }
+}
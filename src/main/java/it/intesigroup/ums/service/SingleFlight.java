@@ -0,0 +1,151 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Coalescenza dei caricamenti concorrenti per la stessa chiave: il primo thread (leader) esegue la
+ * query, gli altri attendono il suo risultato fino a {@code maxWait} e poi caricano in autonomia.
+ * Non è una cache: a caricamento concluso la chiave viene rimossa. Un valore {@code null} indica
+ * "non trovato" ed è condiviso come gli altri risultati.
+ */
+class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long maxWaitNanos;
+    private final Counter leaders;
+    private final Counter coalesced;
+    private final Counter timeouts;
+
+    SingleFlight(String name, Duration maxWait, MeterRegistry registry) {
+        this.maxWaitNanos = maxWait.toNanos();
+        this.leaders = counter(registry, name, "leader");
+        this.coalesced = counter(registry, name, "coalesced");
+        this.timeouts = counter(registry, name, "timeout");
+    }
+
+    V load(K key, Function<K, V> loader) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+        if (existing == null) {
+            leaders.increment();
+            return lead(key, own, loader);
+        }
+        coalesced.increment();
+        try {
+            return await(existing, maxWaitNanos);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            return loader.apply(key);
+        }
+    }
+
+    /**
+     * Variante batch: le chiavi già in caricamento vengono attese, le altre sono caricate con
+     * un'unica invocazione di {@code loader}. Il risultato contiene solo le chiavi trovate.
+     */
+    Map<K, V> loadAll(Collection<K> keys, Function<Collection<K>, Map<K, V>> loader) {
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> joined = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (owned.containsKey(key) || joined.containsKey(key)) continue;
+            CompletableFuture<V> own = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+            if (existing == null) {
+                owned.put(key, own);
+            } else {
+                joined.put(key, existing);
+            }
+        }
+
+        Map<K, V> result = new HashMap<>();
+        // prima si caricano le chiavi possedute e solo dopo si attendono le altre:
+        // due batch sovrapposti non possono attendersi a vicenda
+        if (!owned.isEmpty()) {
+            leaders.increment(owned.size());
+            Map<K, V> loaded;
+            try {
+                loaded = loader.apply(owned.keySet());
+            } catch (Throwable t) {
+                owned.forEach((key, future) -> {
+                    future.completeExceptionally(t);
+                    inFlight.remove(key, future);
+                });
+                throw t;
+            }
+            owned.forEach((key, future) -> {
+                V value = loaded.get(key);
+                future.complete(value);
+                inFlight.remove(key, future);
+                if (value != null) result.put(key, value);
+            });
+        }
+
+        if (!joined.isEmpty()) {
+            coalesced.increment(joined.size());
+            long deadline = System.nanoTime() + maxWaitNanos;
+            List<K> timedOut = new ArrayList<>();
+            for (Map.Entry<K, CompletableFuture<V>> e : joined.entrySet()) {
+                try {
+                    V value = await(e.getValue(), deadline - System.nanoTime());
+                    if (value != null) result.put(e.getKey(), value);
+                } catch (TimeoutException ex) {
+                    timedOut.add(e.getKey());
+                }
+            }
+            if (!timedOut.isEmpty()) {
+                timeouts.increment(timedOut.size());
+                result.putAll(loader.apply(timedOut));
+            }
+        }
+        return result;
+    }
+
+    private V lead(K key, CompletableFuture<V> own, Function<K, V> loader) {
+        try {
+            V value = loader.apply(key);
+            own.complete(value);
+            return value;
+        } catch (Throwable t) {
+            own.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future, long nanos) throws TimeoutException {
+        try {
+            return future.get(Math.max(nanos, 0), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            // stesso esito del leader (es. errore di accesso ai dati)
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Attesa del caricamento interrotta", e);
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String result) {
+        return Counter.builder("ums.singleflight.loads")
+                .description("Caricamenti per chiave: eseguiti (leader), condivisi (coalesced), attesa scaduta (timeout)")
+                .tag("name", name)
+                .tag("result", result)
+                .register(registry);
+    }
+}
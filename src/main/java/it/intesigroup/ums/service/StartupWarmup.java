@@ -0,0 +1,222 @@
+package it.intesigroup.ums.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.dto.CreateUserRequest;
+import it.intesigroup.ums.dto.UserField;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.exception.NotFoundException;
+import it.intesigroup.ums.mapper.UserMapper;
+import it.intesigroup.ums.security.SecurityUtils;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggerConfiguration;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Riscaldamento del JIT all'avvio, prima che la readiness probe diventi verde: Spring Boot passa a
+ * ACCEPTING_TRAFFIC solo dopo gli {@link ApplicationRunner}, quindi finché questo è in esecuzione
+ * {@code /actuator/health/readiness} risponde 503 e il bilanciatore non invia richieste.
+ * <p>
+ * Ogni iterazione percorre con dati sintetici gli stessi percorsi di una richiesta: letture di
+ * {@link UserService} sul database, validazione (incluso il codice fiscale), mapping e masking,
+ * serializzazione e deserializzazione JSON, conversione del JWT in ruoli. Non scrive nulla.
+ */
+public class StartupWarmup implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+    private static final int SAMPLE = 200;
+    private static final Set<UserField> FIELDS = EnumSet.of(UserField.ID, UserField.USERNAME, UserField.EMAIL,
+            UserField.CODICE_FISCALE, UserField.ROLES);
+
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final Converter<Jwt, AbstractAuthenticationToken> jwtConverter;
+    private final LoggingSystem loggingSystem;
+    private final Duration duration;
+    private final int maxIterations;
+    private final int threads;
+
+    public StartupWarmup(UserService userService, ObjectMapper objectMapper, Validator validator,
+                         Converter<Jwt, AbstractAuthenticationToken> jwtConverter, LoggingSystem loggingSystem,
+                         Duration duration, int maxIterations, int threads) {
+        this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.jwtConverter = jwtConverter;
+        this.loggingSystem = loggingSystem;
+        this.duration = duration;
+        this.maxIterations = maxIterations;
+        this.threads = threads;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        AtomicInteger iterations = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        long[] firstNanos = new long[threads];
+        long[] lastNanos = new long[threads];
+        // le letture di UserService loggano a INFO: migliaia di righe sintetiche non servono
+        String serviceLogger = UserService.class.getName();
+        LoggerConfiguration previous = loggingSystem.getLoggerConfiguration(serviceLogger);
+        loggingSystem.setLogLevel(serviceLogger, LogLevel.WARN);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "startup-warmup");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int w = 0; w < threads; w++) {
+                int worker = w;
+                workers.add(executor.submit(() -> {
+                    int local = 0;
+                    long window = System.nanoTime();
+                    while (failure.get() == null && System.nanoTime() < deadline) {
+                        int i = iterations.getAndIncrement();
+                        if (i >= maxIterations) break;
+                        try {
+                            iteration(i);
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                            break;
+                        }
+                        // durata media delle prime e delle ultime SAMPLE iterazioni del worker
+                        if (++local % SAMPLE == 0) {
+                            long now = System.nanoTime();
+                            if (local == SAMPLE) firstNanos[worker] = (now - window) / SAMPLE;
+                            lastNanos[worker] = (now - window) / SAMPLE;
+                            window = now;
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : workers) {
+                f.get(duration.toMillis() + 30_000, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failure.compareAndSet(null, new IllegalStateException(e));
+        } finally {
+            executor.shutdownNow();
+            loggingSystem.setLogLevel(serviceLogger, previous != null ? previous.getConfiguredLevel() : null);
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        if (failure.get() != null) {
+            // il servizio parte comunque: il riscaldamento non deve impedire l'avvio
+            log.warn("Warm-up interrotto dopo {} iterazioni in {} ms", Math.min(iterations.get(), maxIterations),
+                    elapsedMs, failure.get());
+        } else {
+            log.info("Warm-up completato: {} iterazioni in {} ms, iterazione media da {} us a {} us",
+                    Math.min(iterations.get(), maxIterations), elapsedMs, average(firstNanos) / 1_000,
+                    average(lastNanos) / 1_000);
+        }
+    }
+
+    void iteration(int i) {
+        // letture reali: connessioni, Hibernate, query già preparate nel pool
+        // niente liste paginate: il conteggio del totale scorrerebbe tutta la tabella ad ogni iterazione
+        List<User> page = userService.listUsersAfter(null, 20);
+        UUID id = page.isEmpty() ? new UUID(0, i) : page.get(i % page.size()).getId();
+        try {
+            userService.getUser(id);
+            UserMapper.toFieldMap(userService.getUserFields(id, FIELDS), FIELDS, i % 2 == 0);
+        } catch (NotFoundException expected) {
+            // nessun utente ancora presente
+        }
+
+        CreateUserRequest req = request(i);
+        validator.validate(req);
+        User u = user(req);
+        try {
+            String json = objectMapper.writeValueAsString(req);
+            objectMapper.readValue(json, CreateUserRequest.class);
+            UserResponse masked = UserMapper.toResponse(u, true);
+            objectMapper.writeValueAsString(List.of(masked, UserMapper.toResponse(u, false)));
+            objectMapper.readValue(objectMapper.writeValueAsString(masked), UserResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (User listed : page) {
+            UserMapper.toResponse(listed, i % 2 == 0);
+        }
+
+        AbstractAuthenticationToken auth = jwtConverter.convert(jwt(i));
+        SecurityUtils.hasAnyRole(auth, "OWNER", "MAINTAINER");
+    }
+
+    private static CreateUserRequest request(int i) {
+        CreateUserRequest req = new CreateUserRequest();
+        req.setUsername("warmup" + i);
+        req.setEmail("warmup." + i + "@example.com");
+        // un codice su quattro è errato: anche il ramo di errore del validatore va compilato
+        req.setCodiceFiscale(i % 4 == 0 ? "RSSMRA80A01H501X" : "RSSMRA80A01H501U");
+        req.setNome("Mario");
+        req.setCognome("Rossi");
+        req.setRoles(EnumSet.of(Role.values()[i % Role.values().length]));
+        return req;
+    }
+
+    private static User user(CreateUserRequest req) {
+        User u = new User();
+        u.setUsername(req.getUsername());
+        u.setEmail(req.getEmail());
+        u.setCodiceFiscale(req.getCodiceFiscale());
+        u.setNome(req.getNome());
+        u.setCognome(req.getCognome());
+        u.setRoles(req.getRoles());
+        u.setStatus(UserStatus.ACTIVE);
+        return u;
+    }
+
+    private static Jwt jwt(int i) {
+        return Jwt.withTokenValue("warmup")
+                .header("alg", "RS256")
+                .subject("warmup-" + i)
+                .issuedAt(OffsetDateTime.now().toInstant())
+                .claim("realm_access", Map.of("roles", List.of("REPORTER", Role.values()[i % Role.values().length].name())))
+                .build();
+    }
+
+    private static long average(long[] values) {
+        long sum = 0;
+        int n = 0;
+        for (long v : values) {
+            if (v > 0) {
+                sum += v;
+                n++;
+            }
+        }
+        return n == 0 ? 0 : sum / n;
+    }
+}
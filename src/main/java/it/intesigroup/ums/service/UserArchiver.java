@@ -0,0 +1,131 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.intesigroup.ums.repository.UserArchiveRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Job periodico che sposta in {@code users_archive} gli utenti cancellati da oltre {@code retention}.
+ * Lavora a blocchi piccoli, ciascuno in una transazione breve, con una pausa tra un blocco e l'altro
+ * lunga almeno quanto il blocco stesso: il job non occupa il database per più di metà del tempo.
+ * In modalità dry-run conta soltanto i candidati.
+ */
+public class UserArchiver implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserArchiver.class);
+
+    public record RunResult(boolean dryRun, long users, int batches, Duration elapsed) {}
+
+    private final UserArchiveRepository archiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration retention;
+    private final int batchSize;
+    private final Duration pause;
+    private final int maxBatchesPerRun;
+    private final Duration interval;
+    private final boolean dryRun;
+    private final ScheduledExecutorService scheduler;
+    private final Counter archived;
+    private final Timer batchTimer;
+    private final AtomicLong pending = new AtomicLong();
+    private volatile boolean stopping;
+
+    public UserArchiver(UserArchiveRepository archiveRepository, TransactionTemplate transactionTemplate,
+                        MeterRegistry meterRegistry, Duration retention, int batchSize, Duration pause,
+                        int maxBatchesPerRun, Duration interval, boolean dryRun) {
+        this.archiveRepository = archiveRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.interval = interval;
+        this.dryRun = dryRun;
+        this.archived = Counter.builder("ums.archive.users").register(meterRegistry);
+        this.batchTimer = Timer.builder("ums.archive.batch").register(meterRegistry);
+        meterRegistry.gauge("ums.archive.pending", pending);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::runSafely, millis, millis, TimeUnit.MILLISECONDS);
+        log.info("Archiviazione utenti cancellati pianificata ogni {} (retention {}, dry-run {})",
+                interval, retention, dryRun);
+    }
+
+    public RunResult runOnce() {
+        long start = System.nanoTime();
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(retention);
+        if (dryRun) {
+            long candidates = archiveRepository.countArchivable(cutoff);
+            pending.set(candidates);
+            log.info("Dry-run archiviazione: {} utenti cancellati prima di {}", candidates, cutoff);
+            return new RunResult(true, candidates, 0, Duration.ofNanos(System.nanoTime() - start));
+        }
+
+        long total = 0;
+        int batches = 0;
+        // una tabella alla volta (le partizioni, se presenti) finché un blocco non torna incompleto
+        tables:
+        for (String table : archiveRepository.archiveTargets()) {
+            while (true) {
+                if (stopping || batches >= maxBatchesPerRun) break tables;
+                long batchStart = System.nanoTime();
+                Integer moved = transactionTemplate.execute(
+                        status -> archiveRepository.archiveBatch(table, cutoff, batchSize));
+                long batchNanos = System.nanoTime() - batchStart;
+                batchTimer.record(batchNanos, TimeUnit.NANOSECONDS);
+                int n = moved != null ? moved : 0;
+                batches++;
+                total += n;
+                archived.increment(n);
+                if (n > 0 && !sleep(Math.max(pause.toNanos(), batchNanos))) break tables;
+                if (n < batchSize) break;
+            }
+        }
+        pending.set(archiveRepository.countArchivable(cutoff));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        log.info("Archiviati {} utenti cancellati prima di {} in {} blocchi ({} ms), ancora da archiviare: {}",
+                total, cutoff, batches, elapsed.toMillis(), pending.get());
+        return new RunResult(false, total, batches, elapsed);
+    }
+
+    @Override
+    public void close() {
+        stopping = true;
+        scheduler.shutdownNow();
+    }
+
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (RuntimeException e) {
+            log.warn("Archiviazione utenti cancellati fallita, nuovo tentativo tra {}", interval, e);
+        }
+    }
+
+    private boolean sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserAudit;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storico delle modifiche agli utenti in {@code user_audit}: per ogni aggiornamento, disabilitazione o
+ * cancellazione registra chi l'ha fatta (subject del JWT), i campi cambiati con il valore prima e dopo e
+ * l'istante del commit.
+ * <p>
+ * La riga non è scritta nella transazione della modifica: dopo il commit entra in un buffer in memoria
+ * che un thread dedicato svuota con insert in blocco, quindi la latenza delle API non dipende dallo storico.
+ * Il buffer ha una capacità fissa e il posto è riservato prima del commit: a buffer pieno la modifica
+ * attende al più {@code admissionWait} e poi fallisce con 503 (transazione annullata) invece di superare
+ * la capacità. Le scritture fallite sono ritentate finché il database non torna disponibile; alla chiusura
+ * il buffer viene svuotato. Le righe ancora in memoria vanno però perse se il processo termina senza
+ * chiusura ordinata o se la chiusura non finisce entro 30 secondi: lo storico non è transazionale con la
+ * modifica.
+ * <p>
+ * Le righe compaiono nello storico con il ritardo di un blocco (al più {@code maxDelay} con poco traffico).
+ */
+public class UserAuditTrail implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserAuditTrail.class);
+    static final String SYSTEM_ACTOR = "system";
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final int capacity;
+    private final int batchSize;
+    private final Duration maxDelay;
+    private final Duration admissionWait;
+    private final Duration retryInterval;
+    private final boolean managePartitions;
+
+    // un permesso per ogni riga riservata e non ancora scritta: la coda stessa non ha limite
+    private final Semaphore slots;
+    private final LinkedBlockingQueue<UserAudit> queue = new LinkedBlockingQueue<>();
+    private final Set<YearMonth> partitions = ConcurrentHashMap.newKeySet();
+    private final Thread writer;
+    private final Counter written;
+    private final Counter rejected;
+    private final Counter failures;
+    private volatile boolean closed;
+
+    public UserAuditTrail(EntityManager entityManager, TransactionTemplate transactionTemplate, JdbcTemplate jdbcTemplate,
+                          MeterRegistry meterRegistry, int capacity, int batchSize, Duration maxDelay,
+                          Duration admissionWait, Duration retryInterval, boolean managePartitions) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.admissionWait = admissionWait;
+        this.retryInterval = retryInterval;
+        this.managePartitions = managePartitions;
+        this.slots = new Semaphore(capacity);
+        Gauge.builder("ums.audit.pending", this, UserAuditTrail::pending).register(meterRegistry);
+        this.written = Counter.builder("ums.audit.written").register(meterRegistry);
+        this.rejected = Counter.builder("ums.audit.rejected").register(meterRegistry);
+        this.failures = Counter.builder("ums.audit.write.failures").register(meterRegistry);
+        this.writer = new Thread(this::run, "user-audit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Sincrono, nella transazione della modifica: riserva il posto nel buffer (o fa fallire la modifica)
+     * e accoda la riga solo dopo il commit.
+     */
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.type() == UserChangedEvent.Type.CREATED || event.before() == null) return;
+        Map<String, UserAudit.FieldChange> changes = diff(event.before(), event.after());
+        if (changes.isEmpty()) return;
+
+        String actor = actor(SecurityContextHolder.getContext().getAuthentication());
+        reserve();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(event, actor, changes);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    enqueue(event, actor, changes);
+                } else {
+                    slots.release();
+                }
+            }
+        });
+    }
+
+    /** Righe riservate e non ancora scritte. */
+    public int pending() {
+        return capacity - slots.availablePermits();
+    }
+
+    private void reserve() {
+        try {
+            if (slots.tryAcquire(admissionWait.toMillis(), TimeUnit.MILLISECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        throw new ServiceUnavailableException("Storico delle modifiche saturo, riprovare più tardi");
+    }
+
+    private void enqueue(UserChangedEvent event, String actor, Map<String, UserAudit.FieldChange> changes) {
+        queue.add(new UserAudit(event.userId(), event.type().name(), actor, changes, OffsetDateTime.now()));
+    }
+
+    private void run() {
+        List<UserAudit> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                UserAudit first = queue.poll(maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                fill(batch);
+                writeWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // con poco traffico aspetta altre righe fino a maxDelay dalla prima, per non scrivere un blocco per riga
+    private void fill(List<UserAudit> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelay.toNanos();
+        queue.drainTo(batch, batchSize - batch.size());
+        while (batch.size() < batchSize && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            UserAudit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) break;
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void writeWithRetry(List<UserAudit> batch) {
+        while (true) {
+            try {
+                write(batch);
+                written.increment(batch.size());
+                slots.release(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                failures.increment();
+                if (closed) {
+                    log.error("Scrittura dello storico non riuscita in chiusura: {} righe perse", batch.size(), e);
+                    slots.release(batch.size());
+                    return;
+                }
+                log.warn("Scrittura di {} righe dello storico non riuscita, nuovo tentativo tra {}", batch.size(), retryInterval, e);
+                try {
+                    Thread.sleep(retryInterval.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    void write(List<UserAudit> batch) {
+        if (managePartitions) {
+            for (UserAudit a : batch) {
+                YearMonth month = YearMonth.from(a.getChangedAt().atZoneSameInstant(ZoneOffset.UTC));
+                ensurePartition(month);
+                // anche il mese successivo, prima che serva
+                ensurePartition(month.plusMonths(1));
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            for (UserAudit a : batch) entityManager.persist(a);
+        });
+    }
+
+    // DDL fuori dalla transazione; IF NOT EXISTS perché anche le altre istanze creano le stesse partizioni.
+    // I trigger di TRUNCATE non sono clonati dalla tabella partizionata (V11): va creato per ogni partizione
+    private void ensurePartition(YearMonth month) {
+        if (partitions.contains(month)) return;
+        OffsetDateTime from = month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        String partition = "user_audit_y%dm%02d".formatted(month.getYear(), month.getMonthValue());
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF user_audit FOR VALUES FROM ('%s') TO ('%s')"
+                .formatted(partition, from, from.plusMonths(1)));
+        jdbcTemplate.execute(("CREATE OR REPLACE TRIGGER user_audit_no_truncate BEFORE TRUNCATE ON %s"
+                + " FOR EACH STATEMENT EXECUTE FUNCTION user_audit_append_only()").formatted(partition));
+        partitions.add(month);
+    }
+
+    static String actor(Authentication auth) {
+        if (auth instanceof JwtAuthenticationToken jwt && jwt.getToken().getSubject() != null) {
+            return jwt.getToken().getSubject();
+        }
+        return auth != null && auth.getName() != null ? auth.getName() : SYSTEM_ACTOR;
+    }
+
+    static Map<String, UserAudit.FieldChange> diff(UserChangedEvent.Snapshot before, UserChangedEvent.Snapshot after) {
+        Map<String, UserAudit.FieldChange> changes = new LinkedHashMap<>();
+        put(changes, "username", before.username(), after.username());
+        put(changes, "email", before.email(), after.email());
+        put(changes, "codiceFiscale", before.codiceFiscale(), after.codiceFiscale());
+        put(changes, "nome", before.nome(), after.nome());
+        put(changes, "cognome", before.cognome(), after.cognome());
+        put(changes, "status", before.status().name(), after.status().name());
+        put(changes, "roles", roleNames(before.roles()), roleNames(after.roles()));
+        return changes;
+    }
+
+    private static void put(Map<String, UserAudit.FieldChange> changes, String field, Object from, Object to) {
+        if (!Objects.equals(from, to)) changes.put(field, new UserAudit.FieldChange(from, to));
+    }
+
+    // i Set<Role> degli snapshot sono EnumSet: l'ordine dei nomi è quello dell'enum
+    private static List<String> roleNames(Set<Role> roles) {
+        List<String> names = new ArrayList<>(roles.size());
+        for (Role r : roles) names.add(r.name());
+        return names;
+    }
+
+    // senza interrupt: il thread se ne accorge entro maxDelay (o retryInterval) e svuota la coda;
+    // un'interruzione farebbe fallire l'acquisizione della connessione
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(Duration.ofSeconds(30).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package it.intesigroup.ums.service;
+
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserChange;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Scrive ogni {@link UserChangedEvent} in {@code user_changes}. Il listener è sincrono, quindi
+ * l'inserimento avviene nella transazione della modifica: una modifica annullata non compare nel registro
+ * e una confermata non può mancare. Il registro è letto da {@link UserChangeStream} e
+ * da {@link UserDigestIndex}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.users.stream.enabled", havingValue = "true", matchIfMissing = true)
+public class UserChangeLog {
+    private final UserChangeRepository changeRepository;
+
+    public UserChangeLog(UserChangeRepository changeRepository) {
+        this.changeRepository = changeRepository;
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        UserChangedEvent.Snapshot s = event.after();
+        UserChange c = new UserChange();
+        c.setUserId(s.id());
+        c.setChangeType(event.type().name());
+        c.setUsername(s.username());
+        c.setEmail(s.email());
+        c.setCodiceFiscale(s.codiceFiscale());
+        c.setNome(s.nome());
+        c.setCognome(s.cognome());
+        c.setStatus(s.status());
+        c.setRolesMask(Role.toMask(s.roles()));
+        c.setCreatedAt(s.createdAt());
+        c.setUpdatedAt(s.updatedAt());
+        changeRepository.save(c);
+    }
+}
@@ -0,0 +1,385 @@
+package it.intesigroup.ums.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import it.intesigroup.ums.domain.UserChange;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import it.intesigroup.ums.mapper.UserMapper;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stream SSE delle modifiche agli utenti, alimentato da {@code user_changes}.
+ * Un solo poller legge il registro (anche le modifiche fatte da altre istanze), serializza ogni evento
+ * una volta per variante (completa e mascherata) e lo tiene in una finestra in memoria condivisa.
+ * I sottoscrittori non hanno code né thread propri: ciascuno ha solo la propria posizione, e un pool
+ * fisso di sender la fa avanzare a blocchi leggendo dalla finestra, o dal registro se il client
+ * riprende da un Last-Event-ID vecchio o è rimasto indietro.
+ * <p>
+ * Il seq è assegnato all'INSERT ma la riga diventa visibile solo al commit, quindi il registro può avere
+ * buchi: transazioni ancora aperte o annullate. Il poller non si ferma sui buchi: li ricorda e li rilegge
+ * per {@code gapTimeout}; una riga confermata in ritardo è inviata ai sottoscrittori che l'hanno già
+ * superata. Per questo l'id di ogni evento è il punto di ripresa, mai oltre il primo buco ancora aperto:
+ * alla riconnessione il client può ricevere di nuovo qualche evento, ma non ne perde.
+ */
+public class UserChangeStream implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserChangeStream.class);
+    private static final int SEND_BATCH = 100;
+    private static final int MAX_GAPS = 10_000;
+
+    // evento già serializzato: il costo JSON non cresce con il numero di sottoscrittori
+    record Change(long seq, String name, String full, String masked) {}
+
+    private final UserChangeRepository changeRepository;
+    private final ObjectMapper objectMapper;
+    private final Duration pollInterval;
+    private final int pollBatch;
+    private final Duration gapTimeout;
+    private final int windowSize;
+    private final int maxSubscribers;
+    private final Duration heartbeat;
+    private final Duration emitterTimeout;
+    private final Duration retention;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService senders;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ConcurrentSkipListMap<Long, Change> window = new ConcurrentSkipListMap<>();
+    // seq mancanti sotto head, con l'istante (nanoTime) in cui sono stati visti la prima volta
+    private final ConcurrentSkipListMap<Long, Long> gaps = new ConcurrentSkipListMap<>();
+    private final Counter events;
+    private final Counter logReads;
+    // tutte le modifiche con seq in (windowFloor, head] sono in window; scritti solo dal poller
+    private volatile long windowFloor;
+    private volatile long head;
+    private int windowCount;
+    private volatile boolean ready;
+
+    public UserChangeStream(UserChangeRepository changeRepository, ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry, Duration pollInterval, int pollBatch, Duration gapTimeout,
+                            int windowSize, int senderThreads, int maxSubscribers, Duration heartbeat,
+                            Duration emitterTimeout, Duration retention) {
+        this.changeRepository = changeRepository;
+        this.objectMapper = objectMapper;
+        this.pollInterval = pollInterval;
+        this.pollBatch = pollBatch;
+        this.gapTimeout = gapTimeout;
+        this.windowSize = windowSize;
+        this.maxSubscribers = maxSubscribers;
+        this.heartbeat = heartbeat;
+        this.emitterTimeout = emitterTimeout;
+        this.retention = retention;
+        this.events = Counter.builder("ums.stream.events").register(meterRegistry);
+        this.logReads = Counter.builder("ums.stream.log.reads").register(meterRegistry);
+        meterRegistry.gaugeCollectionSize("ums.stream.subscribers", Tags.empty(), subscribers);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-change-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger senderIds = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread t = new Thread(r, "user-change-sender-" + senderIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // a contesto avviato e non durante il refresh: il run di training CDS termina prima e non ha database
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            init();
+        } catch (RuntimeException e) {
+            // il poller ritenta ad ogni giro; nel frattempo subscribe risponde 503
+            log.warn("Registro modifiche utenti non raggiungibile all'avvio, nuovo tentativo tra {}", pollInterval, e);
+        }
+        scheduler.scheduleWithFixedDelay(this::pollSafely, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::sendHeartbeats, heartbeat.toMillis(), heartbeat.toMillis(),
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::purgeSafely, 1, 60, TimeUnit.MINUTES);
+    }
+
+    private void init() {
+        long last = changeRepository.findLastSeq();
+        windowFloor = last;
+        head = last;
+        ready = true;
+        log.info("Stream modifiche utenti avviato da seq {} (poll ogni {}, retention {})", last, pollInterval, retention);
+    }
+
+    public SseEmitter subscribe(Long lastEventId, boolean maskSensitive) {
+        if (!ready) {
+            throw new ServiceUnavailableException("Stream delle modifiche non ancora disponibile, riprovare più tardi");
+        }
+        if (subscribers.size() >= maxSubscribers) {
+            throw new ServiceUnavailableException("Troppi client connessi allo stream, riprovare più tardi");
+        }
+        return register(new SseEmitter(emitterTimeout.toMillis()), lastEventId, maskSensitive);
+    }
+
+    SseEmitter register(SseEmitter emitter, Long lastEventId, boolean maskSensitive) {
+        Subscriber s = new Subscriber(emitter, maskSensitive);
+        long current = head;
+        s.position = current;
+        if (lastEventId != null && lastEventId < current) {
+            long first = changeRepository.findFirstSeq();
+            if (first > 0 && lastEventId >= first - 1) {
+                s.position = lastEventId;
+            } else {
+                // le modifiche successive a lastEventId sono già state rimosse: il client deve ricaricare la lista
+                s.send(SseEmitter.event().name("reset").data("{}", MediaType.APPLICATION_JSON));
+            }
+        }
+        if (s.closed) return emitter;
+        emitter.onCompletion(s::close);
+        emitter.onTimeout(s::close);
+        emitter.onError(e -> s.close());
+        subscribers.add(s);
+        // il poller può essere avanzato tra la lettura di head e la registrazione
+        s.wake();
+        return emitter;
+    }
+
+    /** Legge le nuove righe del registro; restituisce quante sono state rese disponibili ai sottoscrittori. */
+    int pollOnce() {
+        if (!ready) init();
+        int n = recheckGaps();
+        List<UserChange> rows = changeRepository.findAfter(head, Limit.of(pollBatch));
+        long h = head;
+        long now = System.nanoTime();
+        for (UserChange row : rows) {
+            // transazione ancora aperta o annullata: non si attende, il seq viene riletto da recheckGaps
+            for (long seq = Math.max(h + 1, row.getSeq() - MAX_GAPS); seq < row.getSeq(); seq++) {
+                gaps.put(seq, now);
+            }
+            window.put(row.getSeq(), toChange(row));
+            windowCount++;
+            h = row.getSeq();
+            n++;
+        }
+        while (gaps.size() > MAX_GAPS) {
+            log.warn("Troppi buchi aperti nel registro modifiche utenti, seq {} non più atteso", gaps.pollFirstEntry().getKey());
+        }
+        if (!rows.isEmpty()) head = h;
+        if (n > 0) {
+            while (windowCount > windowSize) {
+                // floor avanza prima della rimozione: chi legge la finestra si accorge di una lettura incompleta
+                Long first = window.firstKey();
+                windowFloor = first;
+                window.remove(first);
+                windowCount--;
+            }
+            for (Subscriber s : subscribers) s.wake();
+        }
+        return n;
+    }
+
+    // prima la finestra, poi le code dei sottoscrittori: chi scarta una riga tardiva perché non l'ha ancora
+    // raggiunta la troverà nella finestra (o nel registro)
+    private int recheckGaps() {
+        if (gaps.isEmpty()) return 0;
+        long expired = System.nanoTime() - gapTimeout.toNanos();
+        gaps.values().removeIf(since -> since - expired <= 0);
+        if (gaps.isEmpty()) return 0;
+        List<Long> missing = gaps.keySet().stream().limit(pollBatch).toList();
+        List<UserChange> rows = changeRepository.findBySeqIn(missing);
+        for (UserChange row : rows) {
+            Change c = toChange(row);
+            if (row.getSeq() > windowFloor) {
+                window.put(row.getSeq(), c);
+                windowCount++;
+            }
+            gaps.remove(row.getSeq());
+            for (Subscriber s : subscribers) s.late.add(c);
+        }
+        return rows.size();
+    }
+
+    // l'id inviato al client non supera il primo buco aperto: ripartendo da lì la riga tardiva viene riletta
+    private long resumeId(long seq) {
+        Map.Entry<Long, Long> gap = gaps.firstEntry();
+        return gap == null ? seq : Math.min(seq, gap.getKey() - 1);
+    }
+
+    long head() {
+        return head;
+    }
+
+    int openGaps() {
+        return gaps.size();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        for (Subscriber s : subscribers) s.close();
+        senders.shutdownNow();
+    }
+
+    private List<Change> next(long position, long upTo) {
+        if (position >= windowFloor) {
+            List<Change> out = new ArrayList<>();
+            for (Change c : window.tailMap(position, false).values()) {
+                if (c.seq() > upTo || out.size() == SEND_BATCH) break;
+                out.add(c);
+            }
+            if (position >= windowFloor) return out;
+        }
+        // ripresa da un Last-Event-ID fuori dalla finestra, o sottoscrittore rimasto indietro
+        logReads.increment();
+        return changeRepository.findRange(position, upTo, Limit.of(SEND_BATCH)).stream().map(this::toChange).toList();
+    }
+
+    private Change toChange(UserChange row) {
+        try {
+            return new Change(row.getSeq(), row.getChangeType().toLowerCase(Locale.ROOT),
+                    objectMapper.writeValueAsString(UserMapper.toResponse(row, false)),
+                    objectMapper.writeValueAsString(UserMapper.toResponse(row, true)));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void pollSafely() {
+        try {
+            pollOnce();
+        } catch (RuntimeException e) {
+            log.warn("Lettura del registro modifiche utenti fallita, nuovo tentativo tra {}", pollInterval, e);
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Subscriber s : subscribers) {
+            try {
+                senders.execute(s::heartbeat);
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    private void purgeSafely() {
+        try {
+            int removed = changeRepository.deleteChangedBefore(OffsetDateTime.now().minus(retention));
+            if (removed > 0) log.info("Rimosse {} modifiche utenti più vecchie di {}", removed, retention);
+        } catch (RuntimeException e) {
+            log.warn("Pulizia del registro modifiche utenti fallita", e);
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final boolean maskSensitive;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // righe confermate in ritardo: inviate solo se la posizione le ha già superate
+        private final Queue<Change> late = new ConcurrentLinkedQueue<>();
+        private volatile long position;
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, boolean maskSensitive) {
+            this.emitter = emitter;
+            this.maskSensitive = maskSensitive;
+        }
+
+        void wake() {
+            if (closed || !scheduled.compareAndSet(false, true)) return;
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        // un blocco per esecuzione, poi si cede il sender agli altri sottoscrittori
+        private void drain() {
+            try {
+                for (Change c = late.poll(); c != null; c = late.poll()) {
+                    if (c.seq() > position) continue;
+                    if (!send(c)) return;
+                }
+                long upTo = head;
+                if (position < upTo) {
+                    List<Change> batch = next(position, upTo);
+                    if (batch.isEmpty()) {
+                        position = upTo; // solo buchi nella sequenza
+                    }
+                    for (Change c : batch) {
+                        if (!send(c)) break;
+                        position = c.seq();
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("Invio modifiche utenti al client fallito", e);
+                close();
+            } finally {
+                scheduled.set(false);
+                if (!closed && (position < head || !late.isEmpty())) wake();
+            }
+        }
+
+        private boolean send(Change c) {
+            if (!send(SseEmitter.event().id(Long.toString(resumeId(c.seq()))).name(c.name())
+                    .data(maskSensitive ? c.masked() : c.full(), MediaType.APPLICATION_JSON))) return false;
+            events.increment();
+            return true;
+        }
+
+        void heartbeat() {
+            send(SseEmitter.event().comment(""));
+        }
+
+        boolean send(SseEmitter.SseEventBuilder event) {
+            if (closed) return false;
+            try {
+                emitter.send(event);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                // client disconnesso: riprenderà con Last-Event-ID
+                close();
+                return false;
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            subscribers.remove(this);
+            try {
+                emitter.complete();
+            } catch (RuntimeException ignored) {
+                // risposta già chiusa dal container
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package it.intesigroup.ums.service;
+
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Evento applicativo (in-process) pubblicato da {@link UserService} ad ogni modifica di un utente.
+ * Porta lo stato prima/dopo la modifica, così i listener possono aggiornarsi in modo incrementale.
+ */
+public record UserChangedEvent(Type type, Snapshot before, Snapshot after) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DISABLED,
+        DELETED
+    }
+
+    public UUID userId() {
+        return after != null ? after.id() : before.id();
+    }
+
+    public record Snapshot(UUID id,
+                           String username,
+                           String email,
+                           String codiceFiscale,
+                           String nome,
+                           String cognome,
+                           UserStatus status,
+                           Set<Role> roles,
+                           OffsetDateTime createdAt,
+                           OffsetDateTime updatedAt) {
+
+        public static Snapshot of(User u) {
+            Set<Role> roles = u.getRoles() == null || u.getRoles().isEmpty()
+                    ? EnumSet.noneOf(Role.class)
+                    : EnumSet.copyOf(u.getRoles());
+            return new Snapshot(u.getId(), u.getUsername(), u.getEmail(), u.getCodiceFiscale(),
+                    u.getNome(), u.getCognome(), u.getStatus(), Collections.unmodifiableSet(roles),
+                    u.getCreatedAt(), u.getUpdatedAt());
+        }
+    }
+}
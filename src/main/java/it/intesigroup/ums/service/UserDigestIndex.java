@@ -0,0 +1,411 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.domain.UserChange;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.exception.BadRequestException;
+import it.intesigroup.ums.exception.ConflictException;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Albero di digest sugli utenti non cancellati per la riconciliazione delle copie a valle.
+ * <p>
+ * Le foglie (al più 65536) sono intervalli contigui di id con confini scelti alla ricostruzione,
+ * circa lo stesso numero di utenti ciascuna: gli id UUIDv7 crescono nel tempo, quindi confini fissi
+ * sui primi bit dell'id metterebbero gli utenti recenti tutti nella stessa foglia. Il digest di un
+ * intervallo è la somma modulo 2^64 dell'hash dei suoi utenti, per cui un nodo interno è la somma
+ * delle sue foglie e una replica può calcolarlo sui propri dati per gli stessi id.
+ * <p>
+ * I digest delle foglie restano in memoria; ogni modifica marca sporca la foglia dell'utente, che viene
+ * ricalcolata dal database alla prima richiesta che la include. Il flag viene azzerato prima della
+ * lettura, quindi una modifica confermata durante il ricalcolo lascia la foglia di nuovo sporca.
+ * Oltre agli eventi locali l'indice legge {@code user_changes}, come lo stream, così vede anche le
+ * modifiche fatte da altre istanze; i seq mancanti sono riletti per {@code gapTimeout}.
+ * Quando una foglia supera {@code maxLeafSize} (tipicamente l'ultima, dove finiscono i nuovi id)
+ * l'albero viene ricostruito in background. La versione è l'hash dei confini delle foglie: due istanze
+ * con gli stessi confini hanno la stessa versione, una richiesta su confini diversi risponde 409.
+ */
+public class UserDigestIndex implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserDigestIndex.class);
+    static final int MAX_LEAVES = 1 << 16;
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+    private static final UUID MAX_ID = new UUID(-1L, -1L);
+    private static final int BATCH_SIZE = 10_000;
+    private static final int POLL_BATCH = 1_000;
+    private static final int MAX_GAPS = 10_000;
+    private static final HexFormat HEX = HexFormat.of();
+
+    public record DigestNode(String version, int from, int to, UUID fromId, UUID toId, long count, String digest,
+                             List<DigestNode> children) {}
+
+    public record DigestEntry(UUID id, String hash) {}
+
+    private final UserRepository userRepository;
+    private final UserChangeRepository changeRepository;
+    private final Duration pollInterval;
+    private final Duration gapTimeout;
+    private final int minLeafSize;
+    private final int maxLeafSize;
+    private final int maxEntries;
+    // ricostruzioni e lettura del registro sullo stesso thread: il registro è letto a ricostruzione conclusa
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final Set<UUID> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private final Counter leafRefreshes;
+    private volatile Tree current;
+    private volatile boolean building;
+    // posizione nel registro e seq mancanti sotto di essa (nanoTime della prima osservazione); solo executor
+    private long changeHead = -1;
+    private final TreeMap<Long, Long> changeGaps = new TreeMap<>();
+
+    /** {@code changeRepository} nullo: solo le modifiche fatte da questa istanza invalidano le foglie. */
+    public UserDigestIndex(UserRepository userRepository, UserChangeRepository changeRepository,
+                           MeterRegistry meterRegistry, Duration pollInterval, Duration gapTimeout,
+                           int minLeafSize, int maxLeafSize, int maxEntries) {
+        this.userRepository = userRepository;
+        this.changeRepository = changeRepository;
+        this.pollInterval = pollInterval;
+        this.gapTimeout = gapTimeout;
+        this.minLeafSize = minLeafSize;
+        this.maxLeafSize = maxLeafSize;
+        this.maxEntries = maxEntries;
+        this.leafRefreshes = Counter.builder("ums.digest.leaf.refreshes").register(meterRegistry);
+        Gauge.builder("ums.digest.leaves", this, i -> i.current != null ? i.current.lower.length : 0)
+                .register(meterRegistry);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-digest");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        // la posizione nel registro è letta prima della scansione: le modifiche successive non vanno perse
+        if (changeRepository != null) {
+            executor.scheduleWithFixedDelay(this::pollChangesSafely, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        requestRebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        UUID id = event.userId();
+        markDirty(id);
+        if (building) changedDuringRebuild.add(id);
+    }
+
+    /** Nodo [from, to) di foglie con i suoi {@code fanout} figli; {@code version} se indicata deve essere quella corrente. */
+    public DigestNode node(Integer from, Integer to, int fanout, String version) {
+        Tree t = tree(version);
+        int lo = from != null ? from : 0;
+        int hi = to != null ? to : t.lower.length;
+        if (lo < 0 || hi > t.lower.length || lo >= hi) {
+            throw new BadRequestException("Intervallo di foglie non valido: [" + lo + ", " + hi + ") su " + t.lower.length);
+        }
+        if (fanout < 2 || fanout > 256) {
+            throw new BadRequestException("fanout deve essere compreso tra 2 e 256");
+        }
+        synchronized (t) {
+            refresh(t, lo, hi);
+            List<DigestNode> children = new ArrayList<>();
+            int width = hi - lo;
+            int parts = Math.min(fanout, width);
+            if (width > 1) {
+                for (int i = 0; i < parts; i++) {
+                    int cLo = lo + (int) ((long) width * i / parts);
+                    int cHi = lo + (int) ((long) width * (i + 1) / parts);
+                    children.add(t.aggregate(cLo, cHi, List.of()));
+                }
+            }
+            return t.aggregate(lo, hi, children);
+        }
+    }
+
+    /** Id e hash degli utenti delle foglie [from, to), letti dal database: ultimo passo della riconciliazione. */
+    public List<DigestEntry> entries(int from, int to, String version) {
+        Tree t = tree(version);
+        if (from < 0 || to > t.lower.length || from >= to) {
+            throw new BadRequestException("Intervallo di foglie non valido: [" + from + ", " + to + ") su " + t.lower.length);
+        }
+        UUID lo = t.lower[from];
+        UUID hi = t.upper(to - 1);
+        List<DigestEntry> out = new ArrayList<>();
+        MessageDigest sha = sha256();
+        UUID after = MIN_ID;
+        List<Object[]> batch;
+        do {
+            batch = userRepository.findDigestRows(lo, after, hi, Limit.of(BATCH_SIZE));
+            for (Object[] row : batch) {
+                if (out.size() == maxEntries) {
+                    throw new BadRequestException("Più di " + maxEntries + " utenti nell'intervallo: scendere nell'albero");
+                }
+                out.add(new DigestEntry((UUID) row[0], HEX.toHexDigits(hash(sha, row))));
+                after = (UUID) row[0];
+            }
+        } while (batch.size() == BATCH_SIZE);
+        return out;
+    }
+
+    public void requestRebuild() {
+        if (!rebuildScheduled.compareAndSet(false, true)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.warn("Ricostruzione del digest utenti fallita", e);
+                } finally {
+                    rebuildScheduled.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuildScheduled.set(false);
+        }
+    }
+
+    void rebuild() {
+        long start = System.nanoTime();
+        long leafSize = Math.max(minLeafSize, (userRepository.count() + MAX_LEAVES - 1) / MAX_LEAVES);
+        building = true;
+        try {
+            List<UUID> lower = new ArrayList<>();
+            long[] digests = new long[MAX_LEAVES];
+            long[] counts = new long[MAX_LEAVES];
+            lower.add(MIN_ID);
+            MessageDigest sha = sha256();
+            UUID after = MIN_ID;
+            long rows = 0;
+            List<Object[]> batch;
+            do {
+                batch = userRepository.findDigestRows(MIN_ID, after, MAX_ID, Limit.of(BATCH_SIZE));
+                for (Object[] row : batch) {
+                    UUID id = (UUID) row[0];
+                    int leaf = lower.size() - 1;
+                    if (counts[leaf] >= leafSize && lower.size() < MAX_LEAVES) {
+                        lower.add(id);
+                        leaf++;
+                    }
+                    digests[leaf] += hash(sha, row);
+                    counts[leaf]++;
+                    after = id;
+                }
+                rows += batch.size();
+            } while (batch.size() == BATCH_SIZE);
+
+            UUID[] bounds = lower.toArray(UUID[]::new);
+            Tree fresh = new Tree(version(sha, bounds), bounds, Arrays.copyOf(digests, lower.size()),
+                    Arrays.copyOf(counts, lower.size()));
+            current = fresh;
+            // le modifiche viste o no dalla scansione vengono ricalcolate alla prossima richiesta
+            for (UUID id : changedDuringRebuild) fresh.dirty.add(fresh.leafOf(id));
+            log.info("Digest utenti {} costruito: {} utenti in {} foglie in {} ms", fresh.version, rows,
+                    fresh.lower.length, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            building = false;
+            changedDuringRebuild.clear();
+        }
+    }
+
+    /** Marca sporche le foglie degli utenti modificati dall'ultima lettura del registro, anche da altre istanze. */
+    void pollChanges() {
+        if (changeHead < 0) {
+            changeHead = changeRepository.findLastSeq();
+            // lettura del registro partita dopo una costruzione: le modifiche intermedie non sarebbero viste
+            if (current != null) requestRebuild();
+            return;
+        }
+        if (!changeGaps.isEmpty()) {
+            long expired = System.nanoTime() - gapTimeout.toNanos();
+            changeGaps.values().removeIf(since -> since - expired <= 0);
+            if (!changeGaps.isEmpty()) {
+                for (UserChange c : changeRepository.findBySeqIn(changeGaps.keySet().stream().limit(POLL_BATCH).toList())) {
+                    changeGaps.remove(c.getSeq());
+                    markDirty(c.getUserId());
+                }
+            }
+        }
+        List<UserChange> batch;
+        do {
+            batch = changeRepository.findAfter(changeHead, Limit.of(POLL_BATCH));
+            long now = System.nanoTime();
+            for (UserChange c : batch) {
+                // transazione ancora aperta o annullata: si riprova con findBySeqIn
+                for (long seq = Math.max(changeHead + 1, c.getSeq() - MAX_GAPS); seq < c.getSeq(); seq++) {
+                    changeGaps.put(seq, now);
+                }
+                markDirty(c.getUserId());
+                changeHead = c.getSeq();
+            }
+        } while (batch.size() == POLL_BATCH);
+        while (changeGaps.size() > MAX_GAPS) changeGaps.pollFirstEntry();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void pollChangesSafely() {
+        try {
+            pollChanges();
+        } catch (RuntimeException e) {
+            log.warn("Lettura del registro modifiche per il digest utenti fallita, nuovo tentativo tra {}", pollInterval, e);
+        }
+    }
+
+    private void markDirty(UUID id) {
+        Tree t = current;
+        if (t != null) t.dirty.add(t.leafOf(id));
+    }
+
+    private Tree tree(String version) {
+        Tree t = current;
+        if (t == null) {
+            throw new ServiceUnavailableException("Digest utenti non ancora disponibile, riprovare più tardi");
+        }
+        if (version != null && !version.equals(t.version)) {
+            throw new ConflictException("Digest ricostruito (versione " + t.version + "): ripartire dalla radice");
+        }
+        return t;
+    }
+
+    // Chiamato con il lock dell'albero: ricalcola le foglie sporche dell'intervallo richiesto
+    private void refresh(Tree t, int from, int to) {
+        MessageDigest sha = null;
+        for (Integer leaf : t.dirty) {
+            if (leaf < from || leaf >= to || !t.dirty.remove(leaf)) continue;
+            if (sha == null) sha = sha256();
+            long digest = 0;
+            long count = 0;
+            UUID after = MIN_ID;
+            List<Object[]> batch;
+            do {
+                batch = userRepository.findDigestRows(t.lower[leaf], after, t.upper(leaf), Limit.of(BATCH_SIZE));
+                for (Object[] row : batch) {
+                    digest += hash(sha, row);
+                    count++;
+                    after = (UUID) row[0];
+                }
+            } while (batch.size() == BATCH_SIZE);
+            t.digests[leaf] = digest;
+            t.counts[leaf] = count;
+            leafRefreshes.increment();
+            if (count > maxLeafSize) requestRebuild();
+        }
+    }
+
+    /**
+     * Hash di un utente: primi 8 byte (big endian) dello SHA-256 della stringa UTF-8
+     * {@code id|updated_at in microsecondi dall'epoch|status|roles_mask}.
+     */
+    static long hash(MessageDigest sha, Object[] row) {
+        OffsetDateTime updatedAt = (OffsetDateTime) row[1];
+        String canonical = row[0] + "|" + ChronoUnit.MICROS.between(Instant.EPOCH, updatedAt.toInstant())
+                + "|" + ((UserStatus) row[2]).name() + "|" + ((Number) row[3]).intValue();
+        return prefix(sha.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // primi 8 byte dello SHA-256 dei limiti inferiori delle foglie, 16 byte big endian ciascuno
+    static String version(MessageDigest sha, UUID[] lower) {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        for (UUID id : lower) {
+            buf.clear();
+            sha.update(buf.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).array());
+        }
+        return HEX.toHexDigits(prefix(sha.digest()));
+    }
+
+    private static long prefix(byte[] h) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | (h[i] & 0xff);
+        return v;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // stesso ordinamento del tipo uuid di PostgreSQL: byte senza segno
+    static int compare(UUID a, UUID b) {
+        int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    private static final class Tree {
+        final String version;
+        // foglia i = [lower[i], lower[i + 1]), l'ultima è aperta a destra
+        final UUID[] lower;
+        final long[] digests;
+        final long[] counts;
+        final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+
+        Tree(String version, UUID[] lower, long[] digests, long[] counts) {
+            this.version = version;
+            this.lower = lower;
+            this.digests = digests;
+            this.counts = counts;
+        }
+
+        int leafOf(UUID id) {
+            int lo = 0, hi = lower.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (compare(lower[mid], id) <= 0) lo = mid;
+                else hi = mid - 1;
+            }
+            return lo;
+        }
+
+        UUID upper(int leaf) {
+            return leaf + 1 < lower.length ? lower[leaf + 1] : MAX_ID;
+        }
+
+        DigestNode aggregate(int from, int to, List<DigestNode> children) {
+            long digest = 0;
+            long count = 0;
+            for (int i = from; i < to; i++) {
+                digest += digests[i];
+                count += counts[i];
+            }
+            return new DigestNode(version, from, to, lower[from], to < lower.length ? lower[to] : null, count,
+                    HEX.toHexDigits(digest), children);
+        }
+    }
+}
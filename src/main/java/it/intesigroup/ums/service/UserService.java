@@ -1,67 +1,136 @@
 package it.intesigroup.ums.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.intesigroup.ums.domain.Role;
 import it.intesigroup.ums.domain.User;
 import it.intesigroup.ums.domain.UserStatus;
 import it.intesigroup.ums.dto.CreateUserRequest;
 import it.intesigroup.ums.dto.UpdateUserRequest;
+import it.intesigroup.ums.dto.UserField;
 import it.intesigroup.ums.exception.ConflictException;
 import it.intesigroup.ums.exception.NotFoundException;
 import it.intesigroup.ums.repository.UserRepository;
+import jakarta.persistence.Tuple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 @Service
 public class UserService {
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
+    // Cursore iniziale per la paginazione keyset: nessun id generato coincide con l'UUID nullo
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
     private final UserRepository userRepository;
     private final AmqpTemplate amqpTemplate;
+    private final ApplicationEventPublisher eventPublisher;
     private final String userExchange;
     private final String userCreatedRoutingKey;
+    private final SingleFlight<UUID, User> userLoads;
+    private final NaturalKeyFilter naturalKeyFilter;
 
     public UserService(UserRepository userRepository,
+                       NaturalKeyFilter naturalKeyFilter,
                        AmqpTemplate amqpTemplate,
+                       ApplicationEventPublisher eventPublisher,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.users.coalescing.max-wait:PT1S}") Duration coalescingMaxWait,
                        @Value("${app.events.exchange}") String userExchange,
                        @Value("${app.events.routing.userCreated}") String userCreatedRoutingKey) {
         this.userRepository = userRepository;
+        this.naturalKeyFilter = naturalKeyFilter;
         this.amqpTemplate = amqpTemplate;
+        this.eventPublisher = eventPublisher;
         this.userExchange = userExchange;
         this.userCreatedRoutingKey = userCreatedRoutingKey;
+        this.userLoads = new SingleFlight<>("user", coalescingMaxWait, meterRegistry);
     }
 
     @Transactional(readOnly = true)
     public Page<User> listUsers(Pageable pageable) {
         log.info("Recupero lista utenti");
-        return userRepository.findAllActiveOrDisabled(pageable);
+        return userRepository.findAllActiveOrDisabled(sorted(pageable));
     }
 
     @Transactional(readOnly = true)
+    public Page<Tuple> listUserFields(Set<UserField> fields, Pageable pageable) {
+        log.info("Recupero lista utenti con campi {}", fields);
+        return userRepository.findActiveOrDisabledFields(fields, sorted(pageable));
+    }
+
+    @Transactional(readOnly = true)
+    public Tuple getUserFields(UUID id, Set<UserField> fields) {
+        log.info("Recupero utente {} con campi {}", id, fields);
+        return userRepository.findActiveOrDisabledFieldsById(id, fields)
+                .orElseThrow(() -> new NotFoundException("Utente non trovato"));
+    }
+
+    // Letture concorrenti dello stesso id condividono un'unica query. Nessuna transazione qui:
+    // chi attende il leader non apre sessioni né occupa connessioni (findById ha la propria
+    // transazione readOnly). L'istanza restituita può essere condivisa tra thread: solo lettura.
     public User getUser(UUID id) {
         log.info("Recupero utente {}", id);
-        
-        return userRepository.findById(id)
-                .filter(u -> u.getStatus() != UserStatus.DELETED)
-                .orElseThrow(() -> new NotFoundException("Utente non trovato"));
+
+        User u = userLoads.load(id, key -> userRepository.findById(key)
+                .filter(found -> found.getStatus() != UserStatus.DELETED)
+                .orElse(null));
+        if (u == null) throw new NotFoundException("Utente non trovato");
+        return u;
+    }
+
+    public List<User> getUsers(Collection<UUID> ids) {
+        log.info("Recupero di {} utenti per id", ids.size());
+        Map<UUID, User> found = userLoads.loadAll(ids, keys -> {
+            Map<UUID, User> loaded = new HashMap<>();
+            for (User u : userRepository.findAllById(keys)) {
+                if (u.getStatus() != UserStatus.DELETED) loaded.put(u.getId(), u);
+            }
+            return loaded;
+        });
+        return List.copyOf(found.values());
+    }
+
+    @Transactional(readOnly = true)
+    public List<User> listUsersAfter(UUID after, int limit) {
+        log.debug("Recupero utenti dopo {}", after);
+        return userRepository.findActiveOrDisabledAfter(after != null ? after : FIRST_ID, Limit.of(limit));
+    }
+
+    @Transactional(readOnly = true)
+    public List<User> listRoleMembers(Role role, UUID after, int limit) {
+        log.info("Recupero utenti con ruolo {} dopo {}", role, after);
+        return userRepository.findRoleMembers(role.name(), after != null ? after : FIRST_ID, Limit.of(limit));
     }
 
     @Transactional
     public User createUser(CreateUserRequest req) {
         log.info("Creazione utente {}", req);
 
-        if (userRepository.findByEmail(req.getEmail()).isPresent()) {
+        String email = req.getEmail().toLowerCase(Locale.ROOT);
+        String codiceFiscale = req.getCodiceFiscale().toUpperCase(Locale.ROOT);
+        if (naturalKeyFilter.exists(NaturalKeyFilter.Key.EMAIL, email, userRepository::existsByEmail)) {
             throw new ConflictException("Email già utilizzata");
         }
-        if (userRepository.findByCodiceFiscale(req.getCodiceFiscale()).isPresent()) {
+        if (naturalKeyFilter.exists(NaturalKeyFilter.Key.CODICE_FISCALE, codiceFiscale,
+                userRepository::existsByCodiceFiscale)) {
             throw new ConflictException("Codice fiscale già utilizzato");
         }
 
@@ -69,17 +138,24 @@ public class UserService {
         Set<Role> roles = new HashSet<>(req.getRoles());
 
         u.setUsername(req.getUsername());
-        u.setEmail(req.getEmail().toLowerCase());
-        u.setCodiceFiscale(req.getCodiceFiscale().toUpperCase());
+        u.setEmail(email);
+        u.setCodiceFiscale(codiceFiscale);
         u.setNome(req.getNome());
         u.setCognome(req.getCognome());
         
         u.setRoles(roles);
         u.setStatus(UserStatus.ACTIVE);
 
-        // Persistenza dell'utente e assegnazione dell'identificativo
-        User saved = userRepository.save(u);
+        // Persistenza dell'utente e assegnazione dell'identificativo: il flush fa emergere qui, prima di
+        // qualsiasi evento, la violazione degli indici unique per una chiave che il filtro non conosceva ancora
+        User saved;
+        try {
+            saved = userRepository.saveAndFlush(u);
+        } catch (DataIntegrityViolationException e) {
+            throw naturalKeyConflict(e);
+        }
         log.info("Utente {} creato con successo", saved);
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.CREATED, null, UserChangedEvent.Snapshot.of(saved)));
 
         // Pubblicazione best-effort di un evento di dominio su RabbitMQ
         try {
@@ -97,12 +173,13 @@ public class UserService {
     public User updateUser(UUID id, UpdateUserRequest req) {
         log.info("Aggiornamento utente {}", id);
 
-        User u = getUser(id);
+        User u = loadForUpdate(id);
+        UserChangedEvent.Snapshot before = UserChangedEvent.Snapshot.of(u);
 
         if (req.getCodiceFiscale() != null) {
-            String cf = req.getCodiceFiscale().toUpperCase();
+            String cf = req.getCodiceFiscale().toUpperCase(Locale.ROOT);
             if (!cf.equals(u.getCodiceFiscale()) &&
-                userRepository.findByCodiceFiscale(cf).isPresent()) {
+                naturalKeyFilter.exists(NaturalKeyFilter.Key.CODICE_FISCALE, cf, userRepository::existsByCodiceFiscale)) {
                 throw new ConflictException("Codice fiscale già utilizzato");
             }
             u.setCodiceFiscale(cf);
@@ -113,8 +190,15 @@ public class UserService {
         if (req.getCognome() != null) u.setCognome(req.getCognome());
         if (req.getRoles() != null) u.setRoles(new HashSet<>(req.getRoles()));
 
-        User updated = userRepository.save(u);
+        // flush prima dello snapshot: updatedAt è impostato da @PreUpdate solo quando l'UPDATE viene eseguito
+        User updated;
+        try {
+            updated = userRepository.saveAndFlush(u);
+        } catch (DataIntegrityViolationException e) {
+            throw naturalKeyConflict(e);
+        }
         log.info("Utente {} aggiornato con successo", id);
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.UPDATED, before, UserChangedEvent.Snapshot.of(updated)));
 
         return updated;
     }
@@ -123,11 +207,13 @@ public class UserService {
     public void disableUser(UUID id) {
         log.info("Disabilitazione utente {}", id);
 
-        User u = getUser(id);
+        User u = loadForUpdate(id);
+        UserChangedEvent.Snapshot before = UserChangedEvent.Snapshot.of(u);
         u.setStatus(UserStatus.DISABLED);
         
-        userRepository.save(u);
+        userRepository.saveAndFlush(u);
         log.info("Utente {} disabilitato con successo", id);
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DISABLED, before, UserChangedEvent.Snapshot.of(u)));
     }
 
     @Transactional
@@ -135,11 +221,32 @@ public class UserService {
         log.info("Cancellazione utente {}", id);
 
         // Soft delete: l'utente non viene rimosso fisicamente dal database
-        User u = getUser(id);
+        User u = loadForUpdate(id);
+        UserChangedEvent.Snapshot before = UserChangedEvent.Snapshot.of(u);
         u.setStatus(UserStatus.DELETED);
 
-        userRepository.save(u);
+        userRepository.saveAndFlush(u);
         log.info("Utente {} cancellato con successo", id);
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DELETED, before, UserChangedEvent.Snapshot.of(u)));
+    }
+
+    private static Pageable sorted(Pageable pageable) {
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), UserField.pageSort(pageable.getSort()));
+    }
+
+    // Percorsi di scrittura: entità gestita dalla transazione corrente, mai il risultato condiviso di getUser
+    private User loadForUpdate(UUID id) {
+        return userRepository.findById(id)
+                .filter(u -> u.getStatus() != UserStatus.DELETED)
+                .orElseThrow(() -> new NotFoundException("Utente non trovato"));
+    }
+
+    // nome dell'indice unique violato (uk_users_email*, uk_users_codice_fiscale*) nel messaggio del driver
+    private static RuntimeException naturalKeyConflict(DataIntegrityViolationException e) {
+        String message = String.valueOf(e.getMostSpecificCause().getMessage()).toLowerCase(Locale.ROOT);
+        if (message.contains("uk_users_email")) return new ConflictException("Email già utilizzata");
+        if (message.contains("uk_users_codice_fiscale")) return new ConflictException("Codice fiscale già utilizzato");
+        return e;
     }
 
     public record UserCreatedEvent(UUID id, String email, Set<Role> roles) {}
@@ -0,0 +1,259 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.SnapshotJob;
+import it.intesigroup.ums.domain.SnapshotStatus;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.dto.SnapshotRequest;
+import it.intesigroup.ums.exception.BadRequestException;
+import it.intesigroup.ums.exception.ConflictException;
+import it.intesigroup.ums.exception.NotFoundException;
+import it.intesigroup.ums.repository.SnapshotJobRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pubblica su RabbitMQ lo stato corrente degli utenti (tutti o un intervallo), per il bootstrap
+ * di nuovi consumer di {@code ums.user.events}. Gli utenti sono letti a blocchi per id in transazioni
+ * readOnly brevi (servite dalle repliche, se configurate) invece che con un cursore aperto per tutta
+ * la durata del job; ogni blocco è pubblicato con publisher confirms e solo dopo la conferma del broker
+ * il cursore del job avanza in {@code snapshot_jobs}. I messaggi sono mandatory: il broker conferma anche
+ * quelli che non raggiungono nessuna coda, quindi un messaggio restituito fa fallire il job. Un job interrotto riprende dall'ultimo blocco
+ * confermato: i messaggi sono at-least-once, i consumer devono tollerare duplicati per id.
+ */
+public class UserSnapshotPublisher implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserSnapshotPublisher.class);
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+    private static final UUID MAX_ID = new UUID(-1L, -1L);
+    private static final OffsetDateTime EPOCH = OffsetDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    public record JobStatus(UUID id, String routingKey, SnapshotStatus status, long published, UUID cursor,
+                            String error, OffsetDateTime createdAt, OffsetDateTime updatedAt) {
+        static JobStatus of(SnapshotJob j) {
+            return new JobStatus(j.getId(), j.getRoutingKey(), j.getStatus(), j.getPublished(), j.getCursor(),
+                    j.getError(), j.getCreatedAt(), j.getUpdatedAt());
+        }
+    }
+
+    // Messaggi pubblicati: uno per utente, poi uno di chiusura con il totale del job
+    public record UserSnapshotEvent(UUID jobId, UUID id, String username, String email, String codiceFiscale,
+                                    String nome, String cognome, UserStatus status, Set<Role> roles,
+                                    OffsetDateTime createdAt, OffsetDateTime updatedAt) {
+        static UserSnapshotEvent of(UUID jobId, User u) {
+            return new UserSnapshotEvent(jobId, u.getId(), u.getUsername(), u.getEmail(), u.getCodiceFiscale(),
+                    u.getNome(), u.getCognome(), u.getStatus(), u.getRoles(), u.getCreatedAt(), u.getUpdatedAt());
+        }
+    }
+
+    public record SnapshotCompletedEvent(UUID jobId, long users) {}
+
+    private final UserRepository userRepository;
+    private final SnapshotJobRepository jobRepository;
+    private final RabbitOperations rabbit;
+    private final TransactionTemplate readTransaction;
+    private final String exchange;
+    private final int batchSize;
+    private final int defaultRate;
+    private final int maxRate;
+    private final Duration confirmTimeout;
+    private final Duration staleAfter;
+    private final ExecutorService executor;
+    private final Counter messages;
+    private volatile boolean stopping;
+
+    public UserSnapshotPublisher(UserRepository userRepository, SnapshotJobRepository jobRepository,
+                                 RabbitOperations rabbit, TransactionTemplate readTransaction, MeterRegistry meterRegistry,
+                                 String exchange, int batchSize, int defaultRate, int maxRate,
+                                 Duration confirmTimeout, Duration staleAfter) {
+        this.userRepository = userRepository;
+        this.jobRepository = jobRepository;
+        this.rabbit = rabbit;
+        this.readTransaction = readTransaction;
+        this.exchange = exchange;
+        this.batchSize = batchSize;
+        this.defaultRate = defaultRate;
+        this.maxRate = maxRate;
+        this.confirmTimeout = confirmTimeout;
+        this.staleAfter = staleAfter;
+        this.messages = Counter.builder("ums.snapshot.messages").register(meterRegistry);
+        // un job alla volta per istanza: gli altri restano in coda
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "user-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public JobStatus start(SnapshotRequest req) {
+        int rate = req.getRate() != null ? req.getRate() : defaultRate;
+        if (rate > maxRate) {
+            throw new BadRequestException("Rate massimo consentito: " + maxRate + " messaggi al secondo");
+        }
+        SnapshotJob job = new SnapshotJob();
+        job.setRoutingKey(req.getRoutingKey());
+        job.setFromId(req.getFromId());
+        job.setToId(req.getToId());
+        job.setUpdatedSince(req.getUpdatedSince());
+        job.setIncludeDeleted(req.isIncludeDeleted());
+        job.setRate(rate);
+        SnapshotJob saved = jobRepository.save(job);
+        log.info("Snapshot {} verso {} creato ({} messaggi/s)", saved.getId(), saved.getRoutingKey(), rate);
+        executor.execute(() -> run(saved.getId()));
+        return JobStatus.of(saved);
+    }
+
+    public JobStatus resume(UUID id) {
+        SnapshotJob job = find(id);
+        if (job.getStatus() == SnapshotStatus.COMPLETED || job.getStatus() == SnapshotStatus.CANCELLED) {
+            throw new ConflictException("Snapshot " + id + " già " + job.getStatus());
+        }
+        log.info("Ripresa snapshot {} da {}", id, job.getCursor());
+        executor.execute(() -> run(id));
+        return JobStatus.of(job);
+    }
+
+    public JobStatus cancel(UUID id) {
+        find(id);
+        if (jobRepository.cancel(id, OffsetDateTime.now()) == 0) {
+            throw new ConflictException("Snapshot " + id + " già concluso");
+        }
+        log.info("Snapshot {} annullato", id);
+        return get(id);
+    }
+
+    public JobStatus get(UUID id) {
+        return JobStatus.of(find(id));
+    }
+
+    void run(UUID id) {
+        OffsetDateTime now = OffsetDateTime.now();
+        if (jobRepository.claim(id, now, now.minus(staleAfter)) == 0) {
+            log.info("Snapshot {} già in esecuzione o concluso", id);
+            return;
+        }
+        SnapshotJob job = find(id);
+        UUID cursor = job.getCursor() != null ? job.getCursor() : MIN_ID;
+        UUID from = job.getFromId() != null ? job.getFromId() : MIN_ID;
+        UUID to = job.getToId() != null ? job.getToId() : MAX_ID;
+        OffsetDateTime since = job.getUpdatedSince() != null ? job.getUpdatedSince() : EPOCH;
+        long start = System.nanoTime();
+        long sent = 0;
+        try {
+            while (!stopping) {
+                UUID after = cursor;
+                List<User> batch = readTransaction.execute(status -> userRepository.findSnapshotBatch(
+                        after, from, to, since, job.isIncludeDeleted(), Limit.of(batchSize)));
+                if (batch == null || batch.isEmpty()) break;
+
+                publishConfirmed(job, batch);
+                cursor = batch.get(batch.size() - 1).getId();
+                if (jobRepository.advance(id, cursor, batch.size(), OffsetDateTime.now()) == 0) {
+                    log.info("Snapshot {} annullato dopo {} messaggi", id, sent + batch.size());
+                    return;
+                }
+                sent += batch.size();
+                messages.increment(batch.size());
+                if (batch.size() < batchSize) break;
+                // limite di velocità medio sull'intera esecuzione
+                long aheadNanos = sent * 1_000_000_000L / job.getRate() - (System.nanoTime() - start);
+                if (aheadNanos > 0 && !sleep(aheadNanos)) break;
+            }
+            if (stopping || Thread.currentThread().isInterrupted()) {
+                jobRepository.finish(id, SnapshotStatus.FAILED, "Interrotto allo spegnimento", OffsetDateTime.now());
+                log.warn("Snapshot {} interrotto dopo {} messaggi, riprendibile da {}", id, sent, cursor);
+                return;
+            }
+            SnapshotJob done = find(id);
+            awaitConfirms(List.of(send(job, new SnapshotCompletedEvent(id, done.getPublished()))));
+            jobRepository.finish(id, SnapshotStatus.COMPLETED, null, OffsetDateTime.now());
+            log.info("Snapshot {} completato: {} utenti pubblicati verso {} in {} s", id, done.getPublished(),
+                    job.getRoutingKey(), Duration.ofNanos(System.nanoTime() - start).toSeconds());
+        } catch (RuntimeException e) {
+            String error = String.valueOf(e.getMessage());
+            jobRepository.finish(id, SnapshotStatus.FAILED, error.length() > 1000 ? error.substring(0, 1000) : error,
+                    OffsetDateTime.now());
+            log.warn("Snapshot {} fallito dopo {} messaggi, riprendibile da {}", id, sent, cursor, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        stopping = true;
+        executor.shutdownNow();
+    }
+
+    // Il cursore avanza solo se il broker ha confermato tutti i messaggi del blocco
+    private void publishConfirmed(SnapshotJob job, List<User> batch) {
+        List<CorrelationData> pending = new ArrayList<>(batch.size());
+        for (User u : batch) {
+            pending.add(send(job, UserSnapshotEvent.of(job.getId(), u)));
+        }
+        awaitConfirms(pending);
+    }
+
+    private void awaitConfirms(List<CorrelationData> pending) {
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        for (CorrelationData cd : pending) {
+            try {
+                CorrelationData.Confirm confirm = cd.getFuture().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (!confirm.isAck()) {
+                    throw new AmqpException("Messaggio " + cd.getId() + " rifiutato dal broker: " + confirm.getReason());
+                }
+                // impostato prima del completamento della conferma
+                ReturnedMessage returned = cd.getReturned();
+                if (returned != null) {
+                    throw new AmqpException("Messaggio " + cd.getId() + " non instradato da " + returned.getExchange()
+                            + " con routing key " + returned.getRoutingKey() + ": " + returned.getReplyText());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmqpException("Attesa delle conferme interrotta", e);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new AmqpException("Conferma del broker non ricevuta entro " + confirmTimeout, e);
+            }
+        }
+    }
+
+    private CorrelationData send(SnapshotJob job, Object event) {
+        CorrelationData cd = new CorrelationData();
+        rabbit.convertAndSend(exchange, job.getRoutingKey(), event, cd);
+        return cd;
+    }
+
+    private SnapshotJob find(UUID id) {
+        return jobRepository.findById(id).orElseThrow(() -> new NotFoundException("Snapshot non trovato"));
+    }
+
+    private boolean sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
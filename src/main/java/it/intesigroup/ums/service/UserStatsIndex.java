@@ -0,0 +1,220 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import it.intesigroup.ums.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistiche sugli utenti per stato, ruolo e giorno di creazione, tenute in memoria e aggiornate
+ * dagli {@link UserChangedEvent} dopo il commit: la lettura non dipende dalla dimensione della tabella.
+ * <p>
+ * Le modifiche fatte da altre istanze e le righe spostate da {@link UserArchiver} non generano eventi
+ * qui: una riconciliazione periodica ricalcola tutto con un'unica query aggregata. Ogni modifica locale
+ * è registrata nella sua transazione, prima del commit, e applicata ai contatori dopo: se all'inizio
+ * della query c'era una modifica in corso, o ne inizia o finisce una durante la query, il risultato viene
+ * scartato e la query ripetuta, perché non si può sapere se la modifica era già inclusa (e applicarla di
+ * nuovo la conterebbe due volte). Dopo alcuni tentativi si tengono i contatori incrementali fino al giro
+ * successivo.
+ * <p>
+ * Il totale, i ruoli e i giorni di creazione contano solo gli utenti non cancellati; i cancellati compaiono
+ * solo nel conteggio per stato. Il giorno è calcolato nel fuso della JVM, lo stesso che il driver
+ * PostgreSQL imposta sulla sessione per la query di riconciliazione.
+ */
+public class UserStatsIndex implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserStatsIndex.class);
+    private static final UserStatus[] STATUSES = UserStatus.values();
+    private static final Role[] ROLES = Role.values();
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long QUIET_WAIT_MILLIS = 1_000;
+
+    public record UserStats(long total, Map<UserStatus, Long> byStatus, Map<Role, Long> byRole,
+                            SortedMap<LocalDate, Long> byCreatedDay, OffsetDateTime reconciledAt) {}
+
+    private final UserRepository userRepository;
+    private final Duration interval;
+    private final int days;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final ScheduledExecutorService scheduler;
+    private final Counter drift;
+
+    // protetti dal lock dell'istanza: gli eventi sono pochi e l'aggiornamento costa pochi incrementi
+    private final long[] byStatus = new long[STATUSES.length];
+    private final long[] byRole = new long[ROLES.length];
+    private final Map<LocalDate, Long> byDay = new HashMap<>();
+    // modifiche registrate o concluse (cresce due volte per modifica) e modifiche non ancora concluse
+    private long changes;
+    private int inFlight;
+    private OffsetDateTime reconciledAt;
+
+    public UserStatsIndex(UserRepository userRepository, MeterRegistry meterRegistry, Duration interval, int days) {
+        this.userRepository = userRepository;
+        this.interval = interval;
+        this.days = days;
+        this.drift = Counter.builder("ums.stats.reconcile.drift").register(meterRegistry);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-stats");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduler.scheduleWithFixedDelay(this::reconcileSafely, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Sincrono, nella transazione della modifica: la registra come in corso e la applica solo dopo il commit. */
+    @EventListener
+    public synchronized void onUserChanged(UserChangedEvent event) {
+        changes++;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyChange(event);
+            return;
+        }
+        inFlight++;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (UserStatsIndex.this) {
+                    inFlight--;
+                    changes++;
+                    if (status == STATUS_COMMITTED) applyChange(event);
+                    if (inFlight == 0) UserStatsIndex.this.notifyAll();
+                }
+            }
+        });
+    }
+
+    /** Statistiche correnti; {@code byCreatedDay} contiene solo gli ultimi {@code days} giorni. */
+    public synchronized UserStats stats() {
+        if (reconciledAt == null) {
+            throw new ServiceUnavailableException("Statistiche utenti non ancora disponibili, riprovare più tardi");
+        }
+        Map<UserStatus, Long> status = new EnumMap<>(UserStatus.class);
+        long total = 0;
+        for (UserStatus s : STATUSES) {
+            status.put(s, byStatus[s.ordinal()]);
+            if (s != UserStatus.DELETED) total += byStatus[s.ordinal()];
+        }
+        Map<Role, Long> role = new EnumMap<>(Role.class);
+        for (Role r : ROLES) role.put(r, byRole[r.ordinal()]);
+        SortedMap<LocalDate, Long> day = new TreeMap<>();
+        LocalDate today = LocalDate.now(zone);
+        for (int i = days - 1; i >= 0; i--) {
+            LocalDate d = today.minusDays(i);
+            day.put(d, byDay.getOrDefault(d, 0L));
+        }
+        return new UserStats(total, status, role, day, reconciledAt);
+    }
+
+    /** Ricalcola tutto dal database; restituisce false se le modifiche concorrenti hanno impedito di farlo. */
+    boolean reconcile() {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            long seen;
+            boolean busy;
+            synchronized (this) {
+                awaitQuiet();
+                seen = changes;
+                // una transazione confermata ma non ancora applicata può essere già visibile alla query
+                busy = inFlight > 0;
+            }
+            long[] status = new long[STATUSES.length];
+            long[] role = new long[ROLES.length];
+            Map<LocalDate, Long> day = new HashMap<>();
+            List<Object[]> rows = userRepository.countByStatusRolesAndCreatedDay();
+            for (Object[] row : rows) {
+                UserStatus s = (UserStatus) row[0];
+                int mask = ((Number) row[1]).intValue();
+                LocalDate d = (LocalDate) row[2];
+                long count = ((Number) row[3]).longValue();
+                status[s.ordinal()] += count;
+                if (s == UserStatus.DELETED) continue;
+                for (Role r : Role.fromMask(mask)) role[r.ordinal()] += count;
+                day.merge(d, count, Long::sum);
+            }
+            synchronized (this) {
+                // al primo caricamento si accetta comunque l'ultimo tentativo: l'errore, al più di poche
+                // modifiche, viene corretto dalla riconciliazione successiva
+                if ((busy || changes != seen) && (attempt < MAX_ATTEMPTS || reconciledAt != null)) continue;
+                if (reconciledAt != null && (!Arrays.equals(status, byStatus) || !Arrays.equals(role, byRole)
+                        || !day.equals(byDay))) {
+                    drift.increment();
+                    log.info("Statistiche utenti riallineate al database: per stato {} invece di {}",
+                            Arrays.toString(status), Arrays.toString(byStatus));
+                }
+                System.arraycopy(status, 0, byStatus, 0, status.length);
+                System.arraycopy(role, 0, byRole, 0, role.length);
+                byDay.clear();
+                byDay.putAll(day);
+                reconciledAt = OffsetDateTime.now();
+                return true;
+            }
+        }
+        log.warn("Riconciliazione statistiche utenti rinviata: modifiche concorrenti in {} tentativi", MAX_ATTEMPTS);
+        return false;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    // con il lock: attende brevemente che le modifiche in corso si concludano
+    private void awaitQuiet() {
+        long deadline = System.currentTimeMillis() + QUIET_WAIT_MILLIS;
+        try {
+            for (long left = QUIET_WAIT_MILLIS; inFlight > 0 && left > 0; left = deadline - System.currentTimeMillis()) {
+                wait(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applyChange(UserChangedEvent event) {
+        apply(event.before(), -1);
+        apply(event.after(), 1);
+    }
+
+    private void apply(UserChangedEvent.Snapshot s, int delta) {
+        if (s == null) return;
+        byStatus[s.status().ordinal()] += delta;
+        if (s.status() == UserStatus.DELETED) return;
+        for (Role r : s.roles()) byRole[r.ordinal()] += delta;
+        // i giorni che tornano a zero vengono rimossi, come se non fossero mai stati letti dal database
+        byDay.merge(s.createdAt().atZoneSameInstant(zone).toLocalDate(), (long) delta,
+                (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    private void reconcileSafely() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("Riconciliazione statistiche utenti fallita, nuovo tentativo tra {}", interval, e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package it.intesigroup.ums.web;
+
+import it.intesigroup.ums.service.NaturalKeyFilter;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+    private final NaturalKeyFilter naturalKeyFilter;
+
+    public AdminController(NaturalKeyFilter naturalKeyFilter) {
+        this.naturalKeyFilter = naturalKeyFilter;
+    }
+
+    @GetMapping("/key-filter")
+    @PreAuthorize("hasRole('OWNER')")
+    public NaturalKeyFilter.Stats keyFilter() {
+        return naturalKeyFilter.stats();
+    }
+
+    // Da usare dopo cancellazioni fisiche o import massivi, o se il tasso di falsi positivi cresce
+    @PostMapping("/key-filter/rebuild")
+    @PreAuthorize("hasRole('OWNER')")
+    public NaturalKeyFilter.Stats rebuildKeyFilter() {
+        return naturalKeyFilter.rebuild();
+    }
+}
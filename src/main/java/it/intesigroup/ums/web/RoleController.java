@@ -0,0 +1,64 @@
+package it.intesigroup.ums.web;
+
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.dto.KeysetPage;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.exception.BadRequestException;
+import it.intesigroup.ums.mapper.UserMapper;
+import it.intesigroup.ums.security.SecurityUtils;
+import it.intesigroup.ums.service.RoleMembershipIndex;
+import it.intesigroup.ums.service.UserService;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/roles")
+public class RoleController {
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final UserService userService;
+    private final RoleMembershipIndex roleMembershipIndex;
+
+    public RoleController(UserService userService, RoleMembershipIndex roleMembershipIndex) {
+        this.userService = userService;
+        this.roleMembershipIndex = roleMembershipIndex;
+    }
+
+    @GetMapping("/{role}/users")
+    @PreAuthorize("hasAnyRole('OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER')")
+    public KeysetPage<UserResponse> members(@PathVariable Role role,
+                                            @RequestParam(required = false) UUID after,
+                                            @RequestParam(defaultValue = "50") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("size deve essere compreso tra 1 e " + MAX_PAGE_SIZE);
+        }
+        // Un elemento in più per sapere se esiste una pagina successiva
+        List<User> users = userService.listRoleMembers(role, after, size + 1);
+        boolean hasNext = users.size() > size;
+        if (hasNext) users = users.subList(0, size);
+
+        boolean canSeeSensitive = SecurityUtils.hasAnyRole("OWNER", "MAINTAINER");
+        List<UserResponse> content = new ArrayList<>(users.size());
+        for (User u : users) {
+            content.add(UserMapper.toResponse(u, !canSeeSensitive));
+        }
+        UUID nextCursor = hasNext ? users.get(users.size() - 1).getId() : null;
+        return new KeysetPage<>(content, nextCursor);
+    }
+
+    @GetMapping("/summary")
+    @PreAuthorize("hasAnyRole('OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER')")
+    public Map<Role, Long> summary() {
+        return roleMembershipIndex.summary();
+    }
+}
@@ -0,0 +1,50 @@
+package it.intesigroup.ums.web;
+
+import it.intesigroup.ums.dto.SnapshotRequest;
+import it.intesigroup.ums.service.UserSnapshotPublisher;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/snapshots")
+@ConditionalOnProperty(name = "app.users.snapshot.enabled", havingValue = "true")
+public class SnapshotController {
+    private final UserSnapshotPublisher snapshotPublisher;
+
+    public SnapshotController(UserSnapshotPublisher snapshotPublisher) {
+        this.snapshotPublisher = snapshotPublisher;
+    }
+
+    // Il job prosegue in background: lo stato si segue con GET /{id}
+    @PostMapping
+    @PreAuthorize("hasRole('OWNER')")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public UserSnapshotPublisher.JobStatus start(@RequestBody @Valid SnapshotRequest req) {
+        return snapshotPublisher.start(req);
+    }
+
+    @GetMapping("/{id}")
+    @PreAuthorize("hasRole('OWNER')")
+    public UserSnapshotPublisher.JobStatus get(@PathVariable UUID id) {
+        return snapshotPublisher.get(id);
+    }
+
+    // Riprende un job fallito o interrotto dall'ultimo blocco confermato dal broker
+    @PostMapping("/{id}/resume")
+    @PreAuthorize("hasRole('OWNER')")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public UserSnapshotPublisher.JobStatus resume(@PathVariable UUID id) {
+        return snapshotPublisher.resume(id);
+    }
+
+    @PostMapping("/{id}/cancel")
+    @PreAuthorize("hasRole('OWNER')")
+    public UserSnapshotPublisher.JobStatus cancel(@PathVariable UUID id) {
+        return snapshotPublisher.cancel(id);
+    }
+}
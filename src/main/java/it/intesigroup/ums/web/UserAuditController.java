@@ -0,0 +1,55 @@
+package it.intesigroup.ums.web;
+
+import it.intesigroup.ums.domain.UserAudit;
+import it.intesigroup.ums.dto.KeysetPage;
+import it.intesigroup.ums.dto.UserAuditEntry;
+import it.intesigroup.ums.exception.BadRequestException;
+import it.intesigroup.ums.mapper.UserMapper;
+import it.intesigroup.ums.repository.UserAuditRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/users")
+@ConditionalOnProperty(name = "app.users.audit.enabled", havingValue = "true", matchIfMissing = true)
+public class UserAuditController {
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final UserAuditRepository auditRepository;
+
+    public UserAuditController(UserAuditRepository auditRepository) {
+        this.auditRepository = auditRepository;
+    }
+
+    // Dal più recente; anche per gli utenti cancellati o archiviati, lo storico resta
+    @GetMapping("/{id}/audit")
+    @PreAuthorize("hasAnyRole('OWNER','MAINTAINER')")
+    public KeysetPage<UserAuditEntry> history(@PathVariable UUID id,
+                                              @RequestParam(required = false) UUID before,
+                                              @RequestParam(defaultValue = "50") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("size deve essere compreso tra 1 e " + MAX_PAGE_SIZE);
+        }
+        // Un elemento in più per sapere se esiste una pagina successiva
+        List<UserAudit> rows = before == null
+                ? auditRepository.findLatest(id, Limit.of(size + 1))
+                : auditRepository.findBefore(id, before, Limit.of(size + 1));
+        boolean hasNext = rows.size() > size;
+        if (hasNext) rows = rows.subList(0, size);
+
+        List<UserAuditEntry> content = new ArrayList<>(rows.size());
+        for (UserAudit a : rows) content.add(UserMapper.toAuditEntry(a));
+        UUID nextCursor = hasNext ? rows.get(rows.size() - 1).getId() : null;
+        return new KeysetPage<>(content, nextCursor);
+    }
+}
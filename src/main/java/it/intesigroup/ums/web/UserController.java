@@ -3,6 +3,7 @@ package it.intesigroup.ums.web;
 import it.intesigroup.ums.domain.User;
 import it.intesigroup.ums.dto.CreateUserRequest;
 import it.intesigroup.ums.dto.UpdateUserRequest;
+import it.intesigroup.ums.dto.UserField;
 import it.intesigroup.ums.dto.UserResponse;
 import it.intesigroup.ums.mapper.UserMapper;
 import it.intesigroup.ums.security.SecurityUtils;
@@ -15,6 +16,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @RestController
@@ -43,6 +46,24 @@ public class UserController {
         return UserMapper.toResponse(u, !canSeeSensitive);
     }
 
+    // Varianti con fields=...: solo le colonne richieste vengono lette dal database
+    @GetMapping(params = "fields")
+    @PreAuthorize("hasAnyRole('OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER')")
+    public Page<Map<String, Object>> listFields(@RequestParam String fields, Pageable pageable) {
+        Set<UserField> selected = UserField.parse(fields);
+        boolean canSeeSensitive = SecurityUtils.hasAnyRole("OWNER", "MAINTAINER");
+        return userService.listUserFields(selected, pageable)
+                .map(row -> UserMapper.toFieldMap(row, selected, !canSeeSensitive));
+    }
+
+    @GetMapping(value = "/{id}", params = "fields")
+    @PreAuthorize("hasAnyRole('OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER')")
+    public Map<String, Object> getFields(@PathVariable UUID id, @RequestParam String fields) {
+        Set<UserField> selected = UserField.parse(fields);
+        boolean canSeeSensitive = SecurityUtils.hasAnyRole("OWNER", "MAINTAINER");
+        return UserMapper.toFieldMap(userService.getUserFields(id, selected), selected, !canSeeSensitive);
+    }
+
     @PostMapping
     @PreAuthorize("hasAnyRole('OWNER','MAINTAINER')")
     public ResponseEntity<UserResponse> create(@RequestBody @Valid CreateUserRequest req) {
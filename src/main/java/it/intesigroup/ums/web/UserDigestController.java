@@ -0,0 +1,44 @@
+package it.intesigroup.ums.web;
+
+import it.intesigroup.ums.service.UserDigestIndex;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Riconciliazione delle copie a valle: la replica confronta i digest dei figli con i propri,
+ * scende solo nei nodi diversi e alle foglie chiede id e hash degli utenti.
+ * Passando {@code version} la richiesta fallisce con 409 se i confini delle foglie sono cambiati nel frattempo.
+ */
+@RestController
+@RequestMapping("/api/users/digest")
+@ConditionalOnProperty(name = "app.users.digest.enabled", havingValue = "true", matchIfMissing = true)
+public class UserDigestController {
+    private final UserDigestIndex digestIndex;
+
+    public UserDigestController(UserDigestIndex digestIndex) {
+        this.digestIndex = digestIndex;
+    }
+
+    @GetMapping
+    @PreAuthorize("hasAnyRole('OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER')")
+    public UserDigestIndex.DigestNode node(@RequestParam(required = false) Integer from,
+                                           @RequestParam(required = false) Integer to,
+                                           @RequestParam(defaultValue = "16") int fanout,
+                                           @RequestParam(required = false) String version) {
+        return digestIndex.node(from, to, fanout, version);
+    }
+
+    @GetMapping("/entries")
+    @PreAuthorize("hasAnyRole('OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER')")
+    public List<UserDigestIndex.DigestEntry> entries(@RequestParam int from,
+                                                     @RequestParam int to,
+                                                     @RequestParam(required = false) String version) {
+        return digestIndex.entries(from, to, version);
+    }
+}
@@ -0,0 +1,94 @@
+package it.intesigroup.ums.web;
+
+import com.google.protobuf.Message;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.mapper.UserProtoMapper;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Scrive {@link UserResponse} e {@code Page<UserResponse>} come {@code application/x-protobuf}
+ * secondo lo schema {@code ums/v1/user.proto}. Solo in uscita: i payload di richiesta restano JSON/Smile/CBOR.
+ * <p>
+ * Il tipo dichiarato dal controller decide se la risposta è rappresentabile: le pagine con altri contenuti
+ * (es. {@code Page<Map<String, Object>>} di {@code fields=...}) non sono accettate e la richiesta riceve 406.
+ */
+public class UserProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    public static final MediaType PROTOBUF = new MediaType("application", "x-protobuf");
+
+    public UserProtobufHttpMessageConverter() {
+        super(PROTOBUF);
+    }
+
+    // Senza tipo generico (es. Object dichiarato) solo UserResponse è sicuramente rappresentabile
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return UserResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (type == null) return canWrite(clazz, mediaType);
+        return canWrite(mediaType) && isWritable(ResolvableType.forType(type));
+    }
+
+    // Media type producibili: per le pagine il contenuto è già stato verificato da canWrite(Type, ...)
+    @Override
+    public List<MediaType> getSupportedMediaTypes(Class<?> clazz) {
+        return Page.class.isAssignableFrom(clazz) ? getSupportedMediaTypes() : super.getSupportedMediaTypes(clazz);
+    }
+
+    private static boolean isWritable(ResolvableType type) {
+        Class<?> raw = type.resolve();
+        if (raw == null) return false;
+        if (UserResponse.class.isAssignableFrom(raw)) return true;
+        if (!Page.class.isAssignableFrom(raw)) return false;
+        Class<?> content = type.as(Page.class).getGeneric(0).resolve();
+        return content != null && UserResponse.class.isAssignableFrom(content);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Lettura protobuf non supportata", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Lettura protobuf non supportata", inputMessage);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        Message message;
+        if (body instanceof UserResponse user) {
+            message = UserProtoMapper.toProto(user);
+        } else if (body instanceof Page<?> page
+                && page.getContent().stream().allMatch(UserResponse.class::isInstance)) {
+            message = UserProtoMapper.toProto((Page<UserResponse>) page);
+        } else {
+            throw new HttpMessageNotWritableException("Tipo non rappresentabile in protobuf: " + body.getClass().getName());
+        }
+        message.writeTo(outputMessage.getBody());
+    }
+}
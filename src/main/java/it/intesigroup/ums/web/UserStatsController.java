@@ -0,0 +1,25 @@
+package it.intesigroup.ums.web;
+
+import it.intesigroup.ums.service.UserStatsIndex;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/users")
+@ConditionalOnProperty(name = "app.users.stats.enabled", havingValue = "true", matchIfMissing = true)
+public class UserStatsController {
+    private final UserStatsIndex statsIndex;
+
+    public UserStatsController(UserStatsIndex statsIndex) {
+        this.statsIndex = statsIndex;
+    }
+
+    @GetMapping("/stats")
+    @PreAuthorize("hasAnyRole('OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER')")
+    public UserStatsIndex.UserStats stats() {
+        return statsIndex.stats();
+    }
+}
@@ -0,0 +1,32 @@
+package it.intesigroup.ums.web;
+
+import it.intesigroup.ums.security.SecurityUtils;
+import it.intesigroup.ums.service.UserChangeStream;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/users")
+@ConditionalOnProperty(name = "app.users.stream.enabled", havingValue = "true", matchIfMissing = true)
+public class UserStreamController {
+    private final UserChangeStream changeStream;
+
+    public UserStreamController(UserChangeStream changeStream) {
+        this.changeStream = changeStream;
+    }
+
+    // Eventi created/updated/disabled/deleted con l'utente dopo la modifica; il browser (EventSource)
+    // invia Last-Event-ID alla riconnessione e riceve le modifiche perse nel frattempo
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER')")
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        boolean canSeeSensitive = SecurityUtils.hasAnyRole("OWNER", "MAINTAINER");
+        return changeStream.subscribe(lastEventId, !canSeeSensitive);
+    }
+}
@@ -0,0 +1,41 @@
+-- Storico delle modifiche agli utenti (chi ha cambiato cosa): solo inserimenti, scritti in blocchi da
+-- UserAuditTrail dopo il commit della modifica. Partizionata per mese (UTC) su changed_at: le partizioni
+-- dei mesi successivi sono create dall'applicazione prima di scriverci, quelle vecchie si archiviano o
+-- si eliminano con DETACH/DROP PARTITION senza toccare il resto della tabella.
+CREATE TABLE IF NOT EXISTS user_audit (
+    id UUID NOT NULL,
+    user_id UUID NOT NULL,
+    action VARCHAR(16) NOT NULL,
+    actor VARCHAR(255) NOT NULL,
+    changes JSONB NOT NULL,
+    changed_at TIMESTAMPTZ NOT NULL,
+    -- la chiave di partizione deve far parte della chiave primaria
+    PRIMARY KEY (id, changed_at)
+) PARTITION BY RANGE (changed_at);
+
+-- storico per utente dal più recente (id UUIDv7, crescente nel tempo)
+CREATE INDEX IF NOT EXISTS idx_user_audit_user_id ON user_audit (user_id, id);
+
+CREATE OR REPLACE FUNCTION user_audit_append_only() RETURNS trigger AS $$
+BEGIN
+    RAISE EXCEPTION 'user_audit è in sola scrittura: % non consentito', TG_OP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- a livello di istruzione: i trigger di riga BEFORE su tabelle partizionate richiedono PostgreSQL 13
+CREATE TRIGGER user_audit_append_only
+    BEFORE UPDATE OR DELETE ON user_audit
+    FOR EACH STATEMENT EXECUTE PROCEDURE user_audit_append_only();
+
+-- mese corrente e successivo
+DO $$
+DECLARE
+    month_start TIMESTAMPTZ;
+BEGIN
+    FOR i IN 0..1 LOOP
+        month_start := (date_trunc('month', now() AT TIME ZONE 'UTC') + make_interval(months => i)) AT TIME ZONE 'UTC';
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF user_audit FOR VALUES FROM (%L) TO (%L)',
+                       'user_audit_y' || to_char(month_start AT TIME ZONE 'UTC', 'YYYY"m"MM'),
+                       month_start, month_start + interval '1 month');
+    END LOOP;
+END $$;
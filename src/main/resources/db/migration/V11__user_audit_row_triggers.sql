@@ -0,0 +1,25 @@
+-- Il trigger di istruzione di V10 scatta solo per le istruzioni sulla tabella partizionata: un UPDATE o
+-- DELETE diretto su una partizione (user_audit_y2026m01) lo aggirava. I trigger di riga BEFORE sulla
+-- tabella partizionata (PostgreSQL 13+) sono clonati su tutte le partizioni, anche quelle create dopo.
+DROP TRIGGER IF EXISTS user_audit_append_only ON user_audit;
+
+CREATE TRIGGER user_audit_append_only
+    BEFORE UPDATE OR DELETE ON user_audit
+    FOR EACH ROW EXECUTE FUNCTION user_audit_append_only();
+
+-- TRUNCATE non passa dai trigger di riga e i trigger di TRUNCATE non vengono clonati: uno sulla tabella
+-- e uno per partizione (UserAuditTrail lo crea insieme alle partizioni nuove). Lo storico vecchio si
+-- rimuove con DETACH/DROP PARTITION.
+CREATE TRIGGER user_audit_no_truncate
+    BEFORE TRUNCATE ON user_audit
+    FOR EACH STATEMENT EXECUTE FUNCTION user_audit_append_only();
+
+DO $$
+DECLARE
+    part REGCLASS;
+BEGIN
+    FOR part IN SELECT inhrelid::regclass FROM pg_inherits WHERE inhparent = 'user_audit'::regclass LOOP
+        EXECUTE format('CREATE OR REPLACE TRIGGER user_audit_no_truncate BEFORE TRUNCATE ON %s '
+                       'FOR EACH STATEMENT EXECUTE FUNCTION user_audit_append_only()', part);
+    END LOOP;
+END $$;
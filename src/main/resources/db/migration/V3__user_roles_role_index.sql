@@ -0,0 +1,2 @@
+-- Indice inverso ruolo -> utenti: la PK (user_id, role) non serve le query per ruolo
+CREATE INDEX IF NOT EXISTS idx_user_roles_role_user ON user_roles(role, user_id);
@@ -0,0 +1,20 @@
+-- Copia denormalizzata dei ruoli come bitmask (bit = 1 << ordinal di Role):
+-- le letture non richiedono join su user_roles, che resta allineata in scrittura.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS roles_mask SMALLINT NOT NULL DEFAULT 0;
+
+UPDATE users u
+SET roles_mask = m.mask
+FROM (
+    SELECT user_id,
+           bit_or(CASE role
+                      WHEN 'OWNER' THEN 1
+                      WHEN 'OPERATOR' THEN 2
+                      WHEN 'MAINTAINER' THEN 4
+                      WHEN 'DEVELOPER' THEN 8
+                      WHEN 'REPORTER' THEN 16
+                      ELSE 0
+                  END)::smallint AS mask
+    FROM user_roles
+    GROUP BY user_id
+) m
+WHERE u.id = m.user_id;
@@ -0,0 +1,4 @@
+-- idx_users_email e idx_users_codice_fiscale duplicano gli indici unique uk_users_*
+-- sulle stesse colonne: nessun piano li preferisce, ma ogni insert/update li mantiene.
+DROP INDEX IF EXISTS idx_users_email;
+DROP INDEX IF EXISTS idx_users_codice_fiscale;
@@ -0,0 +1,12 @@
+-- Email e codice fiscale sono chiavi naturali case-insensitive: l'unicità è garantita da indici
+-- funzionali sulla forma normalizzata, gli stessi usati dalle query di lookup del repository.
+-- Se esistono duplicati che differiscono solo per maiuscole/minuscole la migrazione fallisce
+-- e vanno risolti a mano prima del rilascio.
+UPDATE users SET email = lower(email) WHERE email <> lower(email);
+UPDATE users SET codice_fiscale = upper(codice_fiscale) WHERE codice_fiscale <> upper(codice_fiscale);
+
+DROP INDEX IF EXISTS uk_users_email;
+DROP INDEX IF EXISTS uk_users_codice_fiscale;
+
+CREATE UNIQUE INDEX uk_users_email_lower ON users (lower(email));
+CREATE UNIQUE INDEX uk_users_codice_fiscale_upper ON users (upper(codice_fiscale));
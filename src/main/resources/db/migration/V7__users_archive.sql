@@ -0,0 +1,19 @@
+-- Utenti cancellati logicamente da oltre il periodo di retention, spostati da UserArchiver.
+-- Nessun vincolo di unicità su email e codice fiscale: una volta archiviati possono essere riutilizzati.
+CREATE TABLE IF NOT EXISTS users_archive (
+    id UUID PRIMARY KEY,
+    username VARCHAR(100) NOT NULL,
+    email VARCHAR(320) NOT NULL,
+    codice_fiscale VARCHAR(16) NOT NULL,
+    nome VARCHAR(80) NOT NULL,
+    cognome VARCHAR(80) NOT NULL,
+    roles_mask SMALLINT NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL,
+    deleted_at TIMESTAMPTZ NOT NULL,
+    archived_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_users_archive_archived_at ON users_archive (archived_at);
+
+-- Solo le righe DELETED: indice piccolo, usato per trovare i candidati in ordine di cancellazione
+CREATE INDEX IF NOT EXISTS idx_users_deleted_updated_at ON users (updated_at) WHERE status = 'DELETED';
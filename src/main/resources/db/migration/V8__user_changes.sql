@@ -0,0 +1,20 @@
+-- Registro delle modifiche agli utenti, scritto nella stessa transazione della modifica.
+-- Alimenta lo stream SSE (/api/users/stream): seq è l'id dell'evento usato per riprendere con Last-Event-ID.
+-- Le righe più vecchie di app.users.stream.retention vengono rimosse da UserChangeStream.
+CREATE TABLE IF NOT EXISTS user_changes (
+    seq BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id UUID NOT NULL,
+    change_type VARCHAR(16) NOT NULL,
+    username VARCHAR(100) NOT NULL,
+    email VARCHAR(320) NOT NULL,
+    codice_fiscale VARCHAR(16) NOT NULL,
+    nome VARCHAR(80) NOT NULL,
+    cognome VARCHAR(80) NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    roles_mask SMALLINT NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL,
+    changed_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_user_changes_changed_at ON user_changes (changed_at);
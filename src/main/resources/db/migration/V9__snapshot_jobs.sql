@@ -0,0 +1,17 @@
+-- Pubblicazioni di snapshot degli utenti su RabbitMQ (POST /api/admin/snapshots).
+-- cursor è l'ultimo id confermato dal broker: un job interrotto riprende da lì.
+CREATE TABLE IF NOT EXISTS snapshot_jobs (
+    id UUID PRIMARY KEY,
+    routing_key VARCHAR(255) NOT NULL,
+    from_id UUID,
+    to_id UUID,
+    updated_since TIMESTAMPTZ,
+    include_deleted BOOLEAN NOT NULL,
+    rate INTEGER NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    cursor_id UUID,
+    published BIGINT NOT NULL DEFAULT 0,
+    error VARCHAR(1000),
+    created_at TIMESTAMPTZ NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL
+);
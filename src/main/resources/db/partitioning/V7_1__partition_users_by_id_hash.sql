@@ -0,0 +1,100 @@
+-- Layout partizionato opzionale (profilo "partitioned", PostgreSQL >= 12): users e user_roles
+-- partizionate per hash dell'id utente in 16 partizioni, così vacuum, indici e scritture lavorano
+-- su heap più piccoli. Le query JPA restano invariate: le lookup per id toccano una sola partizione,
+-- le scansioni ordinate per id diventano un Merge Append sulle chiavi primarie delle partizioni.
+--
+-- Un indice unique su tabella partizionata deve contenere la chiave di partizione, quindi l'unicità
+-- di email e codice fiscale passa alla tabella user_natural_keys, allineata da trigger: una
+-- violazione produce lo stesso errore 23505 dell'indice unique e quindi lo stesso 409 via API.
+--
+-- La copia dei dati avviene in questa transazione (tabelle bloccate): va eseguita in finestra
+-- di manutenzione. Se abilitata dopo migrazioni più recenti serve spring.flyway.out-of-order=true.
+
+ALTER TABLE user_roles RENAME TO user_roles_unpartitioned;
+ALTER TABLE users RENAME TO users_unpartitioned;
+
+CREATE TABLE users (
+    id UUID NOT NULL,
+    username VARCHAR(100) NOT NULL,
+    email VARCHAR(320) NOT NULL,
+    codice_fiscale VARCHAR(16) NOT NULL,
+    nome VARCHAR(80) NOT NULL,
+    cognome VARCHAR(80) NOT NULL,
+    status VARCHAR(16) NOT NULL DEFAULT 'ACTIVE',
+    created_at TIMESTAMPTZ NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL,
+    roles_mask SMALLINT NOT NULL DEFAULT 0
+) PARTITION BY HASH (id);
+
+CREATE TABLE user_roles (
+    user_id UUID NOT NULL,
+    role VARCHAR(20) NOT NULL
+) PARTITION BY HASH (user_id);
+
+DO $$
+BEGIN
+    FOR i IN 0..15 LOOP
+        EXECUTE format('CREATE TABLE users_p%s PARTITION OF users FOR VALUES WITH (MODULUS 16, REMAINDER %s)',
+                       lpad(i::text, 2, '0'), i);
+        EXECUTE format('CREATE TABLE user_roles_p%s PARTITION OF user_roles FOR VALUES WITH (MODULUS 16, REMAINDER %s)',
+                       lpad(i::text, 2, '0'), i);
+    END LOOP;
+END $$;
+
+-- Copia prima di creare indici e vincoli: caricamento più veloce, indici costruiti una volta sola
+INSERT INTO users (id, username, email, codice_fiscale, nome, cognome, status, created_at, updated_at, roles_mask)
+SELECT id, username, email, codice_fiscale, nome, cognome, status, created_at, updated_at, roles_mask
+FROM users_unpartitioned;
+
+INSERT INTO user_roles (user_id, role)
+SELECT user_id, role FROM user_roles_unpartitioned;
+
+DROP TABLE user_roles_unpartitioned;
+DROP TABLE users_unpartitioned;
+
+ALTER TABLE users ADD CONSTRAINT users_pkey PRIMARY KEY (id);
+ALTER TABLE user_roles ADD CONSTRAINT user_roles_pkey PRIMARY KEY (user_id, role);
+ALTER TABLE user_roles ADD CONSTRAINT fk_user_roles_user
+    FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE;
+
+CREATE INDEX idx_users_email_lower ON users (lower(email));
+CREATE INDEX idx_users_codice_fiscale_upper ON users (upper(codice_fiscale));
+CREATE INDEX idx_users_deleted_updated_at ON users (updated_at) WHERE status = 'DELETED';
+CREATE INDEX idx_user_roles_role_user ON user_roles (role, user_id);
+
+CREATE TABLE user_natural_keys (
+    user_id UUID PRIMARY KEY,
+    email_key VARCHAR(320) NOT NULL,
+    codice_fiscale_key VARCHAR(16) NOT NULL
+);
+
+INSERT INTO user_natural_keys (user_id, email_key, codice_fiscale_key)
+SELECT id, lower(email), upper(codice_fiscale) FROM users;
+
+-- stessi nomi degli indici della V6, così i messaggi di errore restano riconoscibili
+CREATE UNIQUE INDEX uk_users_email_lower ON user_natural_keys (email_key);
+CREATE UNIQUE INDEX uk_users_codice_fiscale_upper ON user_natural_keys (codice_fiscale_key);
+
+CREATE FUNCTION users_sync_natural_keys() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO user_natural_keys (user_id, email_key, codice_fiscale_key)
+        VALUES (NEW.id, lower(NEW.email), upper(NEW.codice_fiscale));
+    ELSIF TG_OP = 'UPDATE' THEN
+        UPDATE user_natural_keys
+        SET email_key = lower(NEW.email), codice_fiscale_key = upper(NEW.codice_fiscale)
+        WHERE user_id = NEW.id;
+    ELSE
+        -- utenti archiviati: email e codice fiscale tornano disponibili
+        DELETE FROM user_natural_keys WHERE user_id = OLD.id;
+    END IF;
+    RETURN NULL;
+END $$;
+
+CREATE TRIGGER trg_users_natural_keys
+    AFTER INSERT OR DELETE OR UPDATE OF email, codice_fiscale ON users
+    FOR EACH ROW EXECUTE FUNCTION users_sync_natural_keys();
+
+ANALYZE users;
+ANALYZE user_roles;
+ANALYZE user_natural_keys;
@@ -0,0 +1,200 @@
+package it.intesigroup.ums.bench;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.stub.MetadataUtils;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.grpc.GrpcServerLifecycle;
+import it.intesigroup.ums.mapper.UserProtoMapper;
+import it.intesigroup.ums.proto.BatchGetUsersRequest;
+import it.intesigroup.ums.proto.GetUserRequest;
+import it.intesigroup.ums.proto.ListUsersRequest;
+import it.intesigroup.ums.proto.UserQueryServiceGrpc;
+import it.intesigroup.ums.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Latenza e throughput delle letture via REST (JSON su HTTP/1.1) e via gRPC sullo stesso servizio,
+ * con JWT reale e masking attivo. Eseguire con: mvn test -Dtest=GrpcVersusRestBenchmark -Dbench=true
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"security.enabled=true", "app.grpc.enabled=true", "app.grpc.port=0",
+                "logging.level.it.intesigroup.ums=WARN"})
+@ActiveProfiles("test")
+class GrpcVersusRestBenchmark {
+    private static final int USERS = 1_000;
+    private static final int BATCH = 50;
+    private static final int THREADS = 16;
+    private static final RSAKey KEY = generateKey();
+
+    @LocalServerPort
+    private int httpPort;
+
+    @Autowired
+    private GrpcServerLifecycle grpcServer;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockBean
+    private AmqpTemplate amqpTemplate;
+
+    @TestConfiguration
+    static class TokenConfig {
+        @Bean
+        @Primary
+        JwtDecoder benchJwtDecoder() throws Exception {
+            return NimbusJwtDecoder.withPublicKey(KEY.toRSAPublicKey()).build();
+        }
+    }
+
+    @Test
+    void compareReads() throws Exception {
+        userRepository.deleteAll();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) users.add(user(i));
+        List<UUID> ids = userRepository.saveAll(users).stream().map(User::getId).toList();
+
+        String bearer = "Bearer " + token();
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        ManagedChannel channel = Grpc.newChannelBuilderForAddress("127.0.0.1", grpcServer.getPort(),
+                InsecureChannelCredentials.create()).build();
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER), bearer);
+        UserQueryServiceGrpc.UserQueryServiceBlockingStub grpc = UserQueryServiceGrpc.newBlockingStub(channel)
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers));
+
+        try {
+            System.out.printf("%-28s %12s %12s%n", "operation", "latency us", "ops/s (x" + THREADS + ")");
+            run("REST get", 2_000, i -> restGet(http, bearer, "/api/users/" + ids.get(i % USERS)));
+            run("gRPC GetUser", 2_000, i -> grpc.getUser(GetUserRequest.newBuilder()
+                    .setId(UserProtoMapper.toBytes(ids.get(i % USERS))).build()));
+
+            run("REST get x" + BATCH, 40, i -> {
+                for (int j = 0; j < BATCH; j++) restGet(http, bearer, "/api/users/" + ids.get((i * BATCH + j) % USERS));
+            });
+            run("gRPC BatchGetUsers(" + BATCH + ")", 40, i -> {
+                BatchGetUsersRequest.Builder req = BatchGetUsersRequest.newBuilder();
+                for (int j = 0; j < BATCH; j++) req.addIds(UserProtoMapper.toBytes(ids.get((i * BATCH + j) % USERS)));
+                grpc.batchGetUsers(req.build());
+            });
+
+            run("REST list all (size 500)", 20, i -> {
+                for (int page = 0; page * 500 < USERS; page++) {
+                    restGet(http, bearer, "/api/users?size=500&page=" + page + "&sort=id");
+                }
+            });
+            run("gRPC ListUsers stream", 20, i -> grpc.listUsers(ListUsersRequest.getDefaultInstance())
+                    .forEachRemaining(u -> { }));
+        } finally {
+            channel.shutdownNow();
+        }
+    }
+
+    private void restGet(HttpClient http, String bearer, String path) throws Exception {
+        HttpResponse<byte[]> response = http.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + httpPort + path))
+                .header("Authorization", bearer)
+                .GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) throw new IllegalStateException("HTTP " + response.statusCode());
+    }
+
+    private void run(String name, int iterations, IndexedTask task) throws Exception {
+        for (int i = 0; i < iterations; i++) task.run(i);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) task.run(i);
+        long latencyUs = (System.nanoTime() - start) / iterations / 1_000;
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long t0 = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t * iterations;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < iterations; i++) task.run(offset + i);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+            double seconds = (System.nanoTime() - t0) / 1e9;
+            System.out.printf("%-28s %12d %12.0f%n", name, latencyUs, THREADS * iterations / seconds);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static String token() throws Exception {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(KEY.getKeyID()).build(),
+                new JWTClaimsSet.Builder()
+                        .subject("bench")
+                        .claim("realm_access", Map.of("roles", List.of("REPORTER")))
+                        .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                        .build());
+        jwt.sign(new RSASSASigner(KEY));
+        return jwt.serialize();
+    }
+
+    private static RSAKey generateKey() {
+        try {
+            return new RSAKeyGenerator(2048).keyID("bench").generate();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static User user(int i) {
+        User u = new User();
+        u.setUsername("user" + i);
+        u.setEmail("user" + i + "@example.com");
+        u.setCodiceFiscale(String.format("RSSMRA80A01H%03dU", i % 1000));
+        u.setNome("Mario");
+        u.setCognome("Rossi");
+        u.setStatus(UserStatus.ACTIVE);
+        u.setRoles(Set.of(Role.DEVELOPER, Role.REPORTER));
+        return u;
+    }
+
+    @FunctionalInterface
+    interface IndexedTask {
+        void run(int i) throws Exception;
+    }
+}
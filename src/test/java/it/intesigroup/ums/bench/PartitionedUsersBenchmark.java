@@ -0,0 +1,234 @@
+package it.intesigroup.ums.bench;
+
+import it.intesigroup.ums.domain.UuidV7;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latenza di inserimento e di lettura paginata sullo schema standard e su quello partizionato
+ * (db/partitioning), con lo stesso volume di dati e le stesse istruzioni SQL generate da Hibernate.
+ * Lo schema partizionato viene ottenuto applicando la V7_1 sui dati già caricati, come in produzione.
+ * Richiede un PostgreSQL locale:
+ * mvn test -Dtest=PartitionedUsersBenchmark -Dbench.pg.url=jdbc:postgresql://localhost:5432/ums
+ */
+@EnabledIfSystemProperty(named = "bench.pg.url", matches = ".+")
+class PartitionedUsersBenchmark {
+    private static final int PRELOAD = Integer.getInteger("bench.preload", 1_000_000);
+    private static final int OPERATIONS = Integer.getInteger("bench.operations", 3_000);
+    private static final int PAGE = 50;
+
+    private static final String INSERT_USER = """
+            insert into users (codice_fiscale,cognome,created_at,email,nome,roles_mask,status,updated_at,username,id)
+            values (?,?,now(),?,?,?,?,now(),?,?)""";
+    private static final String INSERT_ROLE = "insert into user_roles (user_id,role) values (?,?)";
+    private static final String KEYSET_PAGE = """
+            select u1_0.id,u1_0.codice_fiscale,u1_0.cognome,u1_0.created_at,u1_0.email,u1_0.nome,u1_0.roles_mask,
+            u1_0.status,u1_0.updated_at,u1_0.username from users u1_0
+            where u1_0.id>? and u1_0.status<>'DELETED' order by u1_0.id fetch first ? rows only""";
+    private static final String OFFSET_PAGE = """
+            select u1_0.id,u1_0.codice_fiscale,u1_0.cognome,u1_0.created_at,u1_0.email,u1_0.nome,u1_0.roles_mask,
+            u1_0.status,u1_0.updated_at,u1_0.username from users u1_0
+            where u1_0.status<>'DELETED' order by u1_0.id offset ? rows fetch first ? rows only""";
+    private static final String COUNT = "select count(u1_0.id) from users u1_0 where u1_0.status<>'DELETED'";
+    private static final String GET_BY_ID = """
+            select u1_0.id,u1_0.codice_fiscale,u1_0.cognome,u1_0.created_at,u1_0.email,u1_0.nome,u1_0.roles_mask,
+            u1_0.status,u1_0.updated_at,u1_0.username from users u1_0 where u1_0.id=?""";
+    private static final String EXISTS_BY_EMAIL =
+            "select case when count(u1_0.id)>0 then true else false end from users u1_0 where lower(u1_0.email)=lower(?)";
+
+    @Test
+    void insertAndListLatencyStandardVersusPartitioned() throws Exception {
+        try (Connection c = connect(null); Statement s = c.createStatement()) {
+            // l'estensione deve stare in public, visibile da entrambi gli schemi
+            s.execute("CREATE EXTENSION IF NOT EXISTS \"uuid-ossp\" SCHEMA public");
+        }
+        List<String> results = new ArrayList<>();
+        for (String schema : List.of("bench_standard", "bench_partitioned")) {
+            boolean partitioned = schema.endsWith("partitioned");
+            try (Connection c = connect(null); Statement s = c.createStatement()) {
+                s.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+            }
+            migrate(schema, "classpath:db/migration");
+            try (Connection c = connect(schema)) {
+                seed(c);
+            }
+            if (partitioned) {
+                long start = System.nanoTime();
+                migrate(schema, "classpath:db/migration", "classpath:db/partitioning");
+                System.out.printf("%s: migrazione V7_1 su %,d utenti in %,d ms%n",
+                        schema, PRELOAD, (System.nanoTime() - start) / 1_000_000);
+            }
+            try (Connection c = connect(schema)) {
+                try (Statement s = c.createStatement()) {
+                    s.execute("VACUUM ANALYZE users");
+                }
+                results.addAll(measure(schema, c));
+            }
+            try (Connection c = connect(null); Statement s = c.createStatement()) {
+                s.execute("DROP SCHEMA " + schema + " CASCADE");
+            }
+        }
+        System.out.printf("%-18s %-24s %10s %10s %10s%n", "schema", "operation", "p50 us", "p99 us", "ops/s");
+        results.forEach(System.out::println);
+    }
+
+    private List<String> measure(String schema, Connection c) throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT id FROM users TABLESAMPLE SYSTEM (1) LIMIT " + OPERATIONS)) {
+            while (rs.next()) ids.add(rs.getObject(1, UUID.class));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> out = new ArrayList<>();
+
+        // un utente con un ruolo per transazione, come createUser
+        c.setAutoCommit(false);
+        try (PreparedStatement user = c.prepareStatement(INSERT_USER);
+             PreparedStatement role = c.prepareStatement(INSERT_ROLE)) {
+            out.add(time(schema, "insert user+role", i -> {
+                UUID id = UuidV7.generate();
+                user.setString(1, "BN" + String.format("%014d", i));
+                user.setString(2, "Bench");
+                user.setString(3, "bench" + i + "@example.com");
+                user.setString(4, "Bench");
+                user.setShort(5, (short) 8);
+                user.setString(6, "ACTIVE");
+                user.setString(7, "bench" + i);
+                user.setObject(8, id);
+                user.executeUpdate();
+                role.setObject(1, id);
+                role.setString(2, "DEVELOPER");
+                role.executeUpdate();
+                c.commit();
+            }));
+        }
+        c.setAutoCommit(true);
+
+        try (PreparedStatement ps = c.prepareStatement(KEYSET_PAGE)) {
+            out.add(time(schema, "keyset page (50)", i -> {
+                ps.setObject(1, ids.get(Math.floorMod(i, ids.size())));
+                ps.setInt(2, PAGE);
+                drain(ps);
+            }));
+        }
+        try (PreparedStatement ps = c.prepareStatement(OFFSET_PAGE)) {
+            out.add(time(schema, "offset page 10 (50)", i -> {
+                ps.setInt(1, 10 * PAGE);
+                ps.setInt(2, PAGE);
+                drain(ps);
+            }));
+        }
+        try (PreparedStatement ps = c.prepareStatement(COUNT)) {
+            out.add(time(schema, "page total count", Math.max(1, OPERATIONS / 100), i -> drain(ps)));
+        }
+        try (PreparedStatement ps = c.prepareStatement(GET_BY_ID)) {
+            out.add(time(schema, "get by id", i -> {
+                ps.setObject(1, ids.get(random.nextInt(ids.size())));
+                drain(ps);
+            }));
+        }
+        try (PreparedStatement ps = c.prepareStatement(EXISTS_BY_EMAIL)) {
+            out.add(time(schema, "exists by email", i -> {
+                ps.setString(1, "user" + random.nextInt(PRELOAD) + "@example.com");
+                drain(ps);
+            }));
+        }
+        return out;
+    }
+
+    private static String time(String schema, String name, Op op) throws Exception {
+        return time(schema, name, OPERATIONS, op);
+    }
+
+    private static String time(String schema, String name, int operations, Op op) throws Exception {
+        for (int i = 0; i < Math.min(200, operations); i++) op.run(-1 - i);
+        long[] nanos = new long[operations];
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            long t = System.nanoTime();
+            op.run(i);
+            nanos[i] = System.nanoTime() - t;
+        }
+        long total = System.nanoTime() - start;
+        Arrays.sort(nanos);
+        return String.format("%-18s %-24s %10d %10d %10d", schema, name, nanos[operations / 2] / 1_000,
+                nanos[(int) (operations * 0.99)] / 1_000, operations * 1_000_000_000L / total);
+    }
+
+    private static void drain(PreparedStatement ps) throws Exception {
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rs.getObject(1);
+            }
+        }
+    }
+
+    // stessa distribuzione del test dei piani: 90% attivi, 5% disabilitati, 5% cancellati, id UUIDv7
+    private static void seed(Connection c) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement("""
+                INSERT INTO users (id, username, email, codice_fiscale, nome, cognome, status,
+                                   created_at, updated_at, roles_mask)
+                SELECT (lpad(to_hex((extract(epoch FROM now() - i * interval '1 second') * 1000)::bigint), 12, '0')
+                        || '7' || substr(md5(i::text), 1, 3) || '8' || substr(md5(i::text), 4, 15))::uuid,
+                       'user' || i, 'user' || i || '@example.com',
+                       'CF' || lpad(i::text, 14, '0'), 'Nome' || (i % 1000), 'Cognome' || (i % 5000),
+                       CASE WHEN i % 20 = 0 THEN 'DELETED' WHEN i % 20 = 1 THEN 'DISABLED' ELSE 'ACTIVE' END,
+                       now() - i * interval '1 second', now() - i * interval '1 second',
+                       (1 << (i % 5))::smallint
+                FROM generate_series(1, ?) AS i
+                """)) {
+            ps.setInt(1, PRELOAD);
+            ps.executeUpdate();
+        }
+        try (Statement s = c.createStatement()) {
+            s.execute("""
+                    INSERT INTO user_roles (user_id, role)
+                    SELECT id, (ARRAY['OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER'])[
+                               (ln(roles_mask::float) / ln(2))::int + 1] FROM users""");
+        }
+    }
+
+    private static void migrate(String schema, String... locations) {
+        Flyway.configure()
+                .dataSource(url(schema), user(), password())
+                .schemas(schema)
+                .locations(locations)
+                .outOfOrder(true)
+                .load()
+                .migrate();
+    }
+
+    private static Connection connect(String schema) throws Exception {
+        return DriverManager.getConnection(url(schema), user(), password());
+    }
+
+    private static String url(String schema) {
+        String url = System.getProperty("bench.pg.url");
+        return schema == null ? url : url + (url.contains("?") ? "&" : "?") + "currentSchema=" + schema + ",public";
+    }
+
+    private static String user() {
+        return System.getProperty("bench.pg.user", "ums");
+    }
+
+    private static String password() {
+        return System.getProperty("bench.pg.password", "ums");
+    }
+
+    @FunctionalInterface
+    private interface Op {
+        void run(int i) throws Exception;
+    }
+}
@@ -0,0 +1,282 @@
+package it.intesigroup.ums.bench;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.intesigroup.ums.UserManagementServiceApplication;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Letture ad alta concorrenza sulle API servlet ({@code UserController}, Tomcat + JPA) e sul percorso
+ * reattivo (WebFlux + R2DBC) della stessa istanza, avviata in una JVM separata con il profilo reactive.
+ * Stesso schema PostgreSQL, stesso JWT reale, stessa dimensione dei due pool di connessioni; per ogni
+ * livello di concorrenza (richieste in volo) le due varianti girano una dopo l'altra, dopo un riscaldamento.
+ * mvn test -Dtest=ReactiveVersusServletBenchmark -Dbench.pg.url=jdbc:postgresql://localhost:5432/ums
+ */
+@EnabledIfSystemProperty(named = "bench.pg.url", matches = ".+")
+class ReactiveVersusServletBenchmark {
+    private static final String SCHEMA = "bench_reactive";
+    private static final int PRELOAD = Integer.getInteger("bench.preload", 100_000);
+    private static final int SECONDS = Integer.getInteger("bench.seconds", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("bench.warmup-seconds", 10);
+    private static final int POOL_SIZE = Integer.getInteger("bench.pool-size", 10);
+    private static final int[] CONCURRENCY = Arrays.stream(System.getProperty("bench.concurrency", "64,512").split(","))
+            .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+
+    // op 0 = get, 1 = lista
+    private record Sample(int op, long nanos) {}
+
+    @Test
+    void readsAtHighConcurrency() throws Exception {
+        try (Connection c = connect(null); Statement s = c.createStatement()) {
+            s.execute("CREATE EXTENSION IF NOT EXISTS \"uuid-ossp\" SCHEMA public");
+            s.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        }
+        Flyway.configure().dataSource(url(SCHEMA), user(), password()).schemas(SCHEMA)
+                .locations("classpath:db/migration").load().migrate();
+        List<UUID> ids = new ArrayList<>();
+        try (Connection c = connect(SCHEMA)) {
+            seed(c);
+            try (Statement s = c.createStatement();
+                 ResultSet rs = s.executeQuery("SELECT id FROM users WHERE status <> 'DELETED' LIMIT 5000")) {
+                while (rs.next()) ids.add(rs.getObject(1, UUID.class));
+            }
+        }
+
+        int httpPort = freePort();
+        int reactivePort = freePort();
+        RSAKey key = new RSAKeyGenerator(2048).keyID("bench").generate();
+        Path jwks = Path.of("target", "reactive-bench-jwks.json");
+        Files.writeString(jwks, new JWKSet(key.toPublicJWK()).toString());
+        String bearer = "Bearer " + token(key);
+        String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        Path log = Path.of("target", "reactive-bench.log");
+        Process app = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", classpath, UserManagementServiceApplication.class.getName(),
+                "--spring.profiles.active=reactive",
+                "--server.port=" + httpPort,
+                "--app.reactive.port=" + reactivePort,
+                "--spring.datasource.url=" + url(SCHEMA),
+                "--spring.datasource.username=" + user(),
+                "--spring.datasource.password=" + password(),
+                "--spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                "--spring.flyway.schemas=" + SCHEMA,
+                "--app.reactive.r2dbc.url=" + r2dbcUrl(),
+                "--app.reactive.r2dbc.max-size=" + POOL_SIZE,
+                "--app.reactive.r2dbc.initial-size=" + POOL_SIZE,
+                // con molte richieste in volo l'attesa di una connessione supera il default di 2 s
+                "--app.reactive.r2dbc.max-acquire-time=PT30S",
+                "--spring.datasource.hikari.connection-timeout=30000",
+                "--server.tomcat.max-connections=" + (Arrays.stream(CONCURRENCY).max().orElse(512) * 2),
+                "--app.security.jwks.cache-file=" + jwks.toAbsolutePath(),
+                "--app.security.rate-limit.enabled=false",
+                "--app.users.snapshot.enabled=false",
+                "--app.users.digest.enabled=false",
+                "--app.users.stats.enabled=false",
+                "--app.warmup.enabled=false",
+                "--management.health.rabbit.enabled=false",
+                "--logging.level.it.intesigroup.ums=WARN")
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+
+        List<String> results = new ArrayList<>();
+        try {
+            HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String servlet = "http://127.0.0.1:" + httpPort;
+            String reactive = "http://127.0.0.1:" + reactivePort;
+            while (status(http, servlet + "/actuator/health/readiness") != 200) {
+                if (!app.isAlive()) throw new IllegalStateException("Avvio fallito, vedere " + log);
+                Thread.sleep(100);
+            }
+            // stesso JSON dalle due varianti, masking e ordine delle pagine compresi
+            for (String path : List.of("/api/users/" + ids.get(0), "/api/users?page=3&size=20",
+                    "/api/users?page=3&size=20&sort=cognome,desc&sort=nome")) {
+                String servletBody = body(http, servlet + path, bearer);
+                String reactiveBody = body(http, reactive + path, bearer);
+                if (!servletBody.equals(reactiveBody)) {
+                    throw new IllegalStateException("Risposte diverse per " + path + ":\n" + servletBody + "\n" + reactiveBody);
+                }
+            }
+            for (int concurrency : CONCURRENCY) {
+                for (String[] stack : new String[][]{{"servlet", servlet}, {"reactive", reactive}}) {
+                    load(http, stack[1], bearer, ids, concurrency, WARMUP_SECONDS);
+                    results.addAll(rows(stack[0], concurrency, load(http, stack[1], bearer, ids, concurrency, SECONDS)));
+                }
+            }
+        } finally {
+            app.destroy();
+            app.waitFor();
+            try (Connection c = connect(null); Statement s = c.createStatement()) {
+                s.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+            }
+        }
+        System.out.printf("%-9s %6s %-5s %10s %9s %10s %10s %10s %7s%n",
+                "stack", "conc.", "op", "requests", "req/s", "p50 us", "p99 us", "max us", "errors");
+        results.forEach(System.out::println);
+    }
+
+    // richieste in volo costanti: ogni risposta libera il posto per la successiva (80% get, 20% pagine di 20)
+    private static Result load(HttpClient http, String base, String bearer, List<UUID> ids, int concurrency,
+                               int seconds) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+        AtomicInteger errors = new AtomicInteger();
+        long start = System.nanoTime();
+        long end = start + Duration.ofSeconds(seconds).toNanos();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            inFlight.acquire();
+            int op = random.nextInt(10) < 8 ? 0 : 1;
+            String path = op == 0 ? "/api/users/" + ids.get(random.nextInt(ids.size()))
+                    : "/api/users?page=" + random.nextInt(50) + "&size=20";
+            HttpRequest req = HttpRequest.newBuilder(URI.create(base + path))
+                    .header("Authorization", bearer)
+                    .timeout(Duration.ofSeconds(60))
+                    .build();
+            long t0 = System.nanoTime();
+            http.sendAsync(req, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+                if (e == null && response.statusCode() == 200) {
+                    samples.add(new Sample(op, System.nanoTime() - t0));
+                } else {
+                    errors.incrementAndGet();
+                }
+                inFlight.release();
+            });
+        }
+        inFlight.acquire(concurrency);
+        return new Result(new ArrayList<>(samples), errors.get(), System.nanoTime() - start);
+    }
+
+    private record Result(List<Sample> samples, int errors, long elapsedNanos) {}
+
+    private static List<String> rows(String stack, int concurrency, Result result) {
+        List<String> out = new ArrayList<>();
+        double seconds = result.elapsedNanos() / 1e9;
+        out.add(row(stack, concurrency, "all", result.samples(), seconds, result.errors()));
+        out.add(row(stack, concurrency, "get", result.samples().stream().filter(s -> s.op() == 0).toList(), seconds, 0));
+        out.add(row(stack, concurrency, "list", result.samples().stream().filter(s -> s.op() == 1).toList(), seconds, 0));
+        return out;
+    }
+
+    private static String row(String stack, int concurrency, String op, List<Sample> samples, double seconds, int errors) {
+        long[] nanos = samples.stream().mapToLong(Sample::nanos).sorted().toArray();
+        if (nanos.length == 0) return String.format("%-9s %6d %-5s %10d", stack, concurrency, op, 0);
+        return String.format("%-9s %6d %-5s %10d %9.0f %10d %10d %10d %7d", stack, concurrency, op, nanos.length,
+                nanos.length / seconds, nanos[nanos.length / 2] / 1_000, nanos[(int) (nanos.length * 0.99)] / 1_000,
+                nanos[nanos.length - 1] / 1_000, errors);
+    }
+
+    private static int status(HttpClient http, String uri) {
+        try {
+            return http.send(HttpRequest.newBuilder(URI.create(uri)).timeout(Duration.ofSeconds(10)).build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static String body(HttpClient http, String uri, String bearer) throws Exception {
+        return http.send(HttpRequest.newBuilder(URI.create(uri)).header("Authorization", bearer).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static String token(RSAKey key) throws Exception {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                new JWTClaimsSet.Builder()
+                        .subject("bench")
+                        .claim("realm_access", Map.of("roles", List.of("REPORTER")))
+                        .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                        .build());
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    // stessa distribuzione del test dei piani: 90% attivi, 5% disabilitati, 5% cancellati, id UUIDv7
+    private static void seed(Connection c) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement("""
+                INSERT INTO users (id, username, email, codice_fiscale, nome, cognome, status,
+                                   created_at, updated_at, roles_mask)
+                SELECT (lpad(to_hex((extract(epoch FROM now() - i * interval '1 second') * 1000)::bigint), 12, '0')
+                        || '7' || substr(md5(i::text), 1, 3) || '8' || substr(md5(i::text), 4, 15))::uuid,
+                       'user' || i, 'user' || i || '@example.com',
+                       'CF' || lpad(i::text, 14, '0'), 'Nome' || (i % 1000), 'Cognome' || (i % 5000),
+                       CASE WHEN i % 20 = 0 THEN 'DELETED' WHEN i % 20 = 1 THEN 'DISABLED' ELSE 'ACTIVE' END,
+                       now() - i * interval '1 second', now() - i * interval '1 second',
+                       (1 << (i % 5))::smallint
+                FROM generate_series(1, ?) AS i
+                """)) {
+            ps.setInt(1, PRELOAD);
+            ps.executeUpdate();
+        }
+        try (Statement s = c.createStatement()) {
+            s.execute("""
+                    INSERT INTO user_roles (user_id, role)
+                    SELECT id, (ARRAY['OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER'])[
+                               (ln(roles_mask::float) / ln(2))::int + 1] FROM users""");
+            s.execute("VACUUM ANALYZE users");
+        }
+    }
+
+    private static Connection connect(String schema) throws Exception {
+        return DriverManager.getConnection(url(schema), user(), password());
+    }
+
+    private static String url(String schema) {
+        String url = System.getProperty("bench.pg.url");
+        return schema == null ? url : url + (url.contains("?") ? "&" : "?") + "currentSchema=" + schema + ",public";
+    }
+
+    // stesso database dell'URL JDBC, schema di ricerca del benchmark
+    private static String r2dbcUrl() {
+        String jdbc = System.getProperty("bench.pg.url");
+        String base = jdbc.substring("jdbc:".length(), jdbc.contains("?") ? jdbc.indexOf('?') : jdbc.length());
+        return "r2dbc:" + base + "?schema=" + SCHEMA;
+    }
+
+    private static String user() {
+        return System.getProperty("bench.pg.user", "ums");
+    }
+
+    private static String password() {
+        return System.getProperty("bench.pg.password", "ums");
+    }
+}
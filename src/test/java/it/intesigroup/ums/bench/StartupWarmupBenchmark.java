@@ -0,0 +1,233 @@
+package it.intesigroup.ums.bench;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.intesigroup.ums.UserManagementServiceApplication;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latenza del primo minuto di traffico di una replica appena avviata, con e senza warm-up.
+ * Ogni variante gira in una JVM separata (il JIT di una non deve avvantaggiare l'altra) sullo stesso
+ * schema PostgreSQL, con JWT reali (chiave pubblica passata come file JWKS); il traffico parte quando
+ * {@code /actuator/health/readiness} risponde 200.
+ * mvn test -Dtest=StartupWarmupBenchmark -Dbench.pg.url=jdbc:postgresql://localhost:5432/ums
+ */
+@EnabledIfSystemProperty(named = "bench.pg.url", matches = ".+")
+class StartupWarmupBenchmark {
+    private static final String SCHEMA = "bench_warmup";
+    private static final int PRELOAD = Integer.getInteger("bench.preload", 100_000);
+    private static final int SECONDS = Integer.getInteger("bench.seconds", 60);
+    private static final int THREADS = Integer.getInteger("bench.threads", 8);
+
+    private record Sample(long atNanos, long nanos) {}
+
+    @Test
+    void firstMinuteLatencyWithAndWithoutWarmup() throws Exception {
+        try (Connection c = connect(null); Statement s = c.createStatement()) {
+            s.execute("CREATE EXTENSION IF NOT EXISTS \"uuid-ossp\" SCHEMA public");
+            s.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        }
+        Flyway.configure().dataSource(url(SCHEMA), user(), password()).schemas(SCHEMA)
+                .locations("classpath:db/migration").load().migrate();
+        List<UUID> ids = new ArrayList<>();
+        try (Connection c = connect(SCHEMA)) {
+            seed(c);
+            try (Statement s = c.createStatement();
+                 ResultSet rs = s.executeQuery("SELECT id FROM users WHERE status <> 'DELETED' LIMIT 5000")) {
+                while (rs.next()) ids.add(rs.getObject(1, UUID.class));
+            }
+        }
+
+        List<String> results = new ArrayList<>();
+        try {
+            for (boolean warmup : new boolean[]{false, true}) {
+                results.addAll(run(warmup, ids));
+            }
+        } finally {
+            try (Connection c = connect(null); Statement s = c.createStatement()) {
+                s.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+            }
+        }
+        System.out.printf("%-10s %-22s %10s %10s %10s %10s%n", "warm-up", "window", "requests", "p50 us", "p99 us", "max us");
+        results.forEach(System.out::println);
+    }
+
+    private List<String> run(boolean warmup, List<UUID> ids) throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        RSAKey key = new RSAKeyGenerator(2048).keyID("bench").generate();
+        Path jwks = Path.of("target", "warmup-bench-jwks.json");
+        Files.writeString(jwks, new JWKSet(key.toPublicJWK()).toString());
+        String bearer = "Bearer " + token(key);
+        String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        Path log = Path.of("target", "warmup-bench-" + warmup + ".log");
+        Process app = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", classpath, UserManagementServiceApplication.class.getName(),
+                "--server.port=" + port,
+                "--spring.datasource.url=" + url(SCHEMA),
+                "--spring.datasource.username=" + user(),
+                "--spring.datasource.password=" + password(),
+                "--spring.flyway.schemas=" + SCHEMA,
+                "--app.security.jwks.cache-file=" + jwks.toAbsolutePath(),
+                "--app.security.rate-limit.enabled=false",
+                "--app.users.snapshot.enabled=false",
+                "--management.health.rabbit.enabled=false",
+                "--logging.level.it.intesigroup.ums=WARN",
+                "--app.warmup.enabled=" + warmup)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String base = "http://127.0.0.1:" + port;
+            long launched = System.nanoTime();
+            while (status(http, base + "/actuator/health/readiness", null) != 200) {
+                if (!app.isAlive()) throw new IllegalStateException("Avvio fallito, vedere " + log);
+                Thread.sleep(50);
+            }
+            System.out.printf("warm-up=%s: readiness dopo %,d ms%n", warmup, (System.nanoTime() - launched) / 1_000_000);
+
+            ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+            long start = System.nanoTime();
+            long end = start + Duration.ofSeconds(SECONDS).toNanos();
+            ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        UUID id = ids.get(random.nextInt(ids.size()));
+                        int op = random.nextInt(10);
+                        String path = op < 6 ? "/api/users/" + id
+                                : op < 8 ? "/api/users/" + id + "?fields=id,email,roles"
+                                : "/api/users?page=" + random.nextInt(20) + "&size=20";
+                        long t0 = System.nanoTime();
+                        int status = status(http, base + path, bearer);
+                        if (status != 200) throw new IllegalStateException("GET " + path + ": " + status);
+                        samples.add(new Sample(t0 - start, System.nanoTime() - t0));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+            clients.shutdown();
+
+            List<Sample> all = new ArrayList<>(samples);
+            all.sort((a, b) -> Long.compare(a.atNanos(), b.atNanos()));
+            List<String> out = new ArrayList<>();
+            out.add(row(warmup, "prime 1000 richieste", all.subList(0, Math.min(1_000, all.size()))));
+            out.add(row(warmup, "primi 10 s", all.stream().filter(s -> s.atNanos() < 10_000_000_000L).toList()));
+            out.add(row(warmup, "primi " + SECONDS + " s", all));
+            return out;
+        } finally {
+            app.destroy();
+            app.waitFor();
+        }
+    }
+
+    private static String row(boolean warmup, String window, List<Sample> samples) {
+        long[] nanos = samples.stream().mapToLong(Sample::nanos).sorted().toArray();
+        return String.format("%-10s %-22s %10d %10d %10d %10d", warmup, window, nanos.length,
+                nanos[nanos.length / 2] / 1_000, nanos[(int) (nanos.length * 0.99)] / 1_000,
+                nanos[nanos.length - 1] / 1_000);
+    }
+
+    private static int status(HttpClient http, String uri, String bearer) {
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(uri)).timeout(Duration.ofSeconds(10));
+        if (bearer != null) req.header("Authorization", bearer);
+        try {
+            return http.send(req.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static String token(RSAKey key) throws Exception {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                new JWTClaimsSet.Builder()
+                        .subject("bench")
+                        .claim("realm_access", Map.of("roles", List.of("REPORTER")))
+                        .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                        .build());
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    // stessa distribuzione del test dei piani: 90% attivi, 5% disabilitati, 5% cancellati, id UUIDv7
+    private static void seed(Connection c) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement("""
+                INSERT INTO users (id, username, email, codice_fiscale, nome, cognome, status,
+                                   created_at, updated_at, roles_mask)
+                SELECT (lpad(to_hex((extract(epoch FROM now() - i * interval '1 second') * 1000)::bigint), 12, '0')
+                        || '7' || substr(md5(i::text), 1, 3) || '8' || substr(md5(i::text), 4, 15))::uuid,
+                       'user' || i, 'user' || i || '@example.com',
+                       'CF' || lpad(i::text, 14, '0'), 'Nome' || (i % 1000), 'Cognome' || (i % 5000),
+                       CASE WHEN i % 20 = 0 THEN 'DELETED' WHEN i % 20 = 1 THEN 'DISABLED' ELSE 'ACTIVE' END,
+                       now() - i * interval '1 second', now() - i * interval '1 second',
+                       (1 << (i % 5))::smallint
+                FROM generate_series(1, ?) AS i
+                """)) {
+            ps.setInt(1, PRELOAD);
+            ps.executeUpdate();
+        }
+        try (Statement s = c.createStatement()) {
+            s.execute("""
+                    INSERT INTO user_roles (user_id, role)
+                    SELECT id, (ARRAY['OWNER','OPERATOR','MAINTAINER','DEVELOPER','REPORTER'])[
+                               (ln(roles_mask::float) / ln(2))::int + 1] FROM users""");
+            s.execute("VACUUM ANALYZE users");
+        }
+    }
+
+    private static Connection connect(String schema) throws Exception {
+        return DriverManager.getConnection(url(schema), user(), password());
+    }
+
+    private static String url(String schema) {
+        String url = System.getProperty("bench.pg.url");
+        return schema == null ? url : url + (url.contains("?") ? "&" : "?") + "currentSchema=" + schema + ",public";
+    }
+
+    private static String user() {
+        return System.getProperty("bench.pg.user", "ums");
+    }
+
+    private static String password() {
+        return System.getProperty("bench.pg.password", "ums");
+    }
+}
@@ -0,0 +1,105 @@
+package it.intesigroup.ums.bench;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.mapper.UserMapper;
+import it.intesigroup.ums.mapper.UserProtoMapper;
+import it.intesigroup.ums.proto.UserPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Dimensione e tempi di encode/decode di una Page&lt;UserResponse&gt; in JSON, Smile, CBOR e protobuf.
+ * Eseguire con: mvn test -Dtest=UserPayloadFormatBenchmark -Dbench=true
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class UserPayloadFormatBenchmark {
+    private static final int PAGE_SIZE = 100;
+    private static final int WARMUP = 5_000;
+    private static final int ITERATIONS = 20_000;
+
+    private static volatile Object blackhole;
+
+    @Test
+    void compareFormats() throws Exception {
+        List<UserResponse> content = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) content.add(UserMapper.toResponse(user(i), true));
+        Page<UserResponse> page = new PageImpl<>(content, PageRequest.of(0, PAGE_SIZE), 10_000);
+
+        System.out.printf("%-8s %9s %12s %12s%n", "format", "bytes", "encode ns", "decode ns");
+        jackson("json", mapper(Jackson2ObjectMapperBuilder.json()), page);
+        jackson("smile", mapper(Jackson2ObjectMapperBuilder.smile()), page);
+        jackson("cbor", mapper(Jackson2ObjectMapperBuilder.cbor()), page);
+
+        byte[] proto = UserProtoMapper.toProto(page).toByteArray();
+        report("protobuf", proto.length,
+                time(() -> blackhole = UserProtoMapper.toProto(page).toByteArray()),
+                time(() -> blackhole = UserPage.parseFrom(proto)));
+    }
+
+    private void jackson(String name, ObjectMapper mapper, Page<UserResponse> page) throws Exception {
+        byte[] encoded = mapper.writeValueAsBytes(page);
+        report(name, encoded.length,
+                time(() -> blackhole = mapper.writeValueAsBytes(page)),
+                time(() -> blackhole = mapper.readValue(encoded, PageEnvelope.class)));
+    }
+
+    private static ObjectMapper mapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.modulesToInstall(new BlackbirdModule()).build();
+    }
+
+    private static long time(ThrowingRunnable task) throws Exception {
+        for (int i = 0; i < WARMUP; i++) task.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) task.run();
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private static void report(String name, int bytes, long encodeNs, long decodeNs) {
+        System.out.printf("%-8s %9d %12d %12d%n", name, bytes, encodeNs, decodeNs);
+    }
+
+    private static User user(int i) {
+        User u = new User();
+        ReflectionTestUtils.setField(u, "id", UUID.randomUUID());
+        u.setUsername("mrossi" + i);
+        u.setEmail("mario.rossi" + i + "@example.com");
+        u.setCodiceFiscale("RSSMRA80A01H501U");
+        u.setNome("Mario");
+        u.setCognome("Rossi");
+        u.setStatus(UserStatus.ACTIVE);
+        u.setRoles(Set.of(Role.DEVELOPER, Role.REPORTER));
+        ReflectionTestUtils.setField(u, "createdAt", OffsetDateTime.now());
+        ReflectionTestUtils.setField(u, "updatedAt", OffsetDateTime.now());
+        return u;
+    }
+
+    // lato client: lettura della sola parte utile dell'envelope di Page
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class PageEnvelope {
+        public List<UserResponse> content;
+        public long totalElements;
+        public int totalPages;
+    }
+
+    @FunctionalInterface
+    interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
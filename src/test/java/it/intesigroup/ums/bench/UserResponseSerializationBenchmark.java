@@ -0,0 +1,86 @@
+package it.intesigroup.ums.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.mapper.UserMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Allocazione per richiesta del percorso di risposta di get/list (mapping + masking + JSON).
+ * Eseguire con: mvn test -Dtest=UserResponseSerializationBenchmark -Dbench=true
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class UserResponseSerializationBenchmark {
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .modulesToInstall(new BlackbirdModule())
+            .build();
+    // come in Spring MVC, il JSON viene scritto in streaming sull'output della risposta
+    private final OutputStream sink = new OutputStream() {
+        @Override public void write(int b) { }
+        @Override public void write(byte[] b, int off, int len) { }
+    };
+
+    @Test
+    void getAndListAllocationPerRequest() throws Exception {
+        User user = user(0);
+        List<User> page = new ArrayList<>();
+        for (int i = 0; i < 20; i++) page.add(user(i));
+
+        report("get (masked)", () -> objectMapper.writeValue(sink, UserMapper.toResponse(user, true)));
+        report("get (unmasked)", () -> objectMapper.writeValue(sink, UserMapper.toResponse(user, false)));
+        report("list 20 (masked)", () -> {
+            List<UserResponse> content = new ArrayList<>(page.size());
+            for (User u : page) content.add(UserMapper.toResponse(u, true));
+            objectMapper.writeValue(sink, content);
+        });
+    }
+
+    private void report(String name, ThrowingRunnable task) throws Exception {
+        for (int i = 0; i < WARMUP; i++) task.run();
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().threadId();
+        long before = mx.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) task.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = mx.getThreadAllocatedBytes(tid) - before;
+        System.out.printf("%-18s %8d B/op %8d ns/op%n", name, allocated / ITERATIONS, elapsed / ITERATIONS);
+    }
+
+    private static User user(int i) {
+        User u = new User();
+        ReflectionTestUtils.setField(u, "id", UUID.randomUUID());
+        u.setUsername("mrossi" + i);
+        u.setEmail("mario.rossi" + i + "@example.com");
+        u.setCodiceFiscale("RSSMRA80A01H501U");
+        u.setNome("Mario");
+        u.setCognome("Rossi");
+        u.setStatus(UserStatus.ACTIVE);
+        u.setRoles(Set.of(Role.DEVELOPER, Role.REPORTER));
+        ReflectionTestUtils.setField(u, "createdAt", java.time.OffsetDateTime.now());
+        ReflectionTestUtils.setField(u, "updatedAt", java.time.OffsetDateTime.now());
+        return u;
+    }
+
+    @FunctionalInterface
+    interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,107 @@
+package it.intesigroup.ums.bench;
+
+import it.intesigroup.ums.domain.UuidV7;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Throughput di inserimento su una tabella già popolata con chiave primaria UUID v4 (casuale)
+ * rispetto a UUID v7 (ordinata per tempo). Richiede un PostgreSQL locale:
+ * mvn test -Dtest=UuidInsertBenchmark -Dbench.pg.url=jdbc:postgresql://localhost:5432/ums
+ */
+@EnabledIfSystemProperty(named = "bench.pg.url", matches = ".+")
+class UuidInsertBenchmark {
+    private static final int PRELOAD = Integer.getInteger("bench.preload", 2_000_000);
+    private static final int INSERTS = Integer.getInteger("bench.inserts", 200_000);
+    private static final int BATCH = 1_000;
+
+    @Test
+    void insertThroughputV4VersusV7() throws Exception {
+        run("uuid_v4", UUID::randomUUID);
+        run("uuid_v7", UuidV7::generate);
+    }
+
+    private void run(String name, Supplier<UUID> ids) throws Exception {
+        String table = "bench_" + name;
+        try (Connection c = connect()) {
+            try (Statement s = c.createStatement()) {
+                s.execute("DROP TABLE IF EXISTS " + table);
+                s.execute("CREATE TABLE " + table + " (id uuid PRIMARY KEY, payload varchar(100) NOT NULL)");
+            }
+            insert(c, table, ids, PRELOAD);
+            try (Statement s = c.createStatement()) {
+                s.execute("VACUUM ANALYZE " + table);
+            }
+
+            long[] before = indexBlocks(c, table);
+            long start = System.nanoTime();
+            insert(c, table, ids, INSERTS);
+            long elapsed = System.nanoTime() - start;
+            long[] after = indexBlocks(c, table);
+
+            System.out.printf("%s: %,d rows/s, index blocks read %,d hit %,d, index size %s%n",
+                    name, INSERTS * 1_000_000_000L / elapsed,
+                    after[0] - before[0], after[1] - before[1], indexSize(c, table));
+            try (Statement s = c.createStatement()) {
+                s.execute("DROP TABLE " + table);
+            }
+        }
+    }
+
+    private static void insert(Connection c, String table, Supplier<UUID> ids, int rows) throws Exception {
+        c.setAutoCommit(false);
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO " + table + " (id, payload) VALUES (?, ?)")) {
+            for (int i = 1; i <= rows; i++) {
+                ps.setObject(1, ids.get());
+                ps.setString(2, "user-" + i);
+                ps.addBatch();
+                if (i % BATCH == 0) {
+                    ps.executeBatch();
+                    c.commit();
+                }
+            }
+            ps.executeBatch();
+            c.commit();
+        }
+        c.setAutoCommit(true);
+    }
+
+    private static long[] indexBlocks(Connection c, String table) throws Exception {
+        // le statistiche sono asincrone: forza la lettura dei contatori aggiornati
+        try (Statement s = c.createStatement()) {
+            s.execute("SELECT pg_stat_force_next_flush()");
+        }
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT idx_blks_read, idx_blks_hit FROM pg_statio_user_indexes WHERE relname = ?")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return new long[]{rs.getLong(1), rs.getLong(2)};
+            }
+        }
+    }
+
+    private static String indexSize(Connection c, String table) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT pg_size_pretty(pg_relation_size(?::regclass))")) {
+            ps.setString(1, table + "_pkey");
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private static Connection connect() throws Exception {
+        return DriverManager.getConnection(System.getProperty("bench.pg.url"),
+                System.getProperty("bench.pg.user", "ums"), System.getProperty("bench.pg.password", "ums"));
+    }
+}
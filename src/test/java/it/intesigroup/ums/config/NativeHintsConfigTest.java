@@ -0,0 +1,27 @@
+package it.intesigroup.ums.config;
+
+import it.intesigroup.ums.dto.CreateUserRequest;
+import it.intesigroup.ums.dto.UserResponse;
+import it.intesigroup.ums.service.UserService;
+import it.intesigroup.ums.validation.CodiceFiscaleValidator;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NativeHintsConfigTest {
+
+    @Test
+    void registersReflectionForDtosEventsAndValidators() {
+        RuntimeHints hints = new RuntimeHints();
+        new NativeHintsConfig.UmsRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.reflection().onType(UserResponse.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(CreateUserRequest.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(UserService.UserCreatedEvent.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(CodiceFiscaleValidator.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)).accepts(hints);
+    }
+}
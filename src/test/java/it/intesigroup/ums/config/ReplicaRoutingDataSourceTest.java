@@ -0,0 +1,94 @@
+package it.intesigroup.ums.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica1 = mock(DataSource.class);
+    private final DataSource replica2 = mock(DataSource.class);
+    private final Connection primaryCon = mock(Connection.class);
+    private final Connection replica1Con = mock(Connection.class);
+    private final Connection replica2Con = mock(Connection.class);
+
+    @Test
+    void getConnection_roundRobinsAcrossReplicas() throws Exception {
+        given(replica1.getConnection()).willReturn(replica1Con);
+        given(replica2.getConnection()).willReturn(replica2Con);
+
+        try (ReplicaRoutingDataSource ds = newRouting(List.of(replica1, replica2))) {
+            Connection first = ds.getConnection();
+            Connection second = ds.getConnection();
+            Connection third = ds.getConnection();
+
+            assertThat(List.of(first, second)).containsExactlyInAnyOrder(replica1Con, replica2Con);
+            assertThat(third).isSameAs(first);
+        }
+    }
+
+    @Test
+    void getConnection_skipsFailingReplicaAndMarksItUnhealthy() throws Exception {
+        given(replica1.getConnection()).willThrow(new SQLException("down"));
+        given(replica2.getConnection()).willReturn(replica2Con);
+
+        try (ReplicaRoutingDataSource ds = newRouting(List.of(replica1, replica2))) {
+            assertThat(ds.getConnection()).isSameAs(replica2Con);
+            assertThat(ds.getConnection()).isSameAs(replica2Con);
+            assertThat(ds.isReplicaHealthy(0)).isFalse();
+        }
+    }
+
+    @Test
+    void getConnection_fallsBackToPrimaryWhenNoReplicaIsAvailable() throws Exception {
+        given(replica1.getConnection()).willThrow(new SQLException("down"));
+        given(primary.getConnection()).willReturn(primaryCon);
+
+        try (ReplicaRoutingDataSource ds = newRouting(List.of(replica1))) {
+            assertThat(ds.getConnection()).isSameAs(primaryCon);
+        }
+    }
+
+    @Test
+    void checkHealth_restoresRecoveredReplica() throws Exception {
+        given(replica1.getConnection()).willThrow(new SQLException("down")).willReturn(replica1Con);
+        given(replica1Con.isValid(1)).willReturn(true);
+        given(primary.getConnection()).willReturn(primaryCon);
+
+        try (ReplicaRoutingDataSource ds = newRouting(List.of(replica1))) {
+            assertThat(ds.getConnection()).isSameAs(primaryCon);
+
+            ds.checkHealth();
+
+            assertThat(ds.isReplicaHealthy(0)).isTrue();
+            assertThat(ds.getConnection()).isSameAs(replica1Con);
+        }
+    }
+
+    @Test
+    void getConnectionWithCredentials_delegatesToChosenReplicaAndKeepsItHealthyWhenUnsupported() throws Exception {
+        given(replica1.getConnection("ro", "pw")).willReturn(replica1Con);
+        given(replica2.getConnection("ro", "pw")).willThrow(new SQLFeatureNotSupportedException("no"));
+
+        try (ReplicaRoutingDataSource ds = newRouting(List.of(replica1, replica2))) {
+            assertThat(ds.getConnection("ro", "pw")).isSameAs(replica1Con);
+            assertThatThrownBy(() -> ds.getConnection("ro", "pw")).isInstanceOf(SQLFeatureNotSupportedException.class);
+            assertThat(ds.isReplicaHealthy(1)).isTrue();
+        }
+    }
+
+    private ReplicaRoutingDataSource newRouting(List<DataSource> replicas) {
+        return new ReplicaRoutingDataSource(primary, replicas, Duration.ofHours(1), Duration.ofSeconds(1));
+    }
+}
@@ -0,0 +1,39 @@
+package it.intesigroup.ums.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoleTest {
+
+    @Test
+    void bit_followsDeclarationOrderPersistedInRolesMask() {
+        // valori scritti dalla migrazione V4: cambiarli invaliderebbe le maschere già salvate
+        assertThat(Role.OWNER.bit()).isEqualTo((short) 1);
+        assertThat(Role.OPERATOR.bit()).isEqualTo((short) 2);
+        assertThat(Role.MAINTAINER.bit()).isEqualTo((short) 4);
+        assertThat(Role.DEVELOPER.bit()).isEqualTo((short) 8);
+        assertThat(Role.REPORTER.bit()).isEqualTo((short) 16);
+    }
+
+    @Test
+    void toMaskAndFromMask_roundTripEverySubset() {
+        Role[] roles = Role.values();
+        for (int mask = 0; mask < 1 << roles.length; mask++) {
+            Set<Role> subset = Role.fromMask(mask);
+            assertThat(subset).hasSize(Integer.bitCount(mask));
+            assertThat(Role.toMask(subset)).isEqualTo((short) mask);
+        }
+    }
+
+    @Test
+    void toMask_ignoresDuplicatesAndNull() {
+        assertThat(Role.toMask(List.of(Role.OWNER, Role.REPORTER, Role.OWNER))).isEqualTo((short) 17);
+        assertThat(Role.toMask(null)).isZero();
+        assertThat(Role.fromMask(0)).isEqualTo(EnumSet.noneOf(Role.class));
+    }
+}
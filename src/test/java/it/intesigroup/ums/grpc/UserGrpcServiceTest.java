@@ -0,0 +1,185 @@
+package it.intesigroup.ums.grpc;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.exception.NotFoundException;
+import it.intesigroup.ums.mapper.UserProtoMapper;
+import it.intesigroup.ums.proto.BatchGetUsersRequest;
+import it.intesigroup.ums.proto.BatchGetUsersResponse;
+import it.intesigroup.ums.proto.GetUserRequest;
+import it.intesigroup.ums.proto.ListUsersRequest;
+import it.intesigroup.ums.proto.ListUsersResponse;
+import it.intesigroup.ums.proto.UserQueryServiceGrpc;
+import it.intesigroup.ums.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class UserGrpcServiceTest {
+    private static final Metadata.Key<String> AUTHORIZATION =
+            Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final UserService userService = mock(UserService.class);
+    private RSAKey key;
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void start() throws Exception {
+        key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        JwtGrantedAuthoritiesConverter authorities = new JwtGrantedAuthoritiesConverter();
+        authorities.setAuthoritiesClaimName("roles");
+        authorities.setAuthorityPrefix("ROLE_");
+        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(authorities);
+
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(ServerInterceptors.intercept(new UserGrpcService(userService),
+                        new GrpcAuthInterceptor(NimbusJwtDecoder.withPublicKey(key.toRSAPublicKey()).build(), converter)))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    @AfterEach
+    void stop() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    void getUser_withoutToken_isUnauthenticated() {
+        UserQueryServiceGrpc.UserQueryServiceBlockingStub stub = UserQueryServiceGrpc.newBlockingStub(channel);
+
+        assertThatThrownBy(() -> stub.getUser(GetUserRequest.newBuilder()
+                .setId(UserProtoMapper.toBytes(UUID.randomUUID())).build()))
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.UNAUTHENTICATED));
+    }
+
+    @Test
+    void getUser_masksSensitiveFieldsForNonOwnerRoles() throws Exception {
+        User u = user(UUID.randomUUID());
+        given(userService.getUser(u.getId())).willReturn(u);
+        GetUserRequest request = GetUserRequest.newBuilder().setId(UserProtoMapper.toBytes(u.getId())).build();
+
+        it.intesigroup.ums.proto.User asReporter = stub("REPORTER").getUser(request);
+        it.intesigroup.ums.proto.User asOwner = stub("OWNER").getUser(request);
+
+        assertThat(asReporter.getCodiceFiscale()).isEqualTo("RSS********01U");
+        assertThat(asOwner.getCodiceFiscale()).isEqualTo("RSSMRA80A01H501U");
+        assertThat(UserProtoMapper.toUuid(asOwner.getId())).isEqualTo(u.getId());
+    }
+
+    @Test
+    void getUser_missingUser_isNotFound() throws Exception {
+        UUID id = UUID.randomUUID();
+        given(userService.getUser(id)).willThrow(new NotFoundException("Utente non trovato"));
+
+        assertThatThrownBy(() -> stub("OWNER").getUser(GetUserRequest.newBuilder()
+                .setId(UserProtoMapper.toBytes(id)).build()))
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.NOT_FOUND));
+    }
+
+    @Test
+    void batchGetUsers_returnsFoundUsersInRequestOrderAndMissingIds() throws Exception {
+        User a = user(UUID.randomUUID());
+        User b = user(UUID.randomUUID());
+        UUID missing = UUID.randomUUID();
+        given(userService.getUsers(any())).willReturn(List.of(b, a));
+
+        BatchGetUsersResponse response = stub("OWNER").batchGetUsers(BatchGetUsersRequest.newBuilder()
+                .addIds(UserProtoMapper.toBytes(a.getId()))
+                .addIds(UserProtoMapper.toBytes(missing))
+                .addIds(UserProtoMapper.toBytes(b.getId()))
+                .build());
+
+        assertThat(response.getUsersList()).extracting(u -> UserProtoMapper.toUuid(u.getId()))
+                .containsExactly(a.getId(), b.getId());
+        assertThat(response.getMissingIdsList()).extracting(UserProtoMapper::toUuid).containsExactly(missing);
+    }
+
+    @Test
+    void listUsers_streamsKeysetPagesUpToLimit() throws Exception {
+        List<User> first = new ArrayList<>();
+        for (int i = 0; i < 3; i++) first.add(user(new UUID(0, i + 1)));
+        given(userService.listUsersAfter(isNull(), anyInt())).willReturn(first);
+        given(userService.listUsersAfter(eq(new UUID(0, 3)), anyInt())).willReturn(List.of(user(new UUID(0, 4))));
+
+        Iterator<ListUsersResponse> it = stub("DEVELOPER")
+                .listUsers(ListUsersRequest.newBuilder().setLimit(4).build());
+        List<UUID> ids = new ArrayList<>();
+        it.forEachRemaining(page -> page.getUsersList().forEach(u -> ids.add(UserProtoMapper.toUuid(u.getId()))));
+
+        assertThat(ids).containsExactly(new UUID(0, 1), new UUID(0, 2), new UUID(0, 3), new UUID(0, 4));
+    }
+
+    private UserQueryServiceGrpc.UserQueryServiceBlockingStub stub(String role) throws Exception {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("k1").build(),
+                new JWTClaimsSet.Builder()
+                        .subject("tester")
+                        .claim("roles", List.of(role))
+                        .expirationTime(new Date(System.currentTimeMillis() + 60_000))
+                        .build());
+        jwt.sign(new RSASSASigner(key));
+        Metadata headers = new Metadata();
+        headers.put(AUTHORIZATION, "Bearer " + jwt.serialize());
+        return UserQueryServiceGrpc.newBlockingStub(channel)
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers));
+    }
+
+    private static User user(UUID id) {
+        User u = new User();
+        ReflectionTestUtils.setField(u, "id", id);
+        u.setUsername("mrossi");
+        u.setEmail("m.rossi@example.com");
+        u.setCodiceFiscale("RSSMRA80A01H501U");
+        u.setNome("Mario");
+        u.setCognome("Rossi");
+        u.setStatus(UserStatus.ACTIVE);
+        u.setRoles(Set.of(Role.DEVELOPER));
+        ReflectionTestUtils.setField(u, "createdAt", OffsetDateTime.now());
+        ReflectionTestUtils.setField(u, "updatedAt", OffsetDateTime.now());
+        return u;
+    }
+}
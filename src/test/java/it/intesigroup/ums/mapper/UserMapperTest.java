@@ -0,0 +1,49 @@
+package it.intesigroup.ums.mapper;
+
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.dto.UserResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserMapperTest {
+
+    @Test
+    void toResponse_masksEmailAndCodiceFiscale() {
+        UserResponse res = UserMapper.toResponse(user("mario.rossi@example.com", "RSSMRA80A01H501U"), true);
+
+        assertThat(res.getEmail()).isEqualTo("m*********i@example.com");
+        assertThat(res.getCodiceFiscale()).isEqualTo("RSS********01U");
+    }
+
+    @Test
+    void toResponse_masksShortLocalParts() {
+        assertThat(UserMapper.toResponse(user("ab@example.com", "RSSMRA80A01H501U"), true).getEmail())
+                .isEqualTo("**@example.com");
+        assertThat(UserMapper.toResponse(user("a@example.com", "RSSMRA80A01H501U"), true).getEmail())
+                .isEqualTo("***");
+        assertThat(UserMapper.toResponse(user("abc@example.com", "RSS"), true).getCodiceFiscale())
+                .isEqualTo("********");
+    }
+
+    @Test
+    void toResponse_withoutMasking_copiesSensitiveFields() {
+        UserResponse res = UserMapper.toResponse(user("mario.rossi@example.com", "RSSMRA80A01H501U"));
+
+        assertThat(res.getEmail()).isEqualTo("mario.rossi@example.com");
+        assertThat(res.getCodiceFiscale()).isEqualTo("RSSMRA80A01H501U");
+        assertThat(res.getRoles()).containsExactly(Role.DEVELOPER);
+    }
+
+    private static User user(String email, String cf) {
+        User u = new User();
+        u.setUsername("mrossi");
+        u.setEmail(email);
+        u.setCodiceFiscale(cf);
+        u.setRoles(Set.of(Role.DEVELOPER));
+        return u;
+    }
+}
@@ -0,0 +1,202 @@
+package it.intesigroup.ums.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class ReactiveUserHandlerTest {
+    private final ReactiveUserRepository repository = mock(ReactiveUserRepository.class);
+    private RSAKey key;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        JwtGrantedAuthoritiesConverter authorities = new JwtGrantedAuthoritiesConverter();
+        authorities.setAuthoritiesClaimName("roles");
+        authorities.setAuthorityPrefix("ROLE_");
+        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(authorities);
+
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        client = WebTestClient
+                .bindToRouterFunction(new ReactiveUserHandler(repository).routes(new ReactiveAuthFilter(
+                        NimbusJwtDecoder.withPublicKey(key.toRSAPublicKey()).build(), converter)))
+                .handlerStrategies(HandlerStrategies.builder().codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                }).build())
+                .build();
+    }
+
+    @Test
+    void get_withoutToken_isUnauthorized() {
+        client.get().uri("/api/users/{id}", UUID.randomUUID()).exchange()
+                .expectStatus().isUnauthorized()
+                .expectHeader().valueEquals(HttpHeaders.WWW_AUTHENTICATE, "Bearer")
+                .expectBody().jsonPath("$.message").isEqualTo("Token mancante");
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void get_withRoleOutsideReadRoles_isForbidden() throws Exception {
+        client.get().uri("/api/users/{id}", UUID.randomUUID()).header(HttpHeaders.AUTHORIZATION, bearer("GUEST"))
+                .exchange()
+                .expectStatus().isForbidden();
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void get_masksSensitiveFieldsForNonOwnerRoles() throws Exception {
+        User u = user(UUID.randomUUID());
+        given(repository.findActiveOrDisabledById(u.getId())).willReturn(Mono.just(u));
+
+        client.get().uri("/api/users/{id}", u.getId()).header(HttpHeaders.AUTHORIZATION, bearer("REPORTER"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(u.getId().toString())
+                .jsonPath("$.codiceFiscale").isEqualTo("RSS********01U")
+                .jsonPath("$.roles[0]").isEqualTo("DEVELOPER");
+        client.get().uri("/api/users/{id}", u.getId()).header(HttpHeaders.AUTHORIZATION, bearer("OWNER"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.codiceFiscale").isEqualTo("RSSMRA80A01H501U");
+    }
+
+    @Test
+    void get_missingUserIsNotFoundAndInvalidIdIsBadRequest() throws Exception {
+        UUID id = UUID.randomUUID();
+        given(repository.findActiveOrDisabledById(id)).willReturn(Mono.empty());
+
+        client.get().uri("/api/users/{id}", id).header(HttpHeaders.AUTHORIZATION, bearer("OWNER"))
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.message").isEqualTo("Utente non trovato");
+        client.get().uri("/api/users/not-a-uuid").header(HttpHeaders.AUTHORIZATION, bearer("OWNER"))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void list_returnsPageWithTotalAndClampsSize() throws Exception {
+        List<User> users = List.of(user(new UUID(0, 1)), user(new UUID(0, 2)));
+        given(repository.findActiveOrDisabledPage(Sort.by("id"), 4_000, 2_000)).willReturn(Flux.fromIterable(users));
+        given(repository.countActiveOrDisabled()).willReturn(Mono.just(4_002L));
+
+        client.get().uri("/api/users?page=2&size=5000").header(HttpHeaders.AUTHORIZATION, bearer("DEVELOPER"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content.length()").isEqualTo(2)
+                .jsonPath("$.content[0].email").isEqualTo("m*****i@example.com")
+                .jsonPath("$.totalElements").isEqualTo(4_002)
+                .jsonPath("$.number").isEqualTo(2)
+                .jsonPath("$.size").isEqualTo(2_000);
+    }
+
+    @Test
+    void list_sortsLikeTheServletApiWithIdAsLastKey() throws Exception {
+        Sort expected = Sort.by(Sort.Order.desc("cognome"), Sort.Order.asc("nome"), Sort.Order.asc("id"));
+        given(repository.findActiveOrDisabledPage(expected, 0, 20)).willReturn(Flux.empty());
+        given(repository.countActiveOrDisabled()).willReturn(Mono.just(0L));
+
+        client.get().uri("/api/users?sort=cognome,desc&sort=nome").header(HttpHeaders.AUTHORIZATION, bearer("OWNER"))
+                .exchange()
+                .expectStatus().isOk();
+
+        client.get().uri("/api/users?sort=roles").header(HttpHeaders.AUTHORIZATION, bearer("OWNER"))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("Campo non valido in sort: roles");
+    }
+
+    @Test
+    void lookup_returnsFoundUsersInRequestOrderAndMissingIds() throws Exception {
+        User a = user(UUID.randomUUID());
+        User b = user(UUID.randomUUID());
+        UUID missing = UUID.randomUUID();
+        given(repository.findActiveOrDisabledByIds(any())).willReturn(Flux.just(b, a));
+
+        client.post().uri("/api/users/lookup").header(HttpHeaders.AUTHORIZATION, bearer("OWNER"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(a.getId(), missing, b.getId(), a.getId()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.users.length()").isEqualTo(2)
+                .jsonPath("$.users[0].id").isEqualTo(a.getId().toString())
+                .jsonPath("$.users[1].id").isEqualTo(b.getId().toString())
+                .jsonPath("$.missingIds[0]").isEqualTo(missing.toString());
+    }
+
+    @Test
+    void lookup_rejectsOversizedBatchAndMalformedBody() throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i <= ReactiveUserHandler.MAX_BATCH_SIZE; i++) ids.add(new UUID(0, i));
+
+        client.post().uri("/api/users/lookup").header(HttpHeaders.AUTHORIZATION, bearer("OWNER"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(ids)
+                .exchange()
+                .expectStatus().isBadRequest();
+        client.post().uri("/api/users/lookup").header(HttpHeaders.AUTHORIZATION, bearer("OWNER"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[\"not-a-uuid\"]")
+                .exchange()
+                .expectStatus().isBadRequest();
+        verifyNoInteractions(repository);
+    }
+
+    private String bearer(String role) throws Exception {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("k1").build(),
+                new JWTClaimsSet.Builder()
+                        .subject("tester")
+                        .claim("roles", List.of(role))
+                        .expirationTime(new Date(System.currentTimeMillis() + 60_000))
+                        .build());
+        jwt.sign(new RSASSASigner(key));
+        return "Bearer " + jwt.serialize();
+    }
+
+    private static User user(UUID id) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return User.detached(id, "mrossi", "m.rossi@example.com", "RSSMRA80A01H501U", "Mario", "Rossi",
+                UserStatus.ACTIVE, now, now, Role.toMask(Set.of(Role.DEVELOPER)));
+    }
+}
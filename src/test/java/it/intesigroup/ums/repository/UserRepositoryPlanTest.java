@@ -0,0 +1,393 @@
+package it.intesigroup.ums.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.dto.UserField;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Regressione dei piani di esecuzione delle query di {@link UserRepository} su PostgreSQL.
+ * Lo schema viene creato dalle migrazioni Flyway in uno schema dedicato e popolato con un volume
+ * realistico; ogni metodo del repository viene invocato e le SELECT effettivamente generate da
+ * Hibernate vengono rieseguite con gli stessi parametri in {@code EXPLAIN (ANALYZE, BUFFERS)}.
+ * Il test fallisce se compare un Seq Scan non giustificato, se i buffer letti superano il budget
+ * o se un metodo del repository non è presente nel catalogo.
+ * <p>
+ * Eseguire con: mvn test -Dtest=UserRepositoryPlanTest -Dplan.pg.url=jdbc:postgresql://localhost:5432/ums
+ */
+@EnabledIfSystemProperty(named = "plan.pg.url", matches = ".+")
+@SpringBootTest(properties = {
+        "spring.flyway.schemas=plan_test",
+        "spring.flyway.baseline-on-migrate=false",
+        "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration",
+        "management.health.rabbit.enabled=false",
+        "security.enabled=false",
+        // poller dello stream SSE e costruzione del digest eseguirebbero query proprie durante la cattura
+        "app.users.stream.enabled=false",
+        "app.users.snapshot.enabled=false",
+        "app.users.digest.enabled=false",
+        "app.users.stats.enabled=false",
+        "app.users.audit.enabled=false",
+        "logging.level.it.intesigroup.ums=WARN",
+        // riepilogo del piano di ogni statement
+        "logging.level.it.intesigroup.ums.repository.UserRepositoryPlanTest=INFO"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserRepositoryPlanTest {
+    private static final Logger log = LoggerFactory.getLogger(UserRepositoryPlanTest.class);
+    private static final String SCHEMA = "plan_test";
+    private static final int USERS = Integer.getInteger("plan.users", 200_000);
+    // -Dplan.partitioned=true: stesse verifiche sul layout partizionato di db/partitioning
+    private static final boolean PARTITIONED = Boolean.getBoolean("plan.partitioned");
+    private static final int PARTITIONS = 16;
+    private static final Capture capture = new Capture();
+    // metodi ereditati da JpaRepository usati dal service
+    private static final Set<String> INHERITED_QUERIES = Set.of("findById", "findAllById");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserArchiveRepository archiveRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private AmqpTemplate amqpTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        String url = System.getProperty("plan.pg.url");
+        registry.add("spring.datasource.url",
+                () -> url + (url.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA + ",public");
+        registry.add("spring.datasource.username", () -> System.getProperty("plan.pg.user", "ums"));
+        registry.add("spring.datasource.password", () -> System.getProperty("plan.pg.password", "ums"));
+        if (PARTITIONED) {
+            registry.add("spring.flyway.locations", () -> "classpath:db/migration,classpath:db/partitioning");
+        }
+    }
+
+    @TestConfiguration
+    static class CaptureConfig {
+        @Bean
+        static BeanPostProcessor capturingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ds ? capture.wrap(ds) : bean;
+                }
+            };
+        }
+    }
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.execute("TRUNCATE users CASCADE");
+        // 90% attivi, 5% disabilitati, 5% cancellati; ruoli distribuiti su tutte le maschere.
+        // Gli id seguono il layout UUIDv7 (timestamp in testa) come quelli generati dall'applicazione
+        jdbcTemplate.update("""
+                INSERT INTO users (id, username, email, codice_fiscale, nome, cognome, status,
+                                   created_at, updated_at, roles_mask)
+                SELECT (lpad(to_hex((extract(epoch FROM now() - i * interval '1 minute') * 1000)::bigint), 12, '0')
+                        || '7' || substr(md5(i::text), 1, 3) || '8' || substr(md5(i::text), 4, 15))::uuid,
+                       'user' || i, 'user' || i || '@example.com',
+                       'CF' || lpad(i::text, 14, '0'), 'Nome' || (i % 1000), 'Cognome' || (i % 5000),
+                       CASE WHEN i % 20 = 0 THEN 'DELETED' WHEN i % 20 = 1 THEN 'DISABLED' ELSE 'ACTIVE' END,
+                       now() - i * interval '1 minute', now() - i * interval '30 seconds',
+                       ((1 << (i % 5)) | CASE WHEN i % 3 = 0 THEN 8 ELSE 0 END)::smallint
+                FROM generate_series(1, ?) AS i
+                """, USERS);
+        // user_roles allineata a roles_mask, come la scrive l'applicazione
+        jdbcTemplate.update("""
+                INSERT INTO user_roles (user_id, role)
+                SELECT u.id, r.role
+                FROM users u
+                JOIN (VALUES (1, 'OWNER'), (2, 'OPERATOR'), (4, 'MAINTAINER'), (8, 'DEVELOPER'), (16, 'REPORTER'))
+                     AS r(bit, role) ON u.roles_mask & r.bit <> 0
+                """);
+        jdbcTemplate.execute("VACUUM ANALYZE users");
+        jdbcTemplate.execute("VACUUM ANALYZE user_roles");
+    }
+
+    @AfterAll
+    void dropSchema() {
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+    }
+
+    @Test
+    void everyRepositoryQueryHasAnIndexedPlanWithinBudget() throws Exception {
+        UUID someId = jdbcTemplate.queryForObject(
+                "SELECT id FROM users WHERE status = 'ACTIVE' ORDER BY created_at LIMIT 1 OFFSET 1000", UUID.class);
+        List<UUID> someIds = jdbcTemplate.queryForList(
+                "SELECT id FROM users ORDER BY created_at LIMIT 50 OFFSET 5000", UUID.class);
+        UUID middle = jdbcTemplate.queryForObject(
+                "SELECT id FROM users ORDER BY id LIMIT 1 OFFSET ?", UUID.class, USERS / 2);
+        Set<UserField> fields = EnumSet.of(UserField.ID, UserField.USERNAME, UserField.STATUS);
+        // un Seq Scan giustificato non deve comunque leggere più della tabella stessa
+        long tablePages = jdbcTemplate.queryForObject("""
+                SELECT sum(relpages) FROM pg_class
+                WHERE oid = 'users'::regclass
+                   OR oid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = 'users'::regclass)
+                """, Long.class);
+
+        // metodo -> invocazione, budget di buffer per statement, statement per cui un Seq Scan è atteso
+        Map<String, PlanCase> catalog = new LinkedHashMap<>();
+        catalog.put("findByEmail", new PlanCase(r -> r.findByEmail("USER12345@example.com"), 10));
+        catalog.put("findByCodiceFiscale", new PlanCase(r -> r.findByCodiceFiscale("CF00000000012345"), 10));
+        catalog.put("existsByEmail", new PlanCase(r -> r.existsByEmail("User12345@Example.com"), 10));
+        catalog.put("existsByCodiceFiscale", new PlanCase(r -> r.existsByCodiceFiscale("cf00000000012345"), 10));
+        catalog.put("findById", new PlanCase(r -> r.findById(someId), 10));
+        catalog.put("findAllById", new PlanCase(r -> r.findAllById(someIds), 300));
+        catalog.put("findAllActiveOrDisabled", new PlanCase(
+                r -> r.findAllActiveOrDisabled(PageRequest.of(10, 50, Sort.by("id"))), 100,
+                "count(", "il totale della pagina conta tutte le righe non cancellate"));
+        catalog.put("findActiveOrDisabledAfter", new PlanCase(
+                r -> r.findActiveOrDisabledAfter(middle, Limit.of(500)), 100));
+        // nested loop da idx_user_roles_role_user: circa 4 buffer per riga restituita (indice, PK e heap di users),
+        // indipendenti da quanto è raro il ruolo
+        catalog.put("findRoleMembers", new PlanCase(
+                r -> r.findRoleMembers(Role.OPERATOR.name(), middle, Limit.of(51)), 250));
+        catalog.put("findNaturalKeysAfter", new PlanCase(
+                r -> r.findNaturalKeysAfter(middle, Limit.of(10_000)), 750));
+        catalog.put("findSnapshotBatch", new PlanCase(
+                r -> r.findSnapshotBatch(middle, new UUID(0, 0), new UUID(-1, -1),
+                        OffsetDateTime.parse("1970-01-01T00:00:00Z"), false, Limit.of(500)), 100));
+        catalog.put("findDigestRows", new PlanCase(
+                r -> r.findDigestRows(middle, middle, new UUID(-1, -1), Limit.of(10_000)), 750));
+        catalog.put("countActiveByRolesMask", new PlanCase(
+                r -> r.countActiveByRolesMask(), 0,
+                "group by", "aggregato su tutta la tabella, eseguito solo al rebuild dell'indice dei ruoli"));
+        catalog.put("countByStatusRolesAndCreatedDay", new PlanCase(
+                r -> r.countByStatusRolesAndCreatedDay(), 0,
+                "group by", "aggregato su tutta la tabella, eseguito solo alla riconciliazione delle statistiche"));
+        catalog.put("findActiveOrDisabledFields", new PlanCase(
+                r -> r.findActiveOrDisabledFields(fields, PageRequest.of(10, 50, Sort.by("id"))), 100,
+                "count(", "il totale della pagina conta tutte le righe non cancellate"));
+        catalog.put("findActiveOrDisabledFieldsById", new PlanCase(
+                r -> r.findActiveOrDisabledFieldsById(someId, fields), 10));
+
+        assertThat(catalog.keySet())
+                .as("ogni query del repository deve avere un caso nel catalogo dei piani")
+                .containsAll(repositoryQueryMethods());
+
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, PlanCase> entry : catalog.entrySet()) {
+            PlanCase plan = entry.getValue();
+            List<Captured> statements = capture.during(() -> plan.invocation().accept(userRepository));
+            assertThat(statements).as("SELECT eseguite da %s", entry.getKey()).isNotEmpty();
+            for (Captured statement : statements) {
+                JsonNode root = explain(statement);
+                JsonNode top = root.get(0).get("Plan");
+                long buffers = top.path("Shared Hit Blocks").asLong() + top.path("Shared Read Blocks").asLong();
+                List<String> seqScans = new ArrayList<>();
+                collectSeqScans(top, seqScans);
+                boolean seqScanExpected = plan.seqScanMarker() != null
+                        && statement.sql().toLowerCase().contains(plan.seqScanMarker());
+
+                String summary = "%s (%s, %.3f ms)".formatted(entry.getKey(), top.path("Node Type").asText(),
+                        root.get(0).path("Execution Time").asDouble());
+                log.info("{} buffers={} seqscan={}: {}", summary, buffers, seqScans, statement.sql());
+
+                if (!seqScans.isEmpty() && !seqScanExpected) {
+                    failures.add(summary + ": Seq Scan su " + seqScans + " in " + statement.sql());
+                }
+                // senza la chiave di partizione nel filtro ogni partizione viene sondata
+                long budget = seqScanExpected ? tablePages + 100 : plan.maxBuffers() * (PARTITIONED ? PARTITIONS : 1);
+                if (buffers > budget) {
+                    failures.add(summary + ": " + buffers + " buffer letti, budget " + budget + " in " + statement.sql());
+                }
+            }
+        }
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    void archiveBatchUsesPartialIndexOnDeletedUsers() throws Exception {
+        // seed: ~5.6k utenti DELETED con updated_at oltre i 30 giorni
+        OffsetDateTime cutoff = OffsetDateTime.now().minusDays(30);
+        List<String> targets = archiveRepository.archiveTargets();
+        assertThat(targets).hasSize(PARTITIONED ? PARTITIONS : 1);
+        String sql = UserArchiveRepository.ARCHIVE_BATCH.formatted(targets.get(0));
+        JsonNode root;
+        try (Connection c = capture.target.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement("EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + sql)) {
+                ps.setObject(1, cutoff);
+                ps.setInt(2, 500);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    root = objectMapper.readTree(rs.getString(1));
+                }
+            } finally {
+                c.rollback();
+            }
+        }
+        JsonNode top = root.get(0).get("Plan");
+        long buffers = top.path("Shared Hit Blocks").asLong() + top.path("Shared Read Blocks").asLong();
+        List<String> seqScans = new ArrayList<>();
+        collectSeqScans(top, seqScans);
+        String summary = "archiveBatch(%s, 500), %.3f ms".formatted(targets.get(0),
+                root.get(0).path("Execution Time").asDouble());
+
+        // i candidati arrivano sempre dall'indice parziale; su una singola partizione piccola
+        // il planner può legittimamente preferire un hash join con Seq Scan per la DELETE
+        assertThat(root.toString()).as("indice parziale usato da %s", summary)
+                .containsPattern("\"Index Name\": ?\"[a-z_0-9]*updated_at[a-z_0-9]*\"");
+        if (!PARTITIONED) assertThat(seqScans).as("Seq Scan in %s", summary).isEmpty();
+        assertThat(buffers).as("buffer letti da %s", summary).isLessThan(10_000);
+    }
+
+    private static Set<String> repositoryQueryMethods() {
+        return Stream.concat(
+                        Stream.concat(Arrays.stream(UserRepository.class.getDeclaredMethods()),
+                                        Arrays.stream(UserProjectionRepository.class.getDeclaredMethods()))
+                                .filter(m -> !m.isSynthetic() && !m.isDefault())
+                                .map(Method::getName),
+                        INHERITED_QUERIES.stream())
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private JsonNode explain(Captured statement) throws Exception {
+        try (Connection c = capture.target.getConnection();
+             PreparedStatement ps = c.prepareStatement("EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + statement.sql())) {
+            for (Bind bind : statement.binds()) {
+                bind.method().invoke(ps, bind.args());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return objectMapper.readTree(rs.getString(1));
+            }
+        }
+    }
+
+    private static void collectSeqScans(JsonNode node, List<String> out) {
+        if ("Seq Scan".equals(node.path("Node Type").asText())) {
+            out.add(node.path("Relation Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) collectSeqScans(child, out);
+    }
+
+    /** maxBuffers vale per gli statement indicizzati; quelli che contengono seqScanMarker hanno il budget della tabella. */
+    record PlanCase(Consumer<UserRepository> invocation, long maxBuffers, String seqScanMarker, String seqScanReason) {
+        PlanCase(Consumer<UserRepository> invocation, long maxBuffers) {
+            this(invocation, maxBuffers, null, null);
+        }
+    }
+
+    record Bind(Method method, Object[] args) { }
+
+    record Captured(String sql, List<Bind> binds) { }
+
+    /**
+     * Proxy JDBC minimale: registra SQL e parametri delle SELECT preparate mentre è attivo,
+     * così da poterle rieseguire in EXPLAIN esattamente come generate da Hibernate.
+     */
+    static final class Capture {
+        private volatile DataSource target;
+        private volatile List<Captured> captured;
+
+        DataSource wrap(DataSource ds) {
+            this.target = ds;
+            return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(ds, method, args);
+                        return result instanceof Connection c ? wrapConnection(c) : result;
+                    });
+        }
+
+        synchronized List<Captured> during(Runnable action) {
+            captured = new ArrayList<>();
+            try {
+                action.run();
+                return captured;
+            } finally {
+                captured = null;
+            }
+        }
+
+        private Connection wrapConnection(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof PreparedStatement ps && method.getName().equals("prepareStatement")
+                                && args[0] instanceof String sql && sql.stripLeading().toLowerCase().startsWith("select")) {
+                            return wrapStatement(ps, sql);
+                        }
+                        return result;
+                    });
+        }
+
+        private PreparedStatement wrapStatement(PreparedStatement statement, String sql) {
+            List<Bind> binds = new ArrayList<>();
+            InvocationHandler handler = (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    binds.add(new Bind(method, args.clone()));
+                } else if (name.equals("clearParameters")) {
+                    binds.clear();
+                } else if (name.equals("executeQuery") || name.equals("execute")) {
+                    List<Captured> sink = captured;
+                    if (sink != null) sink.add(new Captured(sql, List.copyOf(binds)));
+                }
+                return invoke(statement, method, args);
+            };
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, handler);
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package it.intesigroup.ums.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.security.ClientRateLimiter.Budget;
+import it.intesigroup.ums.security.ClientRateLimiter.EndpointClass;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlFilterTest {
+    private final ClientRateLimiter limiter = new ClientRateLimiter(Map.of(
+            EndpointClass.READ, new Budget(100, 100, 0),
+            EndpointClass.LIST, new Budget(0.5, 1, 1),
+            EndpointClass.WRITE, new Budget(100, 100, 1)),
+            new SimpleMeterRegistry(), Duration.ofHours(1));
+    private final AdmissionControlFilter filter =
+            new AdmissionControlFilter(limiter, new ObjectMapper().findAndRegisterModules());
+
+    @AfterEach
+    void close() {
+        limiter.close();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void classify_separatesListsReadsAndWrites() {
+        assertThat(AdmissionControlFilter.classify(new MockHttpServletRequest("GET", "/api/users"))).isEqualTo(EndpointClass.LIST);
+        assertThat(AdmissionControlFilter.classify(new MockHttpServletRequest("GET", "/api/roles/OWNER/users"))).isEqualTo(EndpointClass.LIST);
+        assertThat(AdmissionControlFilter.classify(new MockHttpServletRequest("GET", "/api/users/0190f0e8-0000-7000-8000-000000000001"))).isEqualTo(EndpointClass.READ);
+        assertThat(AdmissionControlFilter.classify(new MockHttpServletRequest("POST", "/api/users"))).isEqualTo(EndpointClass.WRITE);
+    }
+
+    @Test
+    void doFilter_answers429WithRetryAfterPerJwtSubject() throws Exception {
+        authenticate("alice");
+        assertThat(call("GET", "/api/users").getStatus()).isEqualTo(200);
+
+        MockHttpServletResponse rejected = call("GET", "/api/users");
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("2");
+        assertThat(rejected.getContentAsString()).contains("\"status\":429");
+
+        authenticate("bob");
+        assertThat(call("GET", "/api/users").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void doFilter_answers503WhenBulkheadIsFull() throws Exception {
+        MockHttpServletResponse inner = new MockHttpServletResponse();
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/api/users/1");
+        // la seconda scrittura arriva mentre la prima occupa ancora l'unico posto
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            try {
+                filter.doFilter(new MockHttpServletRequest("PUT", "/api/users/2"), inner, new MockFilterChain());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThat(inner.getStatus()).isEqualTo(503);
+        assertThat(inner.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(call("PUT", "/api/users/3").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void doFilter_skipsStreamAndActuator() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThat(call("GET", "/api/users/stream").getStatus()).isEqualTo(200);
+            assertThat(call("GET", "/actuator/health").getStatus()).isEqualTo(200);
+        }
+    }
+
+    private MockHttpServletResponse call(String method, String uri) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest(method, uri), response, new MockFilterChain());
+        return response;
+    }
+
+    private static void authenticate(String subject) {
+        Jwt jwt = Jwt.withTokenValue("t").header("alg", "none").subject(subject).build();
+        SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt));
+    }
+}
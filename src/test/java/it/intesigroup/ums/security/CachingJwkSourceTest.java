@@ -0,0 +1,64 @@
+package it.intesigroup.ums.security;
+
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingJwkSourceTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void start_loadsKeysFromCacheFileWithoutContactingIdp() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        Path file = tmp.resolve("jwks.json");
+        Files.writeString(file, new JWKSet(key).toString(true));
+
+        try (CachingJwkSource source = newSource(URI.create("http://127.0.0.1:1/certs"), file)) {
+            source.start();
+
+            JWKSelector selector = new JWKSelector(new JWKMatcher.Builder().keyID("k1").build());
+            assertThat(source.get(selector, null)).hasSize(1);
+        }
+    }
+
+    @Test
+    void refresh_keepsStaleKeysWhenIdpIsUnreachable() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).keyID("k1").generate();
+        Path file = tmp.resolve("jwks.json");
+        Files.writeString(file, new JWKSet(key).toString(true));
+
+        try (CachingJwkSource source = newSource(URI.create("http://127.0.0.1:1/certs"), file)) {
+            source.start();
+            source.refresh();
+
+            assertThat(source.currentKeys().getKeyByKeyId("k1")).isNotNull();
+        }
+    }
+
+    @Test
+    void start_withoutCacheAndUnreachableIdp_startsWithEmptyKeySet() {
+        try (CachingJwkSource source = newSource(URI.create("http://127.0.0.1:1/certs"), tmp.resolve("missing.json"))) {
+            source.start();
+
+            assertThat(source.currentKeys().isEmpty()).isTrue();
+        }
+    }
+
+    private CachingJwkSource newSource(URI uri, Path file) {
+        return new CachingJwkSource(uri, file, Duration.ofMinutes(10), Duration.ofSeconds(30),
+                Duration.ofSeconds(30), 0.2, Duration.ofMillis(500));
+    }
+}
@@ -0,0 +1,81 @@
+package it.intesigroup.ums.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.security.ClientRateLimiter.Budget;
+import it.intesigroup.ums.security.ClientRateLimiter.EndpointClass;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientRateLimiterTest {
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ClientRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new ClientRateLimiter(Map.of(
+                EndpointClass.READ, new Budget(10, 5, 0),
+                EndpointClass.LIST, new Budget(1, 2, 2),
+                EndpointClass.WRITE, new Budget(10, 5, 1)),
+                registry, Duration.ofHours(1), now::get);
+    }
+
+    @AfterEach
+    void close() {
+        limiter.close();
+    }
+
+    @Test
+    void tryAcquire_allowsBurstThenAsksToWaitOneInterval() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("sub:a", EndpointClass.READ)).isZero();
+        }
+        assertThat(limiter.tryAcquire("sub:a", EndpointClass.READ)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(limiter.tryAcquire("sub:a", EndpointClass.READ)).isZero();
+        assertThat(limiter.tryAcquire("sub:a", EndpointClass.READ)).isPositive();
+        assertThat(registry.get("ums.ratelimit.rejected").tag("class", "read").tag("reason", "rate")
+                .counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void tryAcquire_keepsSeparateBudgetsPerClientAndClass() {
+        assertThat(limiter.tryAcquire("sub:a", EndpointClass.LIST)).isZero();
+        assertThat(limiter.tryAcquire("sub:a", EndpointClass.LIST)).isZero();
+        assertThat(limiter.tryAcquire("sub:a", EndpointClass.LIST)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+
+        // le liste esaurite non tolgono budget alle get dello stesso client, né agli altri client
+        assertThat(limiter.tryAcquire("sub:a", EndpointClass.READ)).isZero();
+        assertThat(limiter.tryAcquire("sub:b", EndpointClass.LIST)).isZero();
+    }
+
+    @Test
+    void enter_rejectsBeyondMaxConcurrentUntilExit() {
+        assertThat(limiter.enter(EndpointClass.WRITE)).isTrue();
+        assertThat(limiter.enter(EndpointClass.WRITE)).isFalse();
+        limiter.exit(EndpointClass.WRITE);
+        assertThat(limiter.enter(EndpointClass.WRITE)).isTrue();
+
+        // nessun bulkhead sulle letture puntuali
+        for (int i = 0; i < 100; i++) assertThat(limiter.enter(EndpointClass.READ)).isTrue();
+    }
+
+    @Test
+    void sweep_removesOnlyClientsWithFullBuckets() {
+        limiter.tryAcquire("sub:a", EndpointClass.READ);
+        limiter.tryAcquire("sub:b", EndpointClass.LIST);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertThat(limiter.sweep()).isEqualTo(1);
+        assertThat(limiter.clients()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,125 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserChange;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class NaturalKeyFilterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserChangeRepository changeRepository;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void exists_skipsDatabaseOnlyForKeysNeverSeen() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            rows.add(new Object[]{new UUID(0, i + 1), "user" + i + "@example.com", "CF" + i});
+        }
+        given(userRepository.count()).willReturn((long) rows.size());
+        given(userRepository.findNaturalKeysAfter(any(UUID.class), any(Limit.class))).willReturn(rows);
+        NaturalKeyFilter filter = newFilter();
+        filter.rebuild();
+
+        AtomicInteger queries = new AtomicInteger();
+        for (int i = 0; i < 5_000; i++) {
+            // nessun falso negativo: ogni chiave esistente arriva al database
+            assertThat(filter.exists(NaturalKeyFilter.Key.EMAIL, "user" + i + "@example.com",
+                    v -> queries.incrementAndGet() > 0)).isTrue();
+        }
+        assertThat(queries).hasValue(5_000);
+
+        queries.set(0);
+        for (int i = 0; i < 5_000; i++) {
+            filter.exists(NaturalKeyFilter.Key.EMAIL, "new" + i + "@example.com", v -> queries.incrementAndGet() < 0);
+        }
+        // dimensionato per fpp 1%: quasi tutte le chiavi nuove non toccano il database
+        assertThat(queries.get()).isLessThan(150);
+        assertThat(registry.get("ums.keyfilter.checks").tag("key", "email").tag("result", "false_positive")
+                .counter().count()).isEqualTo(queries.get());
+    }
+
+    @Test
+    void exists_beforeLoadAlwaysAsksDatabase() {
+        NaturalKeyFilter filter = newFilter();
+
+        assertThat(filter.exists(NaturalKeyFilter.Key.CODICE_FISCALE, "RSSMRA80A01H501U", v -> false)).isFalse();
+        assertThat(filter.exists(NaturalKeyFilter.Key.CODICE_FISCALE, "RSSMRA80A01H501U", v -> true)).isTrue();
+        assertThat(filter.stats().ready()).isFalse();
+    }
+
+    @Test
+    void onUserChanged_addsNewKeysToLoadedFilter() {
+        given(userRepository.count()).willReturn(0L);
+        given(userRepository.findNaturalKeysAfter(any(UUID.class), any(Limit.class))).willReturn(List.of());
+        NaturalKeyFilter filter = newFilter();
+        filter.rebuild();
+
+        filter.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null,
+                new UserChangedEvent.Snapshot(UUID.randomUUID(), "mrossi", "m.rossi@example.com", "RSSMRA80A01H501U",
+                        "Mario", "Rossi", UserStatus.ACTIVE, Set.of(Role.DEVELOPER), null, null)));
+
+        assertThat(filter.exists(NaturalKeyFilter.Key.EMAIL, "m.rossi@example.com", v -> true)).isTrue();
+        assertThat(filter.exists(NaturalKeyFilter.Key.CODICE_FISCALE, "RSSMRA80A01H501U", v -> true)).isTrue();
+    }
+
+    @Test
+    void pollChanges_addsKeysCreatedByOtherInstancesIncludingLateCommits() {
+        given(changeRepository.findLastSeq()).willReturn(10L);
+        given(userRepository.count()).willReturn(0L);
+        given(userRepository.findNaturalKeysAfter(any(UUID.class), any(Limit.class))).willReturn(List.of());
+        NaturalKeyFilter filter = newFilter();
+        filter.pollChanges();
+
+        // seq 11 ancora aperto quando si legge il 12
+        given(changeRepository.findAfter(eq(10L), any(Limit.class))).willReturn(List.of(change(12, "b")));
+        filter.pollChanges();
+        assertThat(filter.exists(NaturalKeyFilter.Key.EMAIL, "b@example.com", v -> true)).isTrue();
+        assertThat(filter.exists(NaturalKeyFilter.Key.EMAIL, "a@example.com", v -> true)).isFalse();
+
+        given(changeRepository.findBySeqIn(List.of(11L))).willReturn(List.of(change(11, "a")));
+        filter.pollChanges();
+        assertThat(filter.exists(NaturalKeyFilter.Key.EMAIL, "a@example.com", v -> true)).isTrue();
+        assertThat(filter.exists(NaturalKeyFilter.Key.CODICE_FISCALE, "CFA", v -> true)).isTrue();
+    }
+
+    private static UserChange change(long seq, String name) {
+        UserChange c = new UserChange();
+        c.setSeq(seq);
+        c.setUserId(UUID.randomUUID());
+        c.setEmail(name + "@example.com");
+        c.setCodiceFiscale("CF" + name.toUpperCase());
+        return c;
+    }
+
+    private NaturalKeyFilter newFilter() {
+        return new NaturalKeyFilter(userRepository, changeRepository, registry, true, 1_000, 0.01,
+                DataSize.ofMegabytes(1), Duration.ofSeconds(1), Duration.ofMinutes(10), Duration.ofMinutes(10));
+    }
+}
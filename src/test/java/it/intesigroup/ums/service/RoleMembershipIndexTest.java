@@ -0,0 +1,140 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import it.intesigroup.ums.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class RoleMembershipIndexTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // 3 utenti OWNER+REPORTER, 2 DEVELOPER
+    private final List<Object[]> rows = List.of(row(EnumSet.of(Role.OWNER, Role.REPORTER), 3),
+            row(EnumSet.of(Role.DEVELOPER), 2));
+    private RoleMembershipIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new RoleMembershipIndex(userRepository, registry, Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void close() {
+        index.close();
+    }
+
+    @Test
+    void unavailableBeforeFirstReconcile() {
+        assertThatThrownBy(() -> index.summary()).isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    void eventsUpdateCountsIncrementally() {
+        given(userRepository.countActiveByRolesMask()).willReturn(rows);
+        index.reconcile();
+
+        UserChangedEvent.Snapshot created = snapshot(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR, Role.OWNER));
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null, created));
+        assertThat(index.summary()).containsEntry(Role.OWNER, 4L).containsEntry(Role.OPERATOR, 1L);
+
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.DELETED, created,
+                snapshot(UserStatus.DELETED, EnumSet.of(Role.OPERATOR, Role.OWNER))));
+        assertThat(index.summary()).containsEntry(Role.OWNER, 3L).containsEntry(Role.OPERATOR, 0L)
+                .containsEntry(Role.DEVELOPER, 2L);
+    }
+
+    @Test
+    void changeCommittedBeforeTheQueryIsNotAppliedTwice() throws Exception {
+        given(userRepository.countActiveByRolesMask()).willReturn(rows);
+        index.reconcile();
+        given(userRepository.countActiveByRolesMask())
+                .willReturn(List.of(rows.get(0), rows.get(1), row(EnumSet.of(Role.OPERATOR), 1)));
+
+        // evento pubblicato nella transazione; il commit rende la riga visibile prima di afterCompletion
+        TransactionSynchronizationManager.initSynchronization();
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null,
+                snapshot(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR))));
+        TransactionSynchronization sync = TransactionSynchronizationManager.getSynchronizations().get(0);
+        TransactionSynchronizationManager.clearSynchronization();
+        Thread completion = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+                return;
+            }
+            sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        });
+        completion.start();
+
+        assertThat(index.reconcile()).isTrue();
+        completion.join();
+
+        assertThat(index.summary()).containsEntry(Role.OPERATOR, 1L);
+        assertThat(registry.counter("ums.roles.reconcile.drift").count()).isZero();
+    }
+
+    @Test
+    void rolledBackChangeIsNotApplied() {
+        given(userRepository.countActiveByRolesMask()).willReturn(rows);
+        index.reconcile();
+
+        TransactionSynchronizationManager.initSynchronization();
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null,
+                snapshot(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR))));
+        TransactionSynchronizationManager.getSynchronizations().get(0)
+                .afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(index.summary()).containsEntry(Role.OPERATOR, 0L);
+    }
+
+    @Test
+    void reconcileCorrectsDriftFromOtherInstances() {
+        given(userRepository.countActiveByRolesMask()).willReturn(rows);
+        index.reconcile();
+        // un'altra istanza ha creato un OPERATOR
+        given(userRepository.countActiveByRolesMask())
+                .willReturn(List.of(rows.get(0), rows.get(1), row(EnumSet.of(Role.OPERATOR), 1)));
+
+        assertThat(index.reconcile()).isTrue();
+
+        assertThat(index.summary()).containsEntry(Role.OPERATOR, 1L);
+        assertThat(registry.counter("ums.roles.reconcile.drift").count()).isEqualTo(1.0);
+        index.reconcile();
+        assertThat(registry.counter("ums.roles.reconcile.drift").count()).isEqualTo(1.0);
+    }
+
+    private static Object[] row(Set<Role> roles, long count) {
+        return new Object[]{(int) Role.toMask(roles), count};
+    }
+
+    private static UserChangedEvent.Snapshot snapshot(UserStatus status, Set<Role> roles) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return new UserChangedEvent.Snapshot(UUID.fromString("00000000-0000-7000-8000-000000000001"), "mrossi",
+                "m.rossi@example.com", "RSSMRA80A01H501U", "Mario", "Rossi", status, roles, now, now);
+    }
+}
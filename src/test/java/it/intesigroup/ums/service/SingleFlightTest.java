@@ -0,0 +1,121 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void load_concurrentCallersForSameKeyShareOneLoad() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>("test", Duration.ofSeconds(5), registry);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = pool.submit(() -> flight.load("k", key -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "v";
+        }));
+        started.await();
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            followers.add(pool.submit(() -> flight.load("k", key -> {
+                loads.incrementAndGet();
+                return "other";
+            })));
+        }
+        waitForCount("coalesced", 5);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("v");
+        for (Future<String> f : followers) assertThat(f.get(5, TimeUnit.SECONDS)).isEqualTo("v");
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void load_followerLoadsItselfWhenLeaderExceedsMaxWait() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>("test", Duration.ofMillis(50), registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = pool.submit(() -> flight.load("k", key -> {
+            started.countDown();
+            await(release);
+            return "slow";
+        }));
+        started.await();
+
+        assertThat(flight.load("k", key -> "fast")).isEqualTo("fast");
+        assertThat(count("timeout")).isEqualTo(1);
+        release.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("slow");
+    }
+
+    @Test
+    void loadAll_joinsInFlightKeysAndLoadsTheRestInOneCall() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>("test", Duration.ofSeconds(5), registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> single = pool.submit(() -> flight.load("a", key -> {
+            started.countDown();
+            await(release);
+            return "A";
+        }));
+        started.await();
+
+        List<List<String>> batchCalls = new ArrayList<>();
+        Future<Map<String, String>> batch = pool.submit(() -> flight.loadAll(List.of("a", "b", "missing"), keys -> {
+            batchCalls.add(List.copyOf(keys));
+            Map<String, String> loaded = new HashMap<>();
+            if (keys.contains("b")) loaded.put("b", "B");
+            return loaded;
+        }));
+        waitForCount("coalesced", 1);
+        release.countDown();
+
+        assertThat(single.get(5, TimeUnit.SECONDS)).isEqualTo("A");
+        assertThat(batch.get(5, TimeUnit.SECONDS)).containsOnly(Map.entry("a", "A"), Map.entry("b", "B"));
+        assertThat(batchCalls).containsExactly(List.of("b", "missing"));
+    }
+
+    private void waitForCount(String result, double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count(result) < expected && System.nanoTime() < deadline) Thread.sleep(5);
+    }
+
+    private double count(String result) {
+        return registry.get("ums.singleflight.loads").tag("result", result).counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package it.intesigroup.ums.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.exception.NotFoundException;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggerConfiguration;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StartupWarmupTest {
+    private static final String SERVICE_LOGGER = UserService.class.getName();
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private LoggingSystem loggingSystem;
+
+    @Test
+    void run_stopsAtMaxIterationsAndRestoresLogLevel() {
+        given(userService.listUsersAfter(any(), anyInt())).willReturn(List.of());
+        given(userService.getUser(any())).willThrow(new NotFoundException("Utente non trovato"));
+        given(loggingSystem.getLoggerConfiguration(SERVICE_LOGGER))
+                .willReturn(new LoggerConfiguration(SERVICE_LOGGER, LogLevel.DEBUG, LogLevel.DEBUG));
+
+        newWarmup(500).run(new DefaultApplicationArguments());
+
+        verify(userService, times(500)).getUser(any());
+        verify(loggingSystem).setLogLevel(SERVICE_LOGGER, LogLevel.WARN);
+        verify(loggingSystem).setLogLevel(SERVICE_LOGGER, LogLevel.DEBUG);
+    }
+
+    @Test
+    void run_stopsAtFirstFailureWithoutBlockingStartup() {
+        given(userService.listUsersAfter(any(), anyInt()))
+                .willThrow(new DataAccessResourceFailureException("database non raggiungibile"));
+
+        assertThatCode(() -> newWarmup(500).run(new DefaultApplicationArguments())).doesNotThrowAnyException();
+
+        verify(userService, never()).getUser(any());
+        verify(loggingSystem).setLogLevel(SERVICE_LOGGER, null);
+    }
+
+    @Test
+    void iteration_readsListedUsersWhenPresent() {
+        User u = new User();
+        u.setUsername("mrossi");
+        u.setEmail("m.rossi@example.com");
+        u.setCodiceFiscale("RSSMRA80A01H501U");
+        u.setNome("Mario");
+        u.setCognome("Rossi");
+        given(userService.listUsersAfter(any(), anyInt())).willReturn(List.of(u));
+        // utente cancellato tra le due letture: l'iterazione prosegue
+        given(userService.getUserFields(any(), any())).willThrow(new NotFoundException("Utente non trovato"));
+
+        newWarmup(1).iteration(0);
+
+        verify(userService).getUser(u.getId());
+        verify(userService).getUserFields(any(), any());
+    }
+
+    private StartupWarmup newWarmup(int maxIterations) {
+        return new StartupWarmup(userService, new ObjectMapper().findAndRegisterModules(),
+                Validation.buildDefaultValidatorFactory().getValidator(), new JwtAuthenticationConverter(),
+                loggingSystem, Duration.ofSeconds(30), maxIterations, 2);
+    }
+}
@@ -0,0 +1,79 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.repository.UserArchiveRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class UserArchiverTest {
+
+    @Mock
+    private UserArchiveRepository archiveRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void runOnce_movesBatchesUntilAShortOne() {
+        given(archiveRepository.archiveTargets()).willReturn(List.of("users_p00", "users_p01"));
+        given(archiveRepository.archiveBatch(eq("users_p00"), any(OffsetDateTime.class), anyInt())).willReturn(10, 10, 3);
+        given(archiveRepository.archiveBatch(eq("users_p01"), any(OffsetDateTime.class), anyInt())).willReturn(0);
+
+        UserArchiver.RunResult result = newArchiver(100, false).runOnce();
+
+        assertThat(result.users()).isEqualTo(23);
+        assertThat(result.batches()).isEqualTo(4);
+        assertThat(registry.get("ums.archive.users").counter().count()).isEqualTo(23);
+        verify(archiveRepository, times(3)).archiveBatch(eq("users_p00"), any(OffsetDateTime.class), anyInt());
+        verify(archiveRepository).archiveBatch(eq("users_p01"), any(OffsetDateTime.class), anyInt());
+    }
+
+    @Test
+    void runOnce_stopsAtMaxBatchesPerRun() {
+        given(archiveRepository.archiveTargets()).willReturn(List.of("users"));
+        given(archiveRepository.archiveBatch(eq("users"), any(OffsetDateTime.class), anyInt())).willReturn(10);
+        given(archiveRepository.countArchivable(any(OffsetDateTime.class))).willReturn(1_000L);
+
+        UserArchiver.RunResult result = newArchiver(2, false).runOnce();
+
+        assertThat(result.batches()).isEqualTo(2);
+        assertThat(registry.get("ums.archive.pending").gauge().value()).isEqualTo(1_000);
+    }
+
+    @Test
+    void runOnce_dryRunOnlyCountsCandidates() {
+        given(archiveRepository.countArchivable(any(OffsetDateTime.class))).willReturn(42L);
+
+        UserArchiver.RunResult result = newArchiver(100, true).runOnce();
+
+        assertThat(result.dryRun()).isTrue();
+        assertThat(result.users()).isEqualTo(42);
+        verify(archiveRepository, never()).archiveBatch(anyString(), any(OffsetDateTime.class), anyInt());
+    }
+
+    private UserArchiver newArchiver(int maxBatches, boolean dryRun) {
+        return new UserArchiver(archiveRepository, new TransactionTemplate(transactionManager), registry,
+                Duration.ofDays(90), 10, Duration.ZERO, maxBatches, Duration.ofHours(1), dryRun);
+    }
+}
@@ -0,0 +1,183 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserAudit;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+
+class UserAuditTrailTest {
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<UserAudit> persisted = Collections.synchronizedList(new ArrayList<>());
+    private UserAuditTrail trail;
+
+    private UserAuditTrail trail(int capacity) {
+        given(entityManager.unwrap(Session.class)).willReturn(mock(Session.class));
+        willAnswer(inv -> persisted.add(inv.getArgument(0))).given(entityManager).persist(any(UserAudit.class));
+        trail = new UserAuditTrail(entityManager, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                jdbcTemplate, registry, capacity, 100, Duration.ofMillis(20), Duration.ofMillis(50),
+                Duration.ofMillis(10), false);
+        return trail;
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        if (trail != null) trail.close();
+    }
+
+    @Test
+    void updateIsWrittenWithActorAndChangedFieldsOnly() {
+        trail(10);
+        Jwt jwt = Jwt.withTokenValue("t").header("alg", "RS256").subject("kc-42").build();
+        SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt));
+        UserChangedEvent.Snapshot before = snapshot("m.rossi@example.com", UserStatus.ACTIVE, EnumSet.of(Role.DEVELOPER));
+        UserChangedEvent.Snapshot after = snapshot("mario.rossi@example.com", UserStatus.ACTIVE,
+                EnumSet.of(Role.DEVELOPER, Role.OWNER));
+
+        trail.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.UPDATED, before, after));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> persisted.size() == 1);
+        UserAudit a = persisted.get(0);
+        assertThat(a.getUserId()).isEqualTo(before.id());
+        assertThat(a.getAction()).isEqualTo("UPDATED");
+        assertThat(a.getActor()).isEqualTo("kc-42");
+        assertThat(a.getChanges()).containsOnlyKeys("email", "roles");
+        assertThat(a.getChanges().get("email"))
+                .isEqualTo(new UserAudit.FieldChange("m.rossi@example.com", "mario.rossi@example.com"));
+        assertThat(a.getChanges().get("roles"))
+                .isEqualTo(new UserAudit.FieldChange(List.of("DEVELOPER"), List.of("OWNER", "DEVELOPER")));
+        await().atMost(Duration.ofSeconds(5)).until(() -> trail.pending() == 0);
+    }
+
+    @Test
+    void createdAndNoOpChangesAreIgnored() {
+        trail(10);
+        UserChangedEvent.Snapshot s = snapshot("m.rossi@example.com", UserStatus.ACTIVE, EnumSet.of(Role.DEVELOPER));
+
+        trail.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null, s));
+        trail.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.UPDATED, s, s));
+
+        assertThat(trail.pending()).isZero();
+        assertThat(persisted).isEmpty();
+    }
+
+    @Test
+    void rowIsQueuedOnlyAfterCommitAndRolledBackChangesReleaseTheSlot() {
+        trail(10);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("admin", "x"));
+        TransactionSynchronizationManager.initSynchronization();
+        trail.onUserChanged(disabled());
+        trail.onUserChanged(disabled());
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(trail.pending()).isEqualTo(2);
+        synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(trail.pending()).isEqualTo(1);
+        assertThat(persisted).isEmpty();
+
+        synchronizations.get(1).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        await().atMost(Duration.ofSeconds(5)).until(() -> persisted.size() == 1 && trail.pending() == 0);
+        assertThat(persisted.get(0).getActor()).isEqualTo("admin");
+        assertThat(persisted.get(0).getChanges()).containsOnlyKeys("status");
+    }
+
+    @Test
+    void fullBufferRejectsChangesWith503UntilRowsAreWritten() throws Exception {
+        trail(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        willAnswer(inv -> {
+            unblock.await(5, TimeUnit.SECONDS);
+            return persisted.add(inv.getArgument(0));
+        }).given(entityManager).persist(any(UserAudit.class));
+
+        trail.onUserChanged(disabled());
+        assertThatThrownBy(() -> trail.onUserChanged(disabled()))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(registry.counter("ums.audit.rejected").count()).isEqualTo(1);
+
+        unblock.countDown();
+        await().atMost(Duration.ofSeconds(5)).until(() -> trail.pending() == 0);
+        trail.onUserChanged(disabled());
+        await().atMost(Duration.ofSeconds(5)).until(() -> persisted.size() == 2);
+    }
+
+    @Test
+    void failedWritesAreRetriedWithoutLosingRows() {
+        trail(10);
+        int[] calls = {0};
+        willAnswer(inv -> {
+            if (calls[0]++ == 0) throw new IllegalStateException("database non raggiungibile");
+            return persisted.add(inv.getArgument(0));
+        }).given(entityManager).persist(any(UserAudit.class));
+
+        trail.onUserChanged(disabled());
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> persisted.size() == 1 && trail.pending() == 0);
+        assertThat(registry.counter("ums.audit.write.failures").count()).isEqualTo(1);
+        assertThat(persisted.get(0).getActor()).isEqualTo(UserAuditTrail.SYSTEM_ACTOR);
+    }
+
+    @Test
+    void closeWritesRowsStillInTheBuffer() {
+        trail(10);
+        for (int i = 0; i < 5; i++) trail.onUserChanged(disabled());
+
+        trail.close();
+
+        assertThat(persisted).hasSize(5);
+        assertThat(trail.pending()).isZero();
+    }
+
+    private static UserChangedEvent disabled() {
+        UserChangedEvent.Snapshot before = snapshot("m.rossi@example.com", UserStatus.ACTIVE, EnumSet.of(Role.DEVELOPER));
+        UserChangedEvent.Snapshot after = new UserChangedEvent.Snapshot(before.id(), before.username(), before.email(),
+                before.codiceFiscale(), before.nome(), before.cognome(), UserStatus.DISABLED, before.roles(),
+                before.createdAt(), before.updatedAt());
+        return new UserChangedEvent(UserChangedEvent.Type.DISABLED, before, after);
+    }
+
+    private static UserChangedEvent.Snapshot snapshot(String email, UserStatus status, Set<Role> roles) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return new UserChangedEvent.Snapshot(new UUID(1, 1), "mrossi", email, "RSSMRA80A01H501U", "Mario", "Rossi",
+                status, roles, now, now);
+    }
+}
@@ -0,0 +1,186 @@
+package it.intesigroup.ums.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserChange;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class UserChangeStreamTest {
+
+    @Mock
+    private UserChangeRepository changeRepository;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private UserChangeStream stream;
+
+    @AfterEach
+    void close() {
+        if (stream != null) stream.close();
+    }
+
+    @Test
+    void pollOnce_sendsEachChangeToEverySubscriberWithItsMasking() {
+        given(changeRepository.findAfter(eq(0L), any(Limit.class))).willReturn(List.of(change(1, "CREATED"), change(2, "UPDATED")));
+        stream = newStream(100, Duration.ofSeconds(5));
+        RecordingEmitter owner = new RecordingEmitter();
+        RecordingEmitter reporter = new RecordingEmitter();
+        stream.register(owner, null, false);
+        stream.register(reporter, null, true);
+
+        assertThat(stream.pollOnce()).isEqualTo(2);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> owner.frames.size() == 2 && reporter.frames.size() == 2);
+        assertThat(owner.frames.get(0)).contains("id:1", "event:created", "m.rossi@example.com", "RSSMRA80A01H501U");
+        assertThat(owner.frames.get(1)).contains("id:2", "event:updated");
+        assertThat(reporter.frames.get(0)).contains("id:1", "m*****i@example.com", "RSS********01U")
+                .doesNotContain("m.rossi@example.com", "RSSMRA80A01H501U");
+        assertThat(registry.get("ums.stream.events").counter().count()).isEqualTo(4);
+    }
+
+    @Test
+    void register_replaysFromLogWhenLastEventIdIsOutsideTheWindow() {
+        given(changeRepository.findAfter(eq(0L), any(Limit.class)))
+                .willReturn(List.of(change(1, "CREATED"), change(2, "UPDATED"), change(3, "DISABLED")));
+        given(changeRepository.findFirstSeq()).willReturn(1L);
+        given(changeRepository.findRange(eq(1L), eq(3L), any(Limit.class)))
+                .willReturn(List.of(change(2, "UPDATED"), change(3, "DISABLED")));
+        // finestra di un solo evento: la ripresa da 1 deve leggere dal registro
+        stream = newStream(1, Duration.ofSeconds(5));
+        stream.pollOnce();
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.register(emitter, 1L, false);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.frames.size() == 2);
+        assertThat(emitter.frames.get(0)).contains("id:2", "event:updated");
+        assertThat(emitter.frames.get(1)).contains("id:3", "event:disabled");
+        assertThat(registry.get("ums.stream.log.reads").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void register_sendsResetWhenLastEventIdWasPurged() {
+        given(changeRepository.findAfter(eq(0L), any(Limit.class)))
+                .willReturn(List.of(change(1, "CREATED"), change(2, "UPDATED"), change(3, "DELETED")));
+        given(changeRepository.findFirstSeq()).willReturn(3L);
+        stream = newStream(100, Duration.ofSeconds(5));
+        stream.pollOnce();
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.register(emitter, 1L, false);
+        stream.register(new RecordingEmitter(), null, false);
+
+        assertThat(emitter.frames).hasSize(1);
+        assertThat(emitter.frames.get(0)).contains("event:reset");
+    }
+
+    @Test
+    void pollOnce_doesNotHoldBackChangesBehindAGap() {
+        given(changeRepository.findAfter(eq(0L), any(Limit.class))).willReturn(List.of(change(1, "CREATED"), change(3, "UPDATED")));
+        stream = newStream(100, Duration.ofHours(1));
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.register(emitter, null, false);
+
+        assertThat(stream.pollOnce()).isEqualTo(2);
+
+        assertThat(stream.head()).isEqualTo(3);
+        assertThat(stream.openGaps()).isEqualTo(1);
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.frames.size() == 2);
+        // seq 2 può ancora arrivare: la ripresa deve ripartire da prima del buco
+        assertThat(emitter.frames.get(1)).contains("id:1", "event:updated");
+    }
+
+    @Test
+    void pollOnce_sendsLateCommitsToSubscribersAlreadyPastThem() {
+        given(changeRepository.findAfter(eq(0L), any(Limit.class))).willReturn(List.of(change(1, "CREATED"), change(3, "UPDATED")));
+        given(changeRepository.findBySeqIn(List.of(2L))).willReturn(List.of(change(2, "DISABLED")));
+        stream = newStream(100, Duration.ofHours(1));
+        RecordingEmitter emitter = new RecordingEmitter();
+        stream.register(emitter, null, false);
+        stream.pollOnce();
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.frames.size() == 2);
+
+        assertThat(stream.pollOnce()).isEqualTo(1);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> emitter.frames.size() == 3);
+        assertThat(emitter.frames.get(2)).contains("id:2", "event:disabled");
+        assertThat(stream.openGaps()).isZero();
+        // un client che riprende da prima del buco trova la riga nella finestra
+        RecordingEmitter resumed = new RecordingEmitter();
+        given(changeRepository.findFirstSeq()).willReturn(1L);
+        stream.register(resumed, 1L, false);
+        await().atMost(Duration.ofSeconds(5)).until(() -> resumed.frames.size() == 2);
+        assertThat(resumed.frames.get(0)).contains("id:2", "event:disabled");
+        assertThat(resumed.frames.get(1)).contains("id:3", "event:updated");
+    }
+
+    @Test
+    void pollOnce_stopsLookingForMissingSeqAfterGapTimeout() {
+        given(changeRepository.findAfter(eq(0L), any(Limit.class))).willReturn(List.of(change(1, "CREATED"), change(3, "CREATED")));
+        stream = newStream(100, Duration.ZERO);
+        stream.pollOnce();
+
+        stream.pollOnce();
+
+        assertThat(stream.openGaps()).isZero();
+        verify(changeRepository, never()).findBySeqIn(any());
+    }
+
+    private UserChangeStream newStream(int windowSize, Duration gapTimeout) {
+        return new UserChangeStream(changeRepository, new ObjectMapper().findAndRegisterModules(), registry,
+                Duration.ofSeconds(1), 100, gapTimeout, windowSize, 2, 100, Duration.ofSeconds(15),
+                Duration.ofMinutes(30), Duration.ofDays(1));
+    }
+
+    private static UserChange change(long seq, String type) {
+        UserChange c = new UserChange();
+        c.setSeq(seq);
+        c.setUserId(new UUID(0, 1));
+        c.setChangeType(type);
+        c.setUsername("mrossi");
+        c.setEmail("m.rossi@example.com");
+        c.setCodiceFiscale("RSSMRA80A01H501U");
+        c.setNome("Mario");
+        c.setCognome("Rossi");
+        c.setStatus(UserStatus.ACTIVE);
+        c.setRolesMask(Role.toMask(Set.of(Role.DEVELOPER)));
+        c.setCreatedAt(OffsetDateTime.now());
+        c.setUpdatedAt(OffsetDateTime.now());
+        return c;
+    }
+
+    // raccoglie il testo di ogni evento così come verrebbe scritto sulla risposta
+    static class RecordingEmitter extends SseEmitter {
+        final List<String> frames = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            frames.add(builder.build().stream().map(d -> String.valueOf(d.getData())).collect(Collectors.joining()));
+        }
+    }
+}
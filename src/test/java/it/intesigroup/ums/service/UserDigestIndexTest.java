@@ -0,0 +1,174 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.domain.UserChange;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.exception.ConflictException;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import it.intesigroup.ums.repository.UserChangeRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class UserDigestIndexTest {
+    private static final OffsetDateTime UPDATED = OffsetDateTime.parse("2024-05-01T10:15:30.123456Z");
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserChangeRepository changeRepository;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Object[]> rows = new ArrayList<>();
+    private UserDigestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 1; i <= 10; i++) rows.add(row(i, UPDATED));
+        // il mock applica gli stessi filtri della query: [from, to), id > after, ordinati per id
+        lenient().when(userRepository.findDigestRows(any(), any(), any(), any(Limit.class))).thenAnswer(inv -> {
+            UUID from = inv.getArgument(0), after = inv.getArgument(1), to = inv.getArgument(2);
+            return rows.stream()
+                    .filter(r -> UserDigestIndex.compare((UUID) r[0], from) >= 0
+                            && UserDigestIndex.compare((UUID) r[0], after) > 0
+                            && UserDigestIndex.compare((UUID) r[0], to) < 0)
+                    .limit(((Limit) inv.getArgument(3)).max())
+                    .toList();
+        });
+        index = new UserDigestIndex(userRepository, changeRepository, registry, Duration.ofSeconds(1),
+                Duration.ofHours(1), 3, 100, 1_000);
+    }
+
+    @AfterEach
+    void close() {
+        index.close();
+    }
+
+    @Test
+    void node_isUnavailableBeforeFirstBuild() {
+        assertThatThrownBy(() -> index.node(null, null, 16, null)).isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    void node_digestIsSumOfEntryHashes() {
+        given(userRepository.count()).willReturn(10L);
+        index.rebuild();
+
+        UserDigestIndex.DigestNode root = index.node(null, null, 2, null);
+
+        // 10 utenti, 3 per foglia: [1..3] [4..6] [7..9] [10]
+        assertThat(root.to()).isEqualTo(4);
+        assertThat(root.count()).isEqualTo(10);
+        assertThat(root.children()).hasSize(2);
+        assertThat(root.children().get(1).fromId()).isEqualTo(new UUID(0, 7));
+        assertThat(root.digest()).isEqualTo(sumOf(index.entries(0, 4, root.version())));
+        UserDigestIndex.DigestNode right = root.children().get(1);
+        assertThat(right.digest()).isEqualTo(sumOf(index.entries(right.from(), right.to(), root.version())));
+    }
+
+    @Test
+    void onUserChanged_refreshesOnlyTheDirtyLeaf() throws Exception {
+        given(userRepository.count()).willReturn(10L);
+        index.rebuild();
+        String before = index.node(null, null, 4, null).children().get(1).digest();
+
+        rows.set(4, row(5, UPDATED.plusSeconds(1)));
+        index.onUserChanged(event(new UUID(0, 5)));
+        UserDigestIndex.DigestNode root = index.node(null, null, 4, null);
+
+        assertThat(root.children().get(1).digest()).isNotEqualTo(before)
+                .isEqualTo(sumOf(index.entries(1, 2, null)));
+        assertThat(root.digest()).isEqualTo(sumOf(index.entries(0, 4, null)));
+        assertThat(registry.get("ums.digest.leaf.refreshes").counter().count()).isEqualTo(1);
+        assertThat(UserDigestIndex.hash(MessageDigest.getInstance("SHA-256"), rows.get(4)))
+                .isEqualTo(HexFormat.fromHexDigitsToLong(index.entries(1, 2, null).get(1).hash()));
+    }
+
+    @Test
+    void pollChanges_refreshesLeavesChangedByOtherInstances() {
+        given(userRepository.count()).willReturn(10L);
+        given(changeRepository.findLastSeq()).willReturn(7L);
+        index.pollChanges();
+        index.rebuild();
+        String before = index.node(null, null, 4, null).children().get(2).digest();
+
+        // seq 9 non ancora visibile: la modifica di 8 arriva dopo quella di 2
+        rows.set(1, row(2, UPDATED.plusSeconds(1)));
+        rows.set(7, row(8, UPDATED.plusSeconds(1)));
+        given(changeRepository.findAfter(eq(7L), any(Limit.class))).willReturn(List.of(change(8, 2), change(10, 2)));
+        index.pollChanges();
+        assertThat(index.node(null, null, 4, null).children().get(0).digest())
+                .isEqualTo(sumOf(index.entries(0, 1, null)));
+
+        given(changeRepository.findBySeqIn(List.of(9L))).willReturn(List.of(change(9, 8)));
+        index.pollChanges();
+        assertThat(index.node(null, null, 4, null).children().get(2).digest()).isNotEqualTo(before)
+                .isEqualTo(sumOf(index.entries(2, 3, null)));
+    }
+
+    @Test
+    void version_identifiesLeafBoundaries() {
+        given(userRepository.count()).willReturn(10L);
+        index.rebuild();
+        String version = index.node(null, null, 16, null).version();
+        index.rebuild();
+        // stessi dati, stessi confini: la versione non cambia
+        assertThat(index.node(0, 1, 16, version).count()).isEqualTo(3);
+
+        // senza l'utente 2 le foglie diventano [1, 3, 4] [5..7] [8..10]
+        rows.remove(1);
+        given(userRepository.count()).willReturn(9L);
+        index.rebuild();
+
+        assertThatThrownBy(() -> index.node(0, 1, 16, version)).isInstanceOf(ConflictException.class);
+        String rebuilt = index.node(null, null, 16, null).version();
+        assertThat(rebuilt).hasSize(16).isNotEqualTo(version);
+        assertThat(index.node(0, 1, 16, rebuilt).count()).isEqualTo(3);
+    }
+
+    private static String sumOf(List<UserDigestIndex.DigestEntry> entries) {
+        long sum = 0;
+        for (UserDigestIndex.DigestEntry e : entries) sum += HexFormat.fromHexDigitsToLong(e.hash());
+        return HexFormat.of().toHexDigits(sum);
+    }
+
+    private static Object[] row(int n, OffsetDateTime updatedAt) {
+        return new Object[]{new UUID(0, n), updatedAt, UserStatus.ACTIVE, 8};
+    }
+
+    private static UserChange change(long seq, int user) {
+        UserChange c = new UserChange();
+        c.setSeq(seq);
+        c.setUserId(new UUID(0, user));
+        return c;
+    }
+
+    private static UserChangedEvent event(UUID id) {
+        UserChangedEvent.Snapshot s = new UserChangedEvent.Snapshot(id, "user", "user@example.com",
+                "RSSMRA80A01H501U", "Mario", "Rossi", UserStatus.ACTIVE, Set.of(), UPDATED, UPDATED);
+        return new UserChangedEvent(UserChangedEvent.Type.UPDATED, s, s);
+    }
+}
@@ -1,10 +1,12 @@
 package it.intesigroup.ums.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.intesigroup.ums.domain.Role;
 import it.intesigroup.ums.domain.User;
 import it.intesigroup.ums.domain.UserStatus;
 import it.intesigroup.ums.dto.CreateUserRequest;
 import it.intesigroup.ums.dto.UpdateUserRequest;
+import it.intesigroup.ums.exception.BadRequestException;
 import it.intesigroup.ums.exception.ConflictException;
 import it.intesigroup.ums.exception.NotFoundException;
 import it.intesigroup.ums.repository.UserRepository;
@@ -12,14 +14,20 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
 
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -41,7 +49,9 @@ class UserServiceTest {
     @Mock
     private AmqpTemplate amqpTemplate;
 
-    @InjectMocks
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private UserService userService;
 
     private final String exchange = "ums.user.events";
@@ -49,20 +59,39 @@ class UserServiceTest {
 
     @BeforeEach
     void init() {
-        userService = new UserService(userRepository, amqpTemplate, exchange, routingKey);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // filtro non caricato: ogni controllo di unicità arriva al repository
+        NaturalKeyFilter naturalKeyFilter = new NaturalKeyFilter(userRepository, null, meterRegistry, true,
+                1_000, 0.01, DataSize.ofMegabytes(1), Duration.ofSeconds(1), Duration.ofMinutes(10), Duration.ofMinutes(10));
+        userService = new UserService(userRepository, naturalKeyFilter, amqpTemplate, eventPublisher, meterRegistry,
+                Duration.ofSeconds(1), exchange, routingKey);
     }
 
     @Test
-    void listUsers_returnsPageFromRepository() {
+    void listUsers_returnsPageFromRepositoryOrderedById() {
         PageRequest pageable = PageRequest.of(0, 10);
+        PageRequest byId = PageRequest.of(0, 10, Sort.by("id"));
         User u = new User();
-        Page<User> page = new PageImpl<>(List.of(u), pageable, 1);
-        given(userRepository.findAllActiveOrDisabled(pageable)).willReturn(page);
+        Page<User> page = new PageImpl<>(List.of(u), byId, 1);
+        given(userRepository.findAllActiveOrDisabled(byId)).willReturn(page);
 
         Page<User> result = userService.listUsers(pageable);
 
         assertThat(result.getContent()).containsExactly(u);
-        verify(userRepository).findAllActiveOrDisabled(pageable);
+        verify(userRepository).findAllActiveOrDisabled(byId);
+    }
+
+    @Test
+    void listUsers_appendsIdToRequestedSortAndRejectsUnknownFields() {
+        PageRequest byCognome = PageRequest.of(1, 20, Sort.by(Sort.Direction.DESC, "cognome"));
+        PageRequest expected = PageRequest.of(1, 20, Sort.by(Sort.Order.desc("cognome"), Sort.Order.asc("id")));
+        given(userRepository.findAllActiveOrDisabled(expected)).willReturn(Page.empty(expected));
+
+        userService.listUsers(byCognome);
+
+        verify(userRepository).findAllActiveOrDisabled(expected);
+        assertThatThrownBy(() -> userService.listUsers(PageRequest.of(0, 20, Sort.by("roles"))))
+                .isInstanceOf(BadRequestException.class);
     }
 
     @Test
@@ -89,6 +118,23 @@ class UserServiceTest {
                 .isInstanceOf(NotFoundException.class);
     }
 
+    @Test
+    void getUsers_skipsDeletedUsers() {
+        UUID activeId = UUID.randomUUID();
+        UUID deletedId = UUID.randomUUID();
+        User active = new User();
+        ReflectionTestUtils.setField(active, "id", activeId);
+        active.setStatus(UserStatus.ACTIVE);
+        User deleted = new User();
+        ReflectionTestUtils.setField(deleted, "id", deletedId);
+        deleted.setStatus(UserStatus.DELETED);
+        given(userRepository.findAllById(any())).willReturn(List.of(active, deleted));
+
+        List<User> result = userService.getUsers(List.of(activeId, deletedId));
+
+        assertThat(result).containsExactly(active);
+    }
+
     @Test
     void createUser_persistsUserAndPublishesEvent() {
         CreateUserRequest req = new CreateUserRequest();
@@ -99,19 +145,17 @@ class UserServiceTest {
         req.setCognome("Rossi");
         req.setRoles(Set.of(Role.DEVELOPER));
 
-        given(userRepository.findByEmail("M.ROSSI@example.com")).willReturn(Optional.empty());
-        given(userRepository.findByCodiceFiscale("rssmra80a01h501u")).willReturn(Optional.empty());
 
         User saved = new User();
         //saved.setId(UUID.randomUUID());
         saved.setEmail("m.rossi@example.com");
         saved.setRoles(Set.of(Role.DEVELOPER));
-        given(userRepository.save(any(User.class))).willReturn(saved);
+        given(userRepository.saveAndFlush(any(User.class))).willReturn(saved);
 
         User result = userService.createUser(req);
 
         ArgumentCaptor<User> userCaptor = ArgumentCaptor.forClass(User.class);
-        verify(userRepository).save(userCaptor.capture());
+        verify(userRepository).saveAndFlush(userCaptor.capture());
         User toSave = userCaptor.getValue();
         assertThat(toSave.getEmail()).isEqualTo("m.rossi@example.com");
         assertThat(toSave.getCodiceFiscale()).isEqualTo("RSSMRA80A01H501U");
@@ -119,6 +163,9 @@ class UserServiceTest {
         assertThat(toSave.getRoles()).containsExactly(Role.DEVELOPER);
 
         assertThat(result).isSameAs(saved);
+        // il controllo di unicità usa i valori normalizzati, come gli indici funzionali
+        verify(userRepository).existsByEmail("m.rossi@example.com");
+        verify(userRepository).existsByCodiceFiscale("RSSMRA80A01H501U");
         verify(amqpTemplate).convertAndSend((String) eq(exchange), (String) eq(routingKey), (Object) any());
     }
 
@@ -132,14 +179,12 @@ class UserServiceTest {
         req.setCognome("Rossi");
         req.setRoles(Set.of(Role.DEVELOPER));
 
-        given(userRepository.findByEmail("m.rossi@example.com")).willReturn(Optional.empty());
-        given(userRepository.findByCodiceFiscale("RSSMRA80A01H501U")).willReturn(Optional.empty());
 
         User saved = new User();
         //saved.setId(UUID.randomUUID());
         saved.setEmail("m.rossi@example.com");
         saved.setRoles(Set.of(Role.DEVELOPER));
-        given(userRepository.save(any(User.class))).willReturn(saved);
+        given(userRepository.saveAndFlush(any(User.class))).willReturn(saved);
         doThrow(new RuntimeException("rabbit error"))
                 .when(amqpTemplate).convertAndSend(anyString(), anyString(), (Object) any());
 
@@ -156,8 +201,7 @@ class UserServiceTest {
         req.setCodiceFiscale("RSSMRA80A01H501U");
         req.setRoles(Set.of(Role.DEVELOPER));
 
-        given(userRepository.findByEmail("m.rossi@example.com"))
-                .willReturn(Optional.of(new User()));
+        given(userRepository.existsByEmail("m.rossi@example.com")).willReturn(true);
 
         assertThatThrownBy(() -> userService.createUser(req))
                 .isInstanceOf(ConflictException.class);
@@ -170,15 +214,29 @@ class UserServiceTest {
         req.setCodiceFiscale("RSSMRA80A01H501U");
         req.setRoles(Set.of(Role.DEVELOPER));
 
-        given(userRepository.findByEmail("m.rossi@example.com"))
-                .willReturn(Optional.empty());
-        given(userRepository.findByCodiceFiscale("RSSMRA80A01H501U"))
-                .willReturn(Optional.of(new User()));
+        given(userRepository.existsByCodiceFiscale("RSSMRA80A01H501U")).willReturn(true);
 
         assertThatThrownBy(() -> userService.createUser(req))
                 .isInstanceOf(ConflictException.class);
     }
 
+    @Test
+    void createUser_mapsUniqueViolationToConflictBeforePublishing() {
+        CreateUserRequest req = new CreateUserRequest();
+        req.setEmail("m.rossi@example.com");
+        req.setCodiceFiscale("RSSMRA80A01H501U");
+        req.setRoles(Set.of(Role.DEVELOPER));
+
+        // chiave creata da un'altra istanza dopo il controllo: decide l'indice unique
+        given(userRepository.saveAndFlush(any(User.class))).willThrow(new DataIntegrityViolationException("insert",
+                new SQLException("duplicate key value violates unique constraint \"uk_users_email_lower\"")));
+
+        assertThatThrownBy(() -> userService.createUser(req))
+                .isInstanceOf(ConflictException.class)
+                .hasMessage("Email già utilizzata");
+        verifyNoInteractions(eventPublisher, amqpTemplate);
+    }
+
     @Test
     void updateUser_updatesFieldsAndChecksCodiceFiscaleConflict() {
         UUID id = UUID.randomUUID();
@@ -191,8 +249,7 @@ class UserServiceTest {
         existing.setStatus(UserStatus.ACTIVE);
 
         given(userRepository.findById(id)).willReturn(Optional.of(existing));
-        given(userRepository.findByCodiceFiscale("NEWCF")).willReturn(Optional.empty());
-        given(userRepository.save(any(User.class))).willAnswer(inv -> inv.getArgument(0));
+        given(userRepository.saveAndFlush(any(User.class))).willAnswer(inv -> inv.getArgument(0));
 
         UpdateUserRequest req = new UpdateUserRequest();
         req.setCodiceFiscale("newcf");
@@ -208,7 +265,30 @@ class UserServiceTest {
         assertThat(updated.getNome()).isEqualTo("Mario");
         assertThat(updated.getCognome()).isEqualTo("Rossi");
         assertThat(updated.getRoles()).containsExactly(Role.DEVELOPER);
-        verify(userRepository).save(existing);
+        verify(userRepository).saveAndFlush(existing);
+    }
+
+    @Test
+    void updateUser_publishesChangeEventWithPreviousAndNewRoles() {
+        UUID id = UUID.randomUUID();
+        User existing = new User();
+        existing.setCodiceFiscale("OLD");
+        existing.setRoles(Set.of(Role.OPERATOR));
+        existing.setStatus(UserStatus.ACTIVE);
+        given(userRepository.findById(id)).willReturn(Optional.of(existing));
+        given(userRepository.saveAndFlush(any(User.class))).willAnswer(inv -> inv.getArgument(0));
+
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setRoles(Set.of(Role.DEVELOPER));
+
+        userService.updateUser(id, req);
+
+        ArgumentCaptor<UserChangedEvent> eventCaptor = ArgumentCaptor.forClass(UserChangedEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        UserChangedEvent event = eventCaptor.getValue();
+        assertThat(event.type()).isEqualTo(UserChangedEvent.Type.UPDATED);
+        assertThat(event.before().roles()).containsExactly(Role.OPERATOR);
+        assertThat(event.after().roles()).containsExactly(Role.DEVELOPER);
     }
 
     @Test
@@ -218,8 +298,7 @@ class UserServiceTest {
         existing.setCodiceFiscale("OLD");
         given(userRepository.findById(id)).willReturn(Optional.of(existing));
 
-        given(userRepository.findByCodiceFiscale("NEWCF"))
-                .willReturn(Optional.of(new User()));
+        given(userRepository.existsByCodiceFiscale("NEWCF")).willReturn(true);
 
         UpdateUserRequest req = new UpdateUserRequest();
         req.setCodiceFiscale("newcf");
@@ -238,7 +317,7 @@ class UserServiceTest {
         userService.disableUser(id);
 
         assertThat(existing.getStatus()).isEqualTo(UserStatus.DISABLED);
-        verify(userRepository).save(existing);
+        verify(userRepository).saveAndFlush(existing);
     }
 
     @Test
@@ -251,7 +330,7 @@ class UserServiceTest {
         userService.softDeleteUser(id);
 
         assertThat(existing.getStatus()).isEqualTo(UserStatus.DELETED);
-        verify(userRepository).save(existing);
+        verify(userRepository).saveAndFlush(existing);
     }
 }
 
@@ -0,0 +1,193 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.SnapshotJob;
+import it.intesigroup.ums.domain.SnapshotStatus;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.repository.SnapshotJobRepository;
+import it.intesigroup.ums.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class UserSnapshotPublisherTest {
+    private static final UUID JOB = new UUID(0, 42);
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private SnapshotJobRepository jobRepository;
+
+    @Mock
+    private RabbitOperations rabbit;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private UserSnapshotPublisher publisher;
+
+    @AfterEach
+    void close() {
+        publisher.close();
+    }
+
+    @Test
+    void run_publishesBatchesAndAdvancesCursorAfterConfirms() {
+        User a = user(1), b = user(2), c = user(3);
+        givenClaimedJob(null);
+        given(userRepository.findSnapshotBatch(any(), any(), any(), any(), anyBoolean(), any(Limit.class)))
+                .willReturn(List.of(a, b))
+                .willReturn(List.of(c));
+        given(jobRepository.advance(eq(JOB), any(), anyLong(), any())).willReturn(1);
+        brokerConfirms(true);
+
+        publisher = newPublisher();
+        publisher.run(JOB);
+
+        verify(jobRepository).advance(eq(JOB), eq(b.getId()), eq(2L), any());
+        verify(jobRepository).advance(eq(JOB), eq(c.getId()), eq(1L), any());
+        // tre utenti e il messaggio di chiusura
+        verify(rabbit, times(4)).convertAndSend(eq("ums.user.events"), eq("bootstrap.billing"), any(Object.class),
+                any(CorrelationData.class));
+        verify(jobRepository).finish(eq(JOB), eq(SnapshotStatus.COMPLETED), isNull(), any());
+    }
+
+    @Test
+    void run_nackLeavesCursorOnLastConfirmedBatch() {
+        givenClaimedJob(null);
+        given(userRepository.findSnapshotBatch(any(), any(), any(), any(), anyBoolean(), any(Limit.class)))
+                .willReturn(List.of(user(1), user(2)));
+        brokerConfirms(false);
+
+        publisher = newPublisher();
+        publisher.run(JOB);
+
+        verify(jobRepository, never()).advance(any(), any(), anyLong(), any());
+        verify(jobRepository).finish(eq(JOB), eq(SnapshotStatus.FAILED), anyString(), any());
+    }
+
+    @Test
+    void run_unroutableMessageFailsTheJobEvenIfConfirmed() {
+        givenClaimedJob(null);
+        given(userRepository.findSnapshotBatch(any(), any(), any(), any(), anyBoolean(), any(Limit.class)))
+                .willReturn(List.of(user(1), user(2)));
+        willAnswer(inv -> {
+            CorrelationData cd = inv.getArgument(3);
+            // come il RabbitTemplate: il messaggio restituito è impostato prima della conferma
+            cd.setReturned(new ReturnedMessage(new Message(new byte[0]), 312, "NO_ROUTE", "ums.user.events",
+                    "bootstrap.billing"));
+            cd.getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).given(rabbit).convertAndSend(anyString(), anyString(), any(Object.class), any(CorrelationData.class));
+
+        publisher = newPublisher();
+        publisher.run(JOB);
+
+        verify(jobRepository, never()).advance(any(), any(), anyLong(), any());
+        ArgumentCaptor<String> error = ArgumentCaptor.forClass(String.class);
+        verify(jobRepository).finish(eq(JOB), eq(SnapshotStatus.FAILED), error.capture(), any());
+        assertThat(error.getValue()).contains("NO_ROUTE", "bootstrap.billing");
+    }
+
+    @Test
+    void run_resumesAfterStoredCursor() {
+        UUID cursor = new UUID(0, 10);
+        givenClaimedJob(cursor);
+        given(userRepository.findSnapshotBatch(eq(cursor), any(), any(), any(), anyBoolean(), any(Limit.class)))
+                .willReturn(List.of());
+        brokerConfirms(true);
+
+        publisher = newPublisher();
+        publisher.run(JOB);
+
+        verify(userRepository).findSnapshotBatch(eq(cursor), any(), any(), any(), anyBoolean(), any(Limit.class));
+        verify(jobRepository).finish(eq(JOB), eq(SnapshotStatus.COMPLETED), isNull(), any());
+    }
+
+    @Test
+    void run_stopsWhenJobWasCancelled() {
+        givenClaimedJob(null);
+        given(userRepository.findSnapshotBatch(any(), any(), any(), any(), anyBoolean(), any(Limit.class)))
+                .willReturn(List.of(user(1), user(2)));
+        given(jobRepository.advance(eq(JOB), any(), anyLong(), any())).willReturn(0);
+        brokerConfirms(true);
+
+        publisher = newPublisher();
+        publisher.run(JOB);
+
+        verify(userRepository, times(1)).findSnapshotBatch(any(), any(), any(), any(), anyBoolean(), any(Limit.class));
+        verify(jobRepository, never()).finish(any(), any(), any(), any());
+    }
+
+    private void givenClaimedJob(UUID cursor) {
+        SnapshotJob job = new SnapshotJob();
+        ReflectionTestUtils.setField(job, "id", JOB);
+        job.setRoutingKey("bootstrap.billing");
+        job.setRate(1_000_000);
+        job.setCursor(cursor);
+        job.setStatus(SnapshotStatus.RUNNING);
+        given(jobRepository.claim(eq(JOB), any(), any())).willReturn(1);
+        given(jobRepository.findById(JOB)).willReturn(Optional.of(job));
+    }
+
+    private void brokerConfirms(boolean ack) {
+        willAnswer(inv -> {
+            CorrelationData cd = inv.getArgument(3);
+            cd.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "queue full"));
+            return null;
+        }).given(rabbit).convertAndSend(anyString(), anyString(), any(Object.class), any(CorrelationData.class));
+    }
+
+    private UserSnapshotPublisher newPublisher() {
+        return new UserSnapshotPublisher(userRepository, jobRepository, rabbit,
+                new TransactionTemplate(transactionManager), new SimpleMeterRegistry(), "ums.user.events",
+                2, 1_000, 1_000_000, Duration.ofSeconds(5), Duration.ofMinutes(5));
+    }
+
+    private static User user(int n) {
+        User u = new User();
+        ReflectionTestUtils.setField(u, "id", new UUID(0, n));
+        u.setUsername("user" + n);
+        u.setEmail("user" + n + "@example.com");
+        u.setCodiceFiscale("RSSMRA80A01H501U");
+        u.setNome("Mario");
+        u.setCognome("Rossi");
+        u.setRoles(Set.of(Role.DEVELOPER));
+        ReflectionTestUtils.setField(u, "updatedAt", OffsetDateTime.now());
+        return u;
+    }
+}
@@ -0,0 +1,193 @@
+package it.intesigroup.ums.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.exception.ServiceUnavailableException;
+import it.intesigroup.ums.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class UserStatsIndexTest {
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Object[]> rows = new ArrayList<>();
+    private UserStatsIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // 3 attivi OWNER+REPORTER creati oggi, 2 disabilitati DEVELOPER ieri, 1 cancellato oggi
+        rows.add(row(UserStatus.ACTIVE, EnumSet.of(Role.OWNER, Role.REPORTER), TODAY, 3));
+        rows.add(row(UserStatus.DISABLED, EnumSet.of(Role.DEVELOPER), TODAY.minusDays(1), 2));
+        rows.add(row(UserStatus.DELETED, EnumSet.of(Role.OWNER), TODAY, 1));
+        index = new UserStatsIndex(userRepository, registry, Duration.ofMinutes(10), 7);
+    }
+
+    @AfterEach
+    void close() {
+        index.close();
+    }
+
+    @Test
+    void unavailableBeforeFirstReconcile() {
+        assertThatThrownBy(() -> index.stats()).isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    void reconcileAggregatesRowsAndSkipsDeletedForRolesAndDays() {
+        given(userRepository.countByStatusRolesAndCreatedDay()).willReturn(rows);
+
+        assertThat(index.reconcile()).isTrue();
+
+        UserStatsIndex.UserStats stats = index.stats();
+        // i cancellati non entrano nel totale
+        assertThat(stats.total()).isEqualTo(5);
+        assertThat(stats.byStatus()).containsEntry(UserStatus.ACTIVE, 3L)
+                .containsEntry(UserStatus.DISABLED, 2L).containsEntry(UserStatus.DELETED, 1L);
+        assertThat(stats.byRole()).containsEntry(Role.OWNER, 3L).containsEntry(Role.REPORTER, 3L)
+                .containsEntry(Role.DEVELOPER, 2L).containsEntry(Role.OPERATOR, 0L);
+        assertThat(stats.byCreatedDay()).hasSize(7).containsEntry(TODAY, 3L)
+                .containsEntry(TODAY.minusDays(1), 2L).containsEntry(TODAY.minusDays(6), 0L);
+        assertThat(stats.byCreatedDay().lastKey()).isEqualTo(TODAY);
+        assertThat(stats.reconciledAt()).isNotNull();
+    }
+
+    @Test
+    void eventsUpdateCountersIncrementally() {
+        given(userRepository.countByStatusRolesAndCreatedDay()).willReturn(rows);
+        index.reconcile();
+
+        UserChangedEvent.Snapshot created = snapshot(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR));
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null, created));
+        assertThat(index.stats().byStatus()).containsEntry(UserStatus.ACTIVE, 4L);
+        assertThat(index.stats().byRole()).containsEntry(Role.OPERATOR, 1L);
+        assertThat(index.stats().byCreatedDay()).containsEntry(TODAY, 4L);
+
+        UserChangedEvent.Snapshot deleted = snapshot(UserStatus.DELETED, EnumSet.of(Role.OPERATOR));
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.DELETED, created, deleted));
+        UserStatsIndex.UserStats stats = index.stats();
+        assertThat(stats.total()).isEqualTo(5);
+        assertThat(stats.byStatus()).containsEntry(UserStatus.ACTIVE, 3L).containsEntry(UserStatus.DELETED, 2L);
+        assertThat(stats.byRole()).containsEntry(Role.OPERATOR, 0L);
+        assertThat(stats.byCreatedDay()).containsEntry(TODAY, 3L);
+    }
+
+    @Test
+    void reconcileRetriesWhenAnEventArrivesDuringTheQuery() {
+        UserChangedEvent.Snapshot created = snapshot(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR));
+        List<Object[]> withCreated = new ArrayList<>(rows);
+        withCreated.add(row(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR), TODAY, 1));
+        given(userRepository.countByStatusRolesAndCreatedDay())
+                .willAnswer(inv -> {
+                    // l'evento arriva mentre la query è in corso: il primo risultato non è affidabile
+                    index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null, created));
+                    return rows;
+                })
+                .willReturn(withCreated);
+
+        assertThat(index.reconcile()).isTrue();
+
+        assertThat(index.stats().byStatus()).containsEntry(UserStatus.ACTIVE, 4L);
+        assertThat(index.stats().byRole()).containsEntry(Role.OPERATOR, 1L);
+    }
+
+    @Test
+    void changeCommittedBeforeTheQueryIsNotAppliedTwice() throws Exception {
+        given(userRepository.countByStatusRolesAndCreatedDay()).willReturn(rows);
+        index.reconcile();
+        UserChangedEvent.Snapshot created = snapshot(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR));
+        List<Object[]> withCreated = new ArrayList<>(rows);
+        withCreated.add(row(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR), TODAY, 1));
+        given(userRepository.countByStatusRolesAndCreatedDay()).willReturn(withCreated);
+
+        // evento pubblicato nella transazione; il commit rende la riga visibile prima di afterCompletion
+        TransactionSynchronizationManager.initSynchronization();
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null, created));
+        TransactionSynchronization sync = TransactionSynchronizationManager.getSynchronizations().get(0);
+        TransactionSynchronizationManager.clearSynchronization();
+        Thread completion = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+                return;
+            }
+            sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        });
+        completion.start();
+
+        assertThat(index.reconcile()).isTrue();
+        completion.join();
+
+        assertThat(index.stats().byStatus()).containsEntry(UserStatus.ACTIVE, 4L);
+        assertThat(index.stats().byRole()).containsEntry(Role.OPERATOR, 1L);
+    }
+
+    @Test
+    void rolledBackChangeIsNotApplied() {
+        given(userRepository.countByStatusRolesAndCreatedDay()).willReturn(rows);
+        index.reconcile();
+
+        TransactionSynchronizationManager.initSynchronization();
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, null,
+                snapshot(UserStatus.ACTIVE, EnumSet.of(Role.OPERATOR))));
+        TransactionSynchronizationManager.getSynchronizations().get(0)
+                .afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(index.stats().byStatus()).containsEntry(UserStatus.ACTIVE, 3L);
+    }
+
+    @Test
+    void reconcileCorrectsDriftFromChangesWithoutEvents() {
+        given(userRepository.countByStatusRolesAndCreatedDay()).willReturn(rows);
+        index.reconcile();
+        // un'altra istanza ha disabilitato un utente attivo
+        List<Object[]> changed = List.of(
+                row(UserStatus.ACTIVE, EnumSet.of(Role.OWNER, Role.REPORTER), TODAY, 2),
+                row(UserStatus.DISABLED, EnumSet.of(Role.OWNER, Role.REPORTER), TODAY, 1),
+                rows.get(1), rows.get(2));
+        given(userRepository.countByStatusRolesAndCreatedDay()).willReturn(changed);
+
+        assertThat(index.reconcile()).isTrue();
+
+        assertThat(index.stats().byStatus()).containsEntry(UserStatus.ACTIVE, 2L).containsEntry(UserStatus.DISABLED, 3L);
+        assertThat(registry.counter("ums.stats.reconcile.drift").count()).isEqualTo(1.0);
+        // un secondo giro senza differenze non conta altra deriva
+        index.reconcile();
+        assertThat(registry.counter("ums.stats.reconcile.drift").count()).isEqualTo(1.0);
+    }
+
+    private static Object[] row(UserStatus status, Set<Role> roles, LocalDate day, long count) {
+        return new Object[]{status, (int) Role.toMask(roles), day, count};
+    }
+
+    private static UserChangedEvent.Snapshot snapshot(UserStatus status, Set<Role> roles) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return new UserChangedEvent.Snapshot(UUID.fromString("00000000-0000-7000-8000-000000000001"), "mrossi",
+                "m.rossi@example.com", "RSSMRA80A01H501U", "Mario", "Rossi", status, roles, now, now);
+    }
+}
@@ -0,0 +1,179 @@
+package it.intesigroup.ums.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@WithMockUser(roles = {"OWNER","MAINTAINER"})
+class RoleApiIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private AmqpTemplate amqpTemplate;
+
+    @BeforeEach
+    void setup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void roleMembers_arePagedWithKeysetCursor() throws Exception {
+        createUser("mrossi", "m.rossi@example.com", "RSSMRA80A01H501U", "MAINTAINER");
+        createUser("gverdi", "g.verdi@example.com", "VRDGPP80A01H501U", "MAINTAINER");
+        createUser("lbianchi", "l.bianchi@example.com", "BNCLGU80A01H501A", "DEVELOPER");
+
+        String first = mockMvc.perform(get("/api/roles/MAINTAINER/users?size=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty())
+                .andReturn().getResponse().getContentAsString();
+        String cursor = objectMapper.readTree(first).get("nextCursor").asText();
+
+        mockMvc.perform(get("/api/roles/MAINTAINER/users?size=1&after={after}", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void roleMembers_withUnknownRole_returns400() throws Exception {
+        mockMvc.perform(get("/api/roles/ADMIN/users"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void summary_isUpdatedOnCreateUpdateAndDelete() throws Exception {
+        long owners = summary().get("OWNER").asLong();
+        long reporters = summary().get("REPORTER").asLong();
+
+        String id = createUser("mrossi", "m.rossi@example.com", "RSSMRA80A01H501U", "OWNER");
+        assertThat(summary().get("OWNER").asLong()).isEqualTo(owners + 1);
+
+        mockMvc.perform(put("/api/users/{id}", id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                            {
+                              "username": "mrossi",
+                              "codiceFiscale": "RSSMRA80A01H501U",
+                              "nome": "Mario",
+                              "cognome": "Rossi",
+                              "roles": ["REPORTER"]
+                            }
+                            """))
+                .andExpect(status().isOk());
+        JsonNode afterUpdate = summary();
+        assertThat(afterUpdate.get("OWNER").asLong()).isEqualTo(owners);
+        assertThat(afterUpdate.get("REPORTER").asLong()).isEqualTo(reporters + 1);
+
+        mockMvc.perform(delete("/api/users/{id}", id))
+                .andExpect(status().isNoContent());
+        assertThat(summary().get("REPORTER").asLong()).isEqualTo(reporters);
+    }
+
+    @Test
+    void rolesMaskAndUserRolesStayAlignedOnCreateAndUpdate() throws Exception {
+        String id = createUser("mrossi", "m.rossi@example.com", "RSSMRA80A01H501U", "OWNER");
+        assertThat(storedRoles(id)).isEqualTo(EnumSet.of(Role.OWNER));
+
+        mockMvc.perform(put("/api/users/{id}", id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                            {
+                              "username": "mrossi",
+                              "codiceFiscale": "RSSMRA80A01H501U",
+                              "nome": "Mario",
+                              "cognome": "Rossi",
+                              "roles": ["DEVELOPER", "REPORTER"]
+                            }
+                            """))
+                .andExpect(status().isOk());
+        assertThat(storedRoles(id)).isEqualTo(EnumSet.of(Role.DEVELOPER, Role.REPORTER));
+
+        // i membri del ruolo sono letti da user_roles
+        mockMvc.perform(get("/api/roles/REPORTER/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(id));
+        mockMvc.perform(get("/api/roles/OWNER/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(0));
+    }
+
+    // ruoli di user_roles, dopo aver verificato che coincidano con users.roles_mask
+    private Set<Role> storedRoles(String id) {
+        UUID userId = UUID.fromString(id);
+        Set<Role> rows = new HashSet<>();
+        for (String role : jdbcTemplate.queryForList("SELECT role FROM user_roles WHERE user_id = ?", String.class, userId)) {
+            rows.add(Role.valueOf(role));
+        }
+        Short mask = jdbcTemplate.queryForObject("SELECT roles_mask FROM users WHERE id = ?", Short.class, userId);
+        assertThat(Role.fromMask(mask)).isEqualTo(rows);
+        return rows;
+    }
+
+    private JsonNode summary() throws Exception {
+        // primo calcolo in background dopo l'avvio: fino ad allora 503
+        await().atMost(Duration.ofSeconds(5)).pollInSameThread().until(() ->
+                mockMvc.perform(get("/api/roles/summary")).andReturn().getResponse().getStatus() == 200);
+        String json = mockMvc.perform(get("/api/roles/summary"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(json);
+    }
+
+    private String createUser(String username, String email, String cf, String role) throws Exception {
+        String body = """
+            {
+              "username": "%s",
+              "email": "%s",
+              "codiceFiscale": "%s",
+              "nome": "Mario",
+              "cognome": "Rossi",
+              "roles": ["%s"]
+            }
+            """.formatted(username, email, cf, role);
+        String json = mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(json).get("id").asText();
+    }
+}
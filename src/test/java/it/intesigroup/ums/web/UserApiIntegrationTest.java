@@ -2,7 +2,14 @@ package it.intesigroup.ums.web;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import it.intesigroup.ums.domain.Role;
+import it.intesigroup.ums.domain.User;
+import it.intesigroup.ums.domain.UserStatus;
+import it.intesigroup.ums.mapper.UserProtoMapper;
+import it.intesigroup.ums.proto.UserPage;
 import it.intesigroup.ums.repository.UserRepository;
+import it.intesigroup.ums.service.NaturalKeyFilter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.amqp.core.AmqpTemplate;
@@ -11,12 +18,21 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Set;
+import java.util.UUID;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -35,6 +51,12 @@ class UserApiIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NaturalKeyFilter naturalKeyFilter;
+
     @MockBean
     private AmqpTemplate amqpTemplate;
 
@@ -122,6 +144,48 @@ class UserApiIntegrationTest {
                 .andExpect(status().isConflict());
     }
 
+    @Test
+    void createUser_withDuplicateEmailInDifferentCase_returns409() throws Exception {
+        mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                            {"username": "mrossi", "email": "m.rossi@example.com", "codiceFiscale": "RSSMRA80A01H501U",
+                             "nome": "Mario", "cognome": "Rossi", "roles": ["DEVELOPER"]}
+                            """))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                            {"username": "mrossi2", "email": "M.Rossi@Example.COM", "codiceFiscale": "VRDGPP80A01H501U",
+                             "nome": "Mario", "cognome": "Rossi", "roles": ["DEVELOPER"]}
+                            """))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("Conflitto sui dati: Email già utilizzata"));
+    }
+
+    @Test
+    void createUser_withEmailUnknownToKeyFilter_returns409WithoutPublishing() throws Exception {
+        await().atMost(Duration.ofSeconds(5)).until(() -> naturalKeyFilter.stats().ready());
+        // riga scritta da un'altra istanza e non ancora letta dal filtro: la query di esistenza viene saltata
+        jdbcTemplate.update("""
+                INSERT INTO users (id, username, email, codice_fiscale, nome, cognome, status, roles_mask,
+                                   created_at, updated_at)
+                VALUES (?, 'lbianchi', 'l.bianchi@example.com', 'BNCLGU80A01H501U', 'Luigi', 'Bianchi', 'ACTIVE', 0,
+                        CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+                """, UUID.randomUUID());
+
+        mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                            {"username": "lbianchi2", "email": "l.bianchi@example.com", "codiceFiscale": "VRDGPP80A01H501U",
+                             "nome": "Luigi", "cognome": "Bianchi", "roles": ["DEVELOPER"]}
+                            """))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("Conflitto sui dati: Email già utilizzata"));
+        verifyNoInteractions(amqpTemplate);
+    }
+
     @Test
     void disableAndSoftDelete_flow_worksAsExpected() throws Exception {
         String body = """
@@ -157,6 +221,81 @@ class UserApiIntegrationTest {
 
         mockMvc.perform(get("/api/users/{id}", id))
                 .andExpect(status().isNotFound());
+
+        // lo storico è scritto in blocchi dopo il commit; stesso thread per il SecurityContext di @WithMockUser
+        await().atMost(Duration.ofSeconds(5)).pollInSameThread().untilAsserted(() ->
+                mockMvc.perform(get("/api/users/{id}/audit", id))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.content.length()").value(2))
+                        .andExpect(jsonPath("$.content[0].action").value("DELETED"))
+                        .andExpect(jsonPath("$.content[0].changes.status.from").value("DISABLED"))
+                        .andExpect(jsonPath("$.content[0].changes.status.to").value("DELETED"))
+                        .andExpect(jsonPath("$.content[1].action").value("DISABLED"))
+                        .andExpect(jsonPath("$.content[1].actor").value("user")));
+        mockMvc.perform(get("/api/users/{id}/audit", id).param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+    }
+
+    @Test
+    @WithMockUser(roles = "REPORTER")
+    void stream_pushesChangesWithMasking() throws Exception {
+        MvcResult stream = mockMvc.perform(get("/api/users/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(post("/api/users")
+                        .with(user("owner").roles("OWNER"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                            {
+                              "username": "mrossi",
+                              "email": "m.rossi@example.com",
+                              "codiceFiscale": "RSSMRA80A01H501U",
+                              "nome": "Mario",
+                              "cognome": "Rossi",
+                              "roles": ["DEVELOPER"]
+                            }
+                            """))
+                .andExpect(status().isCreated());
+
+        await().atMost(Duration.ofSeconds(10))
+                .until(() -> stream.getResponse().getContentAsString().contains("event:created"));
+        assertThat(stream.getResponse().getContentAsString())
+                .contains("\"username\":\"mrossi\"", "RSS********01U")
+                .doesNotContain("RSSMRA80A01H501U");
+    }
+
+    @Test
+    void changeLog_recordsUpdatedAtSetByTheUpdate() throws Exception {
+        MvcResult created = mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                            {
+                              "username": "mrossi",
+                              "email": "m.rossi@example.com",
+                              "codiceFiscale": "RSSMRA80A01H501U",
+                              "nome": "Mario",
+                              "cognome": "Rossi",
+                              "roles": ["DEVELOPER"]
+                            }
+                            """))
+                .andExpect(status().isCreated())
+                .andReturn();
+        String id = objectMapper.readTree(created.getResponse().getContentAsString()).get("id").asText();
+
+        mockMvc.perform(post("/api/users/{id}/disable", id))
+                .andExpect(status().isNoContent());
+
+        OffsetDateTime stored = jdbcTemplate.queryForObject(
+                "select updated_at from users where id = ?", OffsetDateTime.class, UUID.fromString(id));
+        OffsetDateTime createdAt = jdbcTemplate.queryForObject(
+                "select created_at from users where id = ?", OffsetDateTime.class, UUID.fromString(id));
+        OffsetDateTime logged = jdbcTemplate.queryForObject(
+                "select updated_at from user_changes where user_id = ? and change_type = 'DISABLED'",
+                OffsetDateTime.class, UUID.fromString(id));
+        assertThat(logged).isEqualTo(stored).isAfter(createdAt);
     }
 
     @Test
@@ -182,4 +321,93 @@ class UserApiIntegrationTest {
                 .andExpect(jsonPath("$.content[0].username").value("mrossi"))
                 .andExpect(jsonPath("$.content[0].status").value("ACTIVE"));
     }
+
+    @Test
+    void getAndList_negotiateBinaryFormats() throws Exception {
+        String body = """
+            {
+              "username": "mrossi",
+              "email": "m.rossi@example.com",
+              "codiceFiscale": "RSSMRA80A01H501U",
+              "nome": "Mario",
+              "cognome": "Rossi",
+              "roles": ["DEVELOPER"]
+            }
+            """;
+
+        MvcResult createResult = mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andReturn();
+        String id = objectMapper.readTree(createResult.getResponse().getContentAsString()).get("id").asText();
+
+        byte[] proto = mockMvc.perform(get("/api/users/{id}", id)
+                        .accept(UserProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(UserProtobufHttpMessageConverter.PROTOBUF))
+                .andReturn().getResponse().getContentAsByteArray();
+        it.intesigroup.ums.proto.User user = it.intesigroup.ums.proto.User.parseFrom(proto);
+        assertThat(UserProtoMapper.toUuid(user.getId())).hasToString(id);
+        assertThat(user.getEmail()).isEqualTo("m.rossi@example.com");
+        assertThat(user.getRolesList()).containsExactly(it.intesigroup.ums.proto.Role.DEVELOPER);
+
+        byte[] protoPage = mockMvc.perform(get("/api/users?page=0&size=10")
+                        .accept(UserProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        UserPage page = UserPage.parseFrom(protoPage);
+        assertThat(page.getTotalElements()).isEqualTo(1);
+        assertThat(page.getContent(0).getUsername()).isEqualTo("mrossi");
+
+        MediaType smile = MediaType.parseMediaType("application/x-jackson-smile");
+        byte[] smileBody = mockMvc.perform(get("/api/users?page=0&size=10").accept(smile))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(smile))
+                .andReturn().getResponse().getContentAsByteArray();
+        JsonNode smilePage = new ObjectMapper(new SmileFactory()).readTree(smileBody);
+        assertThat(smilePage.at("/content/0/username").asText()).isEqualTo("mrossi");
+
+        mockMvc.perform(get("/api/users/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    @WithMockUser(roles = "REPORTER")
+    void getAndList_withFields_returnOnlySelectedFieldsWithMasking() throws Exception {
+        User u = new User();
+        u.setUsername("mrossi");
+        u.setEmail("m.rossi@example.com");
+        u.setCodiceFiscale("RSSMRA80A01H501U");
+        u.setNome("Mario");
+        u.setCognome("Rossi");
+        u.setStatus(UserStatus.ACTIVE);
+        u.setRoles(Set.of(Role.DEVELOPER));
+        String id = userRepository.save(u).getId().toString();
+
+        mockMvc.perform(get("/api/users?fields=id,username,codiceFiscale,roles&page=0&size=10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(id))
+                .andExpect(jsonPath("$.content[0].username").value("mrossi"))
+                .andExpect(jsonPath("$.content[0].codiceFiscale").value("RSS********01U"))
+                .andExpect(jsonPath("$.content[0].roles[0]").value("DEVELOPER"))
+                .andExpect(jsonPath("$.content[0].email").doesNotExist())
+                .andExpect(jsonPath("$.content[0].nome").doesNotExist());
+
+        mockMvc.perform(get("/api/users/{id}", id).param("fields", "status"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"status\":\"ACTIVE\"}", true));
+
+        mockMvc.perform(get("/api/users/{id}", id).param("fields", "status,password"))
+                .andExpect(status().isBadRequest());
+
+        // le mappe di fields=... non hanno una rappresentazione protobuf
+        mockMvc.perform(get("/api/users?fields=id,username&page=0&size=10")
+                        .accept(UserProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isNotAcceptable());
+        mockMvc.perform(get("/api/users/{id}", id).param("fields", "status")
+                        .accept(UserProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isNotAcceptable());
+    }
 }